@@ -0,0 +1,419 @@
+/**
+ *
+ */
+package one.tracking.framework.component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.google.common.util.concurrent.RateLimiter;
+import one.tracking.framework.entity.OutboxEmail;
+import one.tracking.framework.entity.OutboxEmailStatus;
+import one.tracking.framework.entity.Verification;
+import one.tracking.framework.entity.VerificationState;
+import one.tracking.framework.service.mail.EmailService;
+
+/**
+ * Sends emails asynchronously using a persistent outbox. Emails get stored within the transaction of the
+ * caller and are sent by a pool of workers polling the outbox. Failed emails are retried with an
+ * exponential backoff. Multiple nodes may drain the outbox concurrently as each poll claims its emails
+ * using a random token. The next batch gets claimed while the previous one is still being sent, bounded by
+ * a queue of a single batch. Emails of verifications, which have been renewed or deleted meanwhile, are
+ * dropped instead of being sent. Failed emails are kept for the configured retention for analysis.
+ *
+ * @author Marko Voß
+ *
+ */
+@Component
+public class EmailOutboxComponent {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EmailOutboxComponent.class);
+
+  private static final int MAX_ERROR_LENGTH = 1000;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private EmailService emailService;
+
+  @Value("${app.email.outbox.enabled:false}")
+  private boolean enabled;
+
+  /**
+   * The amount of emails being sent concurrently per node.
+   */
+  @Value("${app.email.outbox.workers:4}")
+  private int workers;
+
+  /**
+   * The amount of emails claimed at once, which also bounds the amount of emails queued for the senders.
+   */
+  @Value("${app.email.outbox.batchSize:100}")
+  private int batchSize;
+
+  @Value("${app.email.outbox.pollInterval:10s}")
+  private Duration pollInterval;
+
+  /**
+   * The maximum amount of emails sent per second per node; 0 disables the limit.
+   */
+  @Value("${app.email.outbox.maxPerSecond:0}")
+  private double maxPerSecond;
+
+  @Value("${app.email.outbox.maxAttempts:5}")
+  private int maxAttempts;
+
+  /**
+   * The delay before the first retry, which doubles for each further retry.
+   */
+  @Value("${app.email.outbox.retryDelay:1m}")
+  private Duration retryDelay;
+
+  /**
+   * The time after which emails claimed by a node, which did not complete sending them, get claimable
+   * again. Must exceed the time of sending two batches, as the next batch gets claimed while sending.
+   */
+  @Value("${app.email.outbox.claimTimeout:10m}")
+  private Duration claimTimeout;
+
+  /**
+   * The time failed emails are kept in the outbox after the last attempt.
+   */
+  @Value("${app.email.outbox.failedRetention:7d}")
+  private Duration failedRetention;
+
+  /**
+   * The delay between deletions of expired failed emails.
+   */
+  @Value("${app.email.outbox.cleanupInterval:1h}")
+  private Duration cleanupInterval;
+
+  private ExecutorService senderExecutor;
+
+  /**
+   * The permits of the emails submitted to the senders, which are the busy workers and a queued batch. The
+   * poll blocks on these instead of the executor rejecting emails of a full queue.
+   */
+  private Semaphore senderPermits;
+
+  private int countSenderPermits;
+
+  /**
+   * Polls the outbox and waits for the senders, so it must not block the threads of other tasks.
+   */
+  private ScheduledExecutorService pollExecutor;
+
+  private RateLimiter rateLimiter;
+
+  @PostConstruct
+  public void init() {
+
+    if (!this.enabled)
+      return;
+
+    this.countSenderPermits = this.workers + this.batchSize;
+    this.senderPermits = new Semaphore(this.countSenderPermits);
+
+    // Sized by the permits, as a permit gets released before its worker takes the next email from the queue
+    this.senderExecutor = new ThreadPoolExecutor(this.workers, this.workers, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(this.countSenderPermits), new CustomizableThreadFactory("EmailOutbox-"));
+
+    if (this.maxPerSecond > 0)
+      this.rateLimiter = RateLimiter.create(this.maxPerSecond);
+
+    this.pollExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("EmailOutboxPoll-"));
+    this.pollExecutor.scheduleWithFixedDelay(this::drain, this.pollInterval.toMillis(), this.pollInterval.toMillis(),
+        TimeUnit.MILLISECONDS);
+    this.pollExecutor.scheduleWithFixedDelay(this::deleteExpiredFailedEmails, this.cleanupInterval.toMillis(),
+        this.cleanupInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+
+    if (this.pollExecutor != null)
+      this.pollExecutor.shutdownNow();
+
+    if (this.senderExecutor != null)
+      this.senderExecutor.shutdownNow();
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Queues a HTML email. Must be called within a transaction, so that the email only gets sent if the
+   * transaction commits.
+   *
+   * @param verification
+   *          the verification, whose state gets set to {@link VerificationState#ERROR} if the email cannot
+   *          be sent; may be null
+   */
+  public void enqueueHTML(final String to, final String subject, final String body,
+      final Verification verification) {
+
+    final Instant now = Instant.now();
+
+    this.entityManager.persist(OutboxEmail.builder()
+        .id(UUID.randomUUID().toString())
+        .recipient(to)
+        .subject(subject)
+        .body(body)
+        .html(true)
+        .verification(verification)
+        .verificationHash(verification == null ? null : verification.getHash())
+        .status(OutboxEmailStatus.PENDING)
+        .attempts(0)
+        .nextAttemptAt(now)
+        .createdAt(now)
+        .build());
+  }
+
+  /**
+   * Drops the queued emails of the verification, which have not been claimed by a sender yet. Must be
+   * called within the transaction renewing or deleting the verification.
+   */
+  public void discard(final Verification verification) {
+
+    this.entityManager.createNamedQuery("OutboxEmail.deleteByVerification")
+        .setParameter(1, verification)
+        .executeUpdate();
+  }
+
+  /**
+   * Sends all due emails claiming them in batches. A batch gets claimed as soon as the previous one has
+   * been submitted to the senders, so that the senders do not idle between batches. Submitting blocks while
+   * the queue of the senders is full, so claimed emails wait for at most one batch ahead of them. Returns
+   * after the last batch has been sent, so that polls do not overlap.
+   */
+  void drain() {
+
+    try {
+
+      List<OutboxEmail> emails;
+
+      do {
+
+        emails = claim();
+
+        if (!emails.isEmpty())
+          LOG.debug("Sending {} emails from the outbox", emails.size());
+
+        for (final OutboxEmail email : emails) {
+          submit(email);
+        }
+
+      } while (emails.size() == this.batchSize);
+
+      // Waits for the remaining emails being sent
+      this.senderPermits.acquire(this.countSenderPermits);
+      this.senderPermits.release(this.countSenderPermits);
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+    } catch (final RuntimeException e) {
+      LOG.error("Unable to drain the email outbox.", e);
+    }
+  }
+
+  private void submit(final OutboxEmail email) throws InterruptedException {
+
+    this.senderPermits.acquire();
+
+    try {
+      this.senderExecutor.execute(() -> {
+        try {
+          send(email);
+        } catch (final RuntimeException e) {
+          LOG.error("Unable to send email {} from the outbox.", email.getId(), e);
+        } finally {
+          this.senderPermits.release();
+        }
+      });
+
+    } catch (final RejectedExecutionException e) {
+      this.senderPermits.release();
+      throw e;
+    }
+  }
+
+  void deleteExpiredFailedEmails() {
+
+    final Query query = this.entityManager.createNamedQuery("OutboxEmail.deleteByStatusAndNextAttemptAtBefore");
+    query.setParameter(1, OutboxEmailStatus.FAILED);
+    query.setParameter(2, Instant.now().minus(this.failedRetention));
+
+    try {
+
+      final int count = this.transactionTemplate.execute(status -> query.executeUpdate());
+
+      if (count > 0)
+        LOG.debug("Deleted {} expired failed emails from the outbox", count);
+
+    } catch (final RuntimeException e) {
+      LOG.error("Unable to delete expired failed emails from the outbox.", e);
+    }
+  }
+
+  List<OutboxEmail> claim() {
+
+    final Instant now = Instant.now();
+    final String claimToken = UUID.randomUUID().toString();
+
+    final TypedQuery<String> dueQuery =
+        this.entityManager.createNamedQuery("OutboxEmail.findIdByStatusAndNextAttemptAtBefore", String.class);
+    dueQuery.setParameter(1, OutboxEmailStatus.PENDING);
+    dueQuery.setParameter(2, now);
+    dueQuery.setMaxResults(this.batchSize);
+
+    /*
+     * Only emails, which are still due, get claimed. Emails claimed by other nodes in the meantime are
+     * excluded as their next attempt has been moved to the end of the claim timeout.
+     */
+    final Query claimQuery = this.entityManager.createNamedQuery("OutboxEmail.claim");
+    claimQuery.setParameter(1, claimToken);
+    claimQuery.setParameter(2, now.plus(this.claimTimeout));
+    claimQuery.setParameter(4, OutboxEmailStatus.PENDING);
+    claimQuery.setParameter(5, now);
+
+    final TypedQuery<OutboxEmail> claimedQuery =
+        this.entityManager.createNamedQuery("OutboxEmail.findByClaimToken", OutboxEmail.class);
+    claimedQuery.setParameter(1, claimToken);
+
+    return this.transactionTemplate.execute(status -> {
+
+      final List<String> ids = dueQuery.getResultList();
+      if (ids.isEmpty())
+        return List.of();
+
+      claimQuery.setParameter(3, ids);
+      if (claimQuery.executeUpdate() == 0)
+        return List.of();
+
+      return claimedQuery.getResultList();
+    });
+  }
+
+  private void send(final OutboxEmail email) {
+
+    if (isObsolete(email)) {
+      LOG.debug("Dropping email {} of a renewed or deleted verification.", email.getId());
+      delete(email);
+      return;
+    }
+
+    if (this.rateLimiter != null)
+      this.rateLimiter.acquire();
+
+    boolean sent = false;
+    String error = null;
+
+    try {
+      sent = email.isHtml()
+          ? this.emailService.sendHTML(email.getRecipient(), email.getSubject(), email.getBody())
+          : this.emailService.sendText(email.getRecipient(), email.getSubject(), email.getBody());
+    } catch (final RuntimeException e) {
+      LOG.warn("Unable to send email.", e);
+      error = e.getMessage();
+    }
+
+    if (sent) {
+      delete(email);
+      return;
+    }
+
+    final int attempts = email.getAttempts() + 1;
+
+    if (attempts < this.maxAttempts) {
+      updateFailedEmail(email, attempts, OutboxEmailStatus.PENDING, Instant.now().plus(getRetryDelay(attempts)),
+          error);
+      return;
+    }
+
+    LOG.warn("Giving up sending email {} after {} attempts.", email.getId(), attempts);
+
+    updateFailedEmail(email, attempts, OutboxEmailStatus.FAILED, Instant.now(), error);
+  }
+
+  /**
+   * @return true, if the email contains a link to a verification, which has been renewed or deleted
+   */
+  private static boolean isObsolete(final OutboxEmail email) {
+
+    if (email.getVerificationHash() == null)
+      return false;
+
+    return email.getVerification() == null || !email.getVerificationHash().equals(email.getVerification().getHash());
+  }
+
+  private void delete(final OutboxEmail email) {
+
+    final Query query = this.entityManager.createNamedQuery("OutboxEmail.deleteById");
+    query.setParameter(1, email.getId());
+
+    this.transactionTemplate.executeWithoutResult(status -> query.executeUpdate());
+  }
+
+  private void updateFailedEmail(final OutboxEmail email, final int attempts, final OutboxEmailStatus emailStatus,
+      final Instant nextAttemptAt, final String error) {
+
+    final Query emailQuery = this.entityManager.createNamedQuery("OutboxEmail.updateAttempt");
+    emailQuery.setParameter(1, attempts);
+    emailQuery.setParameter(2, emailStatus);
+    emailQuery.setParameter(3, nextAttemptAt);
+    emailQuery.setParameter(4, error == null || error.length() <= MAX_ERROR_LENGTH
+        ? error
+        : error.substring(0, MAX_ERROR_LENGTH));
+    emailQuery.setParameter(5, email.getId());
+
+    final Verification verification = email.getVerification();
+    final boolean failVerification = emailStatus == OutboxEmailStatus.FAILED && verification != null;
+
+    // Verifications, which have been renewed in the meantime, got a new hash and are not affected
+    final Query verificationQuery = this.entityManager.createNamedQuery("Verification.updateStateByHashAndState");
+    if (failVerification) {
+      verificationQuery.setParameter(1, VerificationState.ERROR);
+      verificationQuery.setParameter(2, Instant.now());
+      verificationQuery.setParameter(3, email.getVerificationHash());
+      verificationQuery.setParameter(4, VerificationState.PENDING);
+    }
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+      emailQuery.executeUpdate();
+      if (failVerification)
+        verificationQuery.executeUpdate();
+    });
+  }
+
+  private Duration getRetryDelay(final int attempts) {
+    // Limits the exponent to avoid overflows for large amounts of attempts
+    return this.retryDelay.multipliedBy(1L << Math.min(attempts - 1, 16));
+  }
+}
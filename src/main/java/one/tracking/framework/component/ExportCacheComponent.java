@@ -0,0 +1,387 @@
+/**
+ *
+ */
+package one.tracking.framework.component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import one.tracking.framework.component.export.RowConsumer;
+import one.tracking.framework.component.export.RowSource;
+
+/**
+ * Caches the exported rows of closed time slices on disk. A time slice is closed, if it ended a while ago,
+ * so that no new rows get created within it anymore. As the data gets written by other services, each
+ * cached slice stores the fingerprint of its rows and gets rebuilt as soon as the fingerprint changes.
+ * Cache files get validated completely before their rows are consumed, so that corrupt files get rebuilt
+ * instead of failing an export, which has already written some of the rows.
+ *
+ * @author Marko Voß
+ *
+ */
+@Component
+public class ExportCacheComponent {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ExportCacheComponent.class);
+
+  private static final int FORMAT_VERSION = 2;
+
+  private static final int END_OF_ROWS = -1;
+
+  private static final byte TYPE_NULL = 0;
+  private static final byte TYPE_STRING = 1;
+  private static final byte TYPE_BOOLEAN = 2;
+  private static final byte TYPE_LONG = 3;
+  private static final byte TYPE_DOUBLE = 4;
+  private static final byte TYPE_INSTANT = 5;
+  private static final byte TYPE_DECIMAL = 6;
+  private static final byte TYPE_INTEGER = 7;
+
+  /**
+   * Limits the allocations caused by corrupt cache files
+   */
+  private static final int MAX_ROW_LENGTH = 1024;
+
+  private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+  @Value("${app.export.cache.enabled:false}")
+  private boolean enabled;
+
+  /**
+   * The directory of the cache; defaults to a directory within the temporary directory.
+   */
+  @Value("${app.export.cache.directory:}")
+  private String directory;
+
+  /**
+   * The size of the cached time slices in whole seconds, which are aligned to the epoch.
+   */
+  @Value("${app.export.cache.slice:1d}")
+  private Duration slice;
+
+  /**
+   * The time after the end of a slice, after which it gets cached.
+   */
+  @Value("${app.export.cache.closedAfter:1h}")
+  private Duration closedAfter;
+
+  private Path cacheDirectory;
+
+  @PostConstruct
+  public void init() throws IOException {
+
+    if (!this.enabled)
+      return;
+
+    if (this.slice.getSeconds() <= 0 || this.slice.getNano() != 0)
+      throw new IllegalStateException("The export cache slice must be a positive amount of whole seconds.");
+
+    this.cacheDirectory = this.directory == null || this.directory.isBlank()
+        ? Paths.get(System.getProperty("java.io.tmpdir"), "export-cache")
+        : Paths.get(this.directory);
+
+    Files.createDirectories(this.cacheDirectory);
+
+    LOG.info("Caching closed export slices of {} in: {}", this.slice, this.cacheDirectory);
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * @return the start of the slice containing the specified time
+   */
+  public Instant alignToSlice(final Instant time) {
+
+    final long sliceMicros = this.slice.toNanos() / 1000;
+    final long micros = ChronoUnit.MICROS.between(Instant.EPOCH, time);
+
+    return Instant.EPOCH.plus(Math.floorDiv(micros, sliceMicros) * sliceMicros, ChronoUnit.MICROS);
+  }
+
+  /**
+   * Reads the rows of the interval. All closed slices within the interval get read from the cache or get
+   * cached while reading them from the source. The remaining parts of the interval get read from the
+   * source only.
+   *
+   * @param key
+   *          the key of the rows, which has to change whenever the layout of the rows changes
+   */
+  public void read(final String key, final Instant startTime, final Instant endTime, final RowSource source,
+      final RowConsumer<Object[]> consumer) throws IOException {
+
+    final Instant closedUntil = Instant.now().minus(this.closedAfter);
+    final Instant firstTimestamp = source.getFirstTimestamp(startTime, endTime);
+
+    if (firstTimestamp == null) {
+      source.read(startTime, endTime, consumer);
+      return;
+    }
+
+    // Skips the empty slices before the first row, e.g. of incremental exports starting at the epoch
+    Instant firstSlice = alignToSlice(firstTimestamp.isAfter(startTime) ? firstTimestamp : startTime);
+
+    if (firstSlice.isBefore(startTime))
+      firstSlice = firstSlice.plus(this.slice);
+
+    int countSlices = 0;
+
+    for (Instant sliceEnd = firstSlice.plus(this.slice); !sliceEnd.isAfter(closedUntil)
+        && sliceEnd.minus(1, ChronoUnit.MICROS).compareTo(endTime) <= 0; sliceEnd = sliceEnd.plus(this.slice)) {
+      countSlices++;
+    }
+
+    // Determine the fingerprints of all slices by a single query before reading the rows, so that concurrent
+    // changes invalidate the entries
+    final List<String> fingerprints =
+        countSlices == 0 ? List.of() : source.getFingerprints(firstSlice, this.slice, countSlices);
+
+    Instant current = startTime;
+
+    for (int i = 0; i < countSlices; i++) {
+
+      final Instant sliceStart = firstSlice.plus(this.slice.multipliedBy(i));
+
+      if (current.isBefore(sliceStart))
+        source.read(current, sliceStart.minus(1, ChronoUnit.MICROS), consumer);
+
+      readSlice(key, sliceStart, fingerprints.get(i), source, consumer);
+
+      current = sliceStart.plus(this.slice);
+    }
+
+    if (!current.isAfter(endTime))
+      source.read(current, endTime, consumer);
+  }
+
+  private void readSlice(final String key, final Instant sliceStart, final String fingerprint,
+      final RowSource source, final RowConsumer<Object[]> consumer) throws IOException {
+
+    final Instant sliceEnd = sliceStart.plus(this.slice).minus(1, ChronoUnit.MICROS);
+    final Path file = this.cacheDirectory.resolve(key).resolve(sliceStart.getEpochSecond() + "-"
+        + this.slice.getSeconds() + ".rows.gz");
+
+    if (replayCachedRows(file, fingerprint, consumer))
+      return;
+
+    LOG.debug("Caching export slice {} of {}.", sliceStart, key);
+
+    Files.createDirectories(file.getParent());
+    final Path tempFile = Files.createTempFile(file.getParent(), "slice", ".tmp");
+
+    try {
+
+      try (final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempFile), 8192)))) {
+
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(fingerprint);
+
+        source.read(sliceStart, sliceEnd, row -> {
+          writeRow(out, row);
+          consumer.accept(row);
+        });
+
+        out.writeInt(END_OF_ROWS);
+      }
+
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Reads the whole cache file without consuming the rows first, so that a corrupt file gets rebuilt before
+   * any of its rows have been consumed. Both passes read the same file, even if it gets replaced
+   * concurrently.
+   *
+   * @return false, if the file does not exist, does not match the fingerprint or is corrupt
+   */
+  private boolean replayCachedRows(final Path file, final String fingerprint,
+      final RowConsumer<Object[]> consumer) throws IOException {
+
+    final FileChannel channel;
+    try {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+    } catch (final NoSuchFileException e) {
+      // Not cached yet
+      return false;
+    }
+
+    try (channel) {
+
+      try (final DataInputStream in = openCacheFile(channel)) {
+
+        if (in.readInt() != FORMAT_VERSION || !fingerprint.equals(in.readUTF()))
+          return false;
+
+        replayRows(in, row -> {
+          // Validates the rows only
+        });
+
+        if (in.read() != -1)
+          throw new IOException("Unexpected data after the cached rows.");
+
+      } catch (final IOException | NumberFormatException | DateTimeException e) {
+        LOG.warn("Rebuilding corrupt export cache file: {}", file, e);
+        return false;
+      }
+
+      try (final DataInputStream in = openCacheFile(channel)) {
+        in.readInt();
+        in.readUTF();
+        replayRows(in, consumer);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * @return a stream reading the channel from the start, which does not close the channel
+   */
+  private static DataInputStream openCacheFile(final FileChannel channel) throws IOException {
+
+    channel.position(0);
+
+    final InputStream inStream = new FilterInputStream(Channels.newInputStream(channel)) {
+      @Override
+      public void close() {
+        // Closed by the caller
+      }
+    };
+
+    return new DataInputStream(new BufferedInputStream(new GZIPInputStream(inStream, 8192)));
+  }
+
+  private void replayRows(final DataInputStream in, final RowConsumer<Object[]> consumer) throws IOException {
+
+    int length = in.readInt();
+
+    while (length != END_OF_ROWS) {
+
+      if (length < 0 || length > MAX_ROW_LENGTH)
+        throw new IOException("Invalid length of cached row: " + length);
+
+      final Object[] row = new Object[length];
+      for (int i = 0; i < length; i++) {
+        row[i] = readValue(in);
+      }
+      consumer.accept(row);
+
+      length = in.readInt();
+    }
+  }
+
+  private void writeRow(final DataOutputStream out, final Object[] row) throws IOException {
+
+    out.writeInt(row.length);
+
+    for (final Object value : row) {
+
+      if (value == null) {
+        out.writeByte(TYPE_NULL);
+
+      } else if (value instanceof Boolean) {
+        out.writeByte(TYPE_BOOLEAN);
+        out.writeBoolean((Boolean) value);
+
+      } else if (value instanceof Integer) {
+        out.writeByte(TYPE_INTEGER);
+        out.writeInt((Integer) value);
+
+      } else if (value instanceof Long || value instanceof Short) {
+        out.writeByte(TYPE_LONG);
+        out.writeLong(((Number) value).longValue());
+
+      } else if (value instanceof Double || value instanceof Float) {
+        out.writeByte(TYPE_DOUBLE);
+        out.writeDouble(((Number) value).doubleValue());
+
+      } else if (value instanceof Number) {
+        out.writeByte(TYPE_DECIMAL);
+        writeString(out, value.toString());
+
+      } else if (value instanceof Instant) {
+        out.writeByte(TYPE_INSTANT);
+        out.writeLong(((Instant) value).getEpochSecond());
+        out.writeInt(((Instant) value).getNano());
+
+      } else {
+        out.writeByte(TYPE_STRING);
+        writeString(out, value.toString());
+      }
+    }
+  }
+
+  private Object readValue(final DataInputStream in) throws IOException {
+
+    final byte type = in.readByte();
+
+    switch (type) {
+      case TYPE_NULL:
+        return null;
+      case TYPE_BOOLEAN:
+        return in.readBoolean();
+      case TYPE_INTEGER:
+        return in.readInt();
+      case TYPE_LONG:
+        return in.readLong();
+      case TYPE_DOUBLE:
+        return in.readDouble();
+      case TYPE_DECIMAL:
+        return new BigDecimal(readString(in));
+      case TYPE_INSTANT:
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+      case TYPE_STRING:
+        return readString(in);
+      default:
+        throw new IOException("Invalid type of cached value: " + type);
+    }
+  }
+
+  private static void writeString(final DataOutputStream out, final String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+
+    final int length = in.readInt();
+    if (length < 0 || length > MAX_STRING_LENGTH)
+      throw new IOException("Invalid length of cached value: " + length);
+
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
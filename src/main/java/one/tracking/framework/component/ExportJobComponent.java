@@ -0,0 +1,243 @@
+/**
+ *
+ */
+package one.tracking.framework.component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import one.tracking.framework.component.AsyncExecutor.AsyncTask;
+import one.tracking.framework.config.TimeoutProperties;
+import one.tracking.framework.domain.ExportFormat;
+import one.tracking.framework.domain.ExportJob;
+import one.tracking.framework.domain.ExportJobStatus;
+import one.tracking.framework.domain.ScheduledDeletionFuture;
+import one.tracking.framework.exception.ConflictException;
+
+/**
+ * Performs exports in the background and stores the results as temporary files, which get deleted after
+ * the upload timeout or, if the file is being downloaded at that time, after the last download. The jobs
+ * are kept in memory, so they are only accessible on the node, which performs them. The amount of jobs in
+ * progress is limited, so that queued jobs cannot exhaust the asynchronous executor and the disk space of
+ * the temporary files.
+ *
+ * @author Marko Voß
+ *
+ */
+@Component
+public class ExportJobComponent {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ExportJobComponent.class);
+
+  @Autowired
+  private SurveyDataExportComponent exportComponent;
+
+  @Autowired
+  private AsyncExecutor asyncExecutor;
+
+  @Autowired
+  private TaskScheduler taskScheduler;
+
+  @Autowired
+  private TimeoutProperties timeoutConfig;
+
+  /**
+   * The maximum amount of jobs in progress on this node.
+   */
+  @Value("${app.export.jobs.maxConcurrent:2}")
+  private int maxConcurrentJobs;
+
+  private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+  private Semaphore runningJobs;
+
+  @PostConstruct
+  public void init() {
+    this.runningJobs = new Semaphore(Math.max(1, this.maxConcurrentJobs));
+  }
+
+  /**
+   * @throws ConflictException
+   *           if the maximum amount of jobs is in progress already
+   */
+  public ExportJob createJob(final Instant startTime, final Instant endTime, final ExportFormat format,
+      final String sheet, final boolean gzip, final String filename) throws IOException {
+
+    if (!this.runningJobs.tryAcquire())
+      throw new ConflictException("Too many export jobs in progress. Please retry later.");
+
+    final Path file;
+
+    try {
+      file = Files.createTempFile("export", ".tmp");
+    } catch (final IOException e) {
+      this.runningJobs.release();
+      throw e;
+    }
+
+    final ExportJob job = ExportJob.builder()
+        .id(UUID.randomUUID().toString())
+        .format(format)
+        .gzip(gzip)
+        .filename(filename)
+        .file(file)
+        .status(ExportJobStatus.IN_PROGRESS)
+        .createdAt(Instant.now())
+        .build();
+
+    this.jobs.put(job.getId(), job);
+
+    try {
+      this.asyncExecutor.execute(new AsyncTask<Void>() {
+
+        @Override
+        public Void call() throws Exception {
+          performJob(job, startTime, endTime, sheet);
+          return null;
+        }
+
+        @Override
+        public void after() throws Exception {
+          // The file of the completed job gets kept until its deletion, but does not count as in progress
+          ExportJobComponent.this.runningJobs.release();
+          scheduleDeletion(job);
+        }
+      });
+
+    } catch (final TaskRejectedException e) {
+      this.jobs.remove(job.getId());
+      this.runningJobs.release();
+      Files.deleteIfExists(file);
+      throw e;
+    }
+
+    return job;
+  }
+
+  private void performJob(final ExportJob job, final Instant startTime, final Instant endTime, final String sheet) {
+
+    LOG.debug("Performing export job: {}", job.getId());
+
+    try (final OutputStream outStream = openFile(job)) {
+      this.exportComponent.export(startTime, endTime, job.getFormat(), sheet, outStream, job.getCountRows());
+
+    } catch (final Exception e) {
+
+      LOG.error("Export job " + job.getId() + " failed.", e);
+
+      job.setMessage(e.getMessage());
+      job.setCompletedAt(Instant.now());
+      job.setStatus(ExportJobStatus.FAILED);
+      return;
+    }
+
+    // Completed only after closing the stream, which writes the remaining buffer and the GZIP trailer
+    job.setCompletedAt(Instant.now());
+    job.setStatus(ExportJobStatus.COMPLETED);
+
+    LOG.debug("Export job {} completed with {} rows.", job.getId(), job.getCountRows().get());
+  }
+
+  private OutputStream openFile(final ExportJob job) throws IOException {
+
+    final OutputStream outStream = new BufferedOutputStream(Files.newOutputStream(job.getFile()));
+    return job.isGzip() ? new GZIPOutputStream(outStream, 8192) : outStream;
+  }
+
+  private void scheduleDeletion(final ExportJob job) {
+
+    final ScheduledFuture<?> future = this.taskScheduler.schedule(() -> {
+
+      this.jobs.remove(job.getId());
+
+      final boolean idle;
+
+      synchronized (job) {
+        job.setExpired(true);
+        idle = job.getDownloads() == 0;
+      }
+
+      // Otherwise the file gets deleted by the last download
+      if (idle)
+        deleteFile(job);
+
+    }, Instant.now().plus(this.timeoutConfig.getUpload()));
+
+    job.setDeletion(new ScheduledDeletionFuture<>(future, job.getFile()));
+  }
+
+  private void deleteFile(final ExportJob job) {
+
+    try {
+      Files.deleteIfExists(job.getFile());
+    } catch (final IOException e) {
+      LOG.warn("Unable to delete export file: " + job.getFile(), e);
+    }
+  }
+
+  /**
+   * Streams the file of the job. The file does not get deleted before the download has finished, even if
+   * the job expires meanwhile.
+   *
+   * @throws NoSuchElementException
+   *           if the job has expired already
+   */
+  public void download(final ExportJob job, final OutputStream outStream) throws IOException {
+
+    synchronized (job) {
+
+      if (job.isExpired())
+        throw new NoSuchElementException("No export job found for id: " + job.getId());
+
+      job.setDownloads(job.getDownloads() + 1);
+    }
+
+    try {
+      Files.copy(job.getFile(), outStream);
+
+    } finally {
+
+      final boolean delete;
+
+      synchronized (job) {
+        job.setDownloads(job.getDownloads() - 1);
+        delete = job.isExpired() && job.getDownloads() == 0;
+      }
+
+      if (delete)
+        deleteFile(job);
+    }
+  }
+
+  /**
+   * @throws NoSuchElementException
+   *           if the job does not exist or has expired already
+   */
+  public ExportJob getJob(final String jobId) {
+
+    final ExportJob job = this.jobs.get(jobId);
+
+    if (job == null)
+      throw new NoSuchElementException("No export job found for id: " + jobId);
+
+    return job;
+  }
+}
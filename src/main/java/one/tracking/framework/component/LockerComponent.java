@@ -4,8 +4,8 @@
 package one.tracking.framework.component;
 
 import java.time.Instant;
+import java.util.List;
 import javax.persistence.EntityManager;
-import javax.persistence.NoResultException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import org.slf4j.Logger;
@@ -15,7 +15,8 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.support.TransactionTemplate;
 import one.tracking.framework.config.TimeoutProperties;
-import one.tracking.framework.entity.SchedulerLock;
+import one.tracking.framework.domain.TaskLease;
+import one.tracking.framework.entity.TaskLock;
 
 /**
  * @author Marko Voß
@@ -35,7 +36,12 @@ public class LockerComponent {
   @Autowired
   private EntityManager entityManager;
 
-  public boolean lock(final String task) {
+  /**
+   * Acquires the lock of the specified task.
+   *
+   * @return the lease of the lock or null, if the lock is held by another owner
+   */
+  public TaskLease acquire(final String task) {
 
     try {
       return lockInternal(task);
@@ -46,60 +52,112 @@ public class LockerComponent {
       LOG.debug("Expected violation: {}", e.getMessage());
     }
 
-    return false;
+    return null;
   }
 
-  private boolean lockInternal(final String taskName) {
+  /**
+   * Acquires the lock using conditional statements only, so that the row count decides about the
+   * ownership. As the rows of the locks are kept after their release, an expired or released lock gets
+   * taken over by a single conditional update, which increments the fencing token. The new token gets
+   * read within the same transaction, which still holds the row lock of the update. Only the very first
+   * acquisition of a task inserts its lock; concurrent inserts fail on the primary key.
+   */
+  private TaskLease lockInternal(final String taskName) {
 
-    final TypedQuery<SchedulerLock> query =
-        this.entityManager.createQuery("SELECT l FROM SchedulerLock l WHERE l.taskName = ?1", SchedulerLock.class);
-    query.setParameter(1, taskName);
+    final Instant now = Instant.now();
+    final Instant expiresAt = now.plus(this.timeoutConfig.getTaskLock());
 
-    final SchedulerLock lock = this.transactionTemplate.execute(status -> {
+    final Query updateQuery = this.entityManager.createNamedQuery("TaskLock.acquire");
+    updateQuery.setParameter(1, expiresAt);
+    updateQuery.setParameter(2, taskName);
+    updateQuery.setParameter(3, now);
+
+    final TypedQuery<Long> tokenQuery =
+        this.entityManager.createNamedQuery("TaskLock.findFencingTokenByTaskName", Long.class);
+    tokenQuery.setParameter(1, taskName);
+
+    final TaskAcquisition acquisition = this.transactionTemplate.execute(status -> {
+
+      final boolean acquired = updateQuery.executeUpdate() > 0;
+      final List<Long> tokens = tokenQuery.getResultList();
+
+      return new TaskAcquisition(acquired, tokens.isEmpty() ? null : tokens.get(0));
+    });
+
+    if (acquisition.acquired) {
+
+      LOG.debug("Took over lock for task: {}", taskName);
+      return TaskLease.builder().taskName(taskName).fencingToken(acquisition.fencingToken).build();
+    }
+
+    // Held by another owner
+    if (acquisition.fencingToken != null)
+      return null;
+
+    final TaskLock newLock = TaskLock.builder()
+        .taskName(taskName)
+        .fencingToken(1)
+        .expiresAt(expiresAt)
+        .build();
+
+    // Fails with a primary key violation, if another node created the lock meanwhile
+    this.transactionTemplate.executeWithoutResult(status -> {
+      this.entityManager.persist(newLock);
       status.flush();
-      try {
-        return query.getSingleResult();
-      } catch (final NoResultException e) {
-        return null;
-      }
     });
 
-    if (lock == null) {
+    LOG.debug("Created lock for task: {}", taskName);
 
-      LOG.debug("Creating lock for task: {}", taskName);
+    return TaskLease.builder().taskName(taskName).fencingToken(newLock.getFencingToken()).build();
+  }
 
-      this.transactionTemplate.executeWithoutResult(status -> {
-        this.entityManager.persist(SchedulerLock.builder()
-            .taskName(taskName)
-            .timeout((int) this.timeoutConfig.getTaskLock().toSeconds())
-            .build());
-        status.flush();
-      });
+  /**
+   * Extends the lease by the task lock timeout starting now, as long as the lock has not been taken over.
+   *
+   * @return true, if the lease has been extended; false, if the lock is no longer owned by the lease
+   */
+  public boolean renew(final TaskLease lease) {
+    return this.transactionTemplate.execute(status -> renewInternal(lease));
+  }
 
-      return true;
+  /**
+   * Extends the lease within the current transaction and fails it, if the lock has been taken over by
+   * another owner. This rejects writes of a stale owner. The updated lock row stays locked until the end
+   * of the transaction, so that no other owner is able to take over the lock concurrently.
+   *
+   * @throws IllegalStateException
+   *           if the lock is no longer owned by the lease
+   */
+  public void fence(final TaskLease lease) {
+
+    if (!renewInternal(lease))
+      throw new IllegalStateException("Lost lock of task: " + lease.getTaskName());
+  }
 
-    } else if (Instant.now().isAfter(lock.getCreatedAt().plusSeconds(lock.getTimeout()))) {
+  private boolean renewInternal(final TaskLease lease) {
 
-      LOG.debug("Updating lock for task: {}", taskName);
+    final Query query = this.entityManager.createNamedQuery("TaskLock.renew");
+    query.setParameter(1, Instant.now().plus(this.timeoutConfig.getTaskLock()));
+    query.setParameter(2, lease.getTaskName());
+    query.setParameter(3, lease.getFencingToken());
 
-      this.transactionTemplate.executeWithoutResult(status -> {
-        this.entityManager.persist(lock.toBuilder()
-            .createdAt(Instant.now())
-            .timeout((int) this.timeoutConfig.getTaskLock().toSeconds())
-            .build());
-        status.flush();
-      });
+    final boolean renewed = query.executeUpdate() > 0;
 
-      return true;
-    }
+    if (!renewed)
+      LOG.warn("Lock of task {} has been taken over by another owner.", lease.getTaskName());
 
-    return false;
+    return renewed;
   }
 
-  public boolean unlock(final String taskName) {
+  /**
+   * Releases the lock, if it is still owned by the specified lease.
+   */
+  public boolean unlock(final TaskLease lease) {
 
-    final Query query = this.entityManager.createQuery("DELETE FROM SchedulerLock l WHERE l.taskName = ?1");
-    query.setParameter(1, taskName);
+    final Query query = this.entityManager.createNamedQuery("TaskLock.release");
+    query.setParameter(1, Instant.now());
+    query.setParameter(2, lease.getTaskName());
+    query.setParameter(3, lease.getFencingToken());
 
     return this.transactionTemplate.execute(status -> {
       final int count = query.executeUpdate();
@@ -108,46 +166,18 @@ public class LockerComponent {
     }) > 0;
   }
 
+  private static final class TaskAcquisition {
 
-  // private boolean lockInternal(final String task) {
-  //
-  // final Optional<SchedulerLock> lockOp = this.schedulerLockRepository.findByTaskName(task);
-  //
-  // if (lockOp.isEmpty()) {
-  //
-  // LOG.debug("Creating lock for task: {}", task);
-  //
-  // this.schedulerLockRepository.save(SchedulerLock.builder()
-  // .taskName(task)
-  // .timeout((int) this.timeoutConfig.getTaskLock().toSeconds())
-  // .build());
-  // return true;
-  //
-  // } else {
-  //
-  // final SchedulerLock lock = lockOp.get();
-  // // If lock exists but timed out, create a new lock
-  // // This will happen, if the task has been executed previously
-  // if (Instant.now().isAfter(lock.getCreatedAt().plusSeconds(lock.getTimeout()))) {
-  //
-  // LOG.debug("Updating lock for task: {}", task);
-  //
-  // this.schedulerLockRepository.save(lock.toBuilder()
-  // .createdAt(Instant.now())
-  // .timeout((int) this.timeoutConfig.getTaskLock().toSeconds())
-  // .build());
-  // return true;
-  //
-  // }
-  //
-  // return false;
-  // }
-  // }
-  //
-  // @Transactional
-  // public void free(final String task) {
-  //
-  // LOG.debug("Deleting lock for task: {}", task);
-  // this.schedulerLockRepository.deleteByTaskName(task);
-  // }
+    private final boolean acquired;
+
+    /**
+     * The current fencing token or null, if the lock does not exist
+     */
+    private final Long fencingToken;
+
+    private TaskAcquisition(final boolean acquired, final Long fencingToken) {
+      this.acquired = acquired;
+      this.fencingToken = fencingToken;
+    }
+  }
 }
@@ -4,14 +4,28 @@
 package one.tracking.framework.component;
 
 import static one.tracking.framework.entity.DataConstants.TOKEN_SURVEY_LENGTH;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
@@ -20,20 +34,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
+import com.google.api.core.ApiFuture;
 import com.google.firebase.messaging.BatchResponse;
 import com.google.firebase.messaging.MessagingErrorCode;
 import com.google.firebase.messaging.SendResponse;
+import one.tracking.framework.config.TimeoutProperties;
 import one.tracking.framework.domain.Period;
 import one.tracking.framework.domain.PushNotificationRequest;
 import one.tracking.framework.domain.ReminderBatchResult;
 import one.tracking.framework.domain.ReminderTaskResult;
 import one.tracking.framework.domain.ReminderTaskResult.StateType;
 import one.tracking.framework.domain.SurveyStatusType;
+import one.tracking.framework.domain.TaskLease;
 import one.tracking.framework.entity.DeviceToken;
 import one.tracking.framework.entity.Reminder;
+import one.tracking.framework.entity.ReminderCheckpoint;
 import one.tracking.framework.entity.SurveyInstance;
 import one.tracking.framework.entity.SurveyResponse;
 import one.tracking.framework.entity.meta.IntervalType;
@@ -56,9 +75,14 @@ public class ReminderComponent {
 
   private static final String KEY_SURVEY_NAME_ID = "surveyNameId";
 
+  private static final String SHARD_SEPARATOR = "#";
+
   @Autowired
   private LockerComponent lockerComponent;
 
+  @Autowired
+  private TimeoutProperties timeoutConfig;
+
   @Autowired
   private ServiceUtility utility;
 
@@ -80,6 +104,96 @@ public class ReminderComponent {
   @Value("${app.task.reminder.batchSize:1000}")
   private int batchSize;
 
+  /**
+   * Seek through the DeviceTokens by id instead of using offsets. Keeps the costs per page constant and
+   * is not affected by DeviceTokens being deleted during the run.
+   */
+  @Value("${app.task.reminder.keyset:true}")
+  private boolean keysetPaging;
+
+  /**
+   * Let the database filter out DeviceTokens having a reminder or a response for the current instance
+   * already (NOT EXISTS). Requires {@link #keysetPaging} as the result set shrinks while processing.
+   */
+  @Value("${app.task.reminder.antiJoin:true}")
+  private boolean antiJoinFilter;
+
+  /**
+   * Load the latest SurveyResponses of the depending survey for all users of a page at once instead of
+   * querying them per DeviceToken.
+   */
+  @Value("${app.task.reminder.bulkDependsOn:true}")
+  private boolean bulkDependsOn;
+
+  /**
+   * The amount of reminders persisted before the persistence context gets flushed and cleared, which keeps
+   * it small while storing the reminders of a page.
+   */
+  @Value("${app.task.reminder.flushInterval:50}")
+  private int flushInterval;
+
+  /**
+   * Fetch and filter the next page of DeviceTokens while the messages of the previous pages are still
+   * being sent. Persisting the results is performed by a separate stage. Requires {@link #keysetPaging}.
+   */
+  @Value("${app.task.reminder.pipeline:false}")
+  private boolean pipeline;
+
+  /**
+   * The maximum amount of pages waiting for being persisted while the next page is being processed.
+   */
+  @Value("${app.task.reminder.pipelineDepth:2}")
+  private int pipelineDepth;
+
+  /**
+   * The amount of shards the DeviceTokens are split into by their id. Each shard owns a separate lock,
+   * so that all nodes of a cluster are able to process the shards of a reminder run in parallel.
+   * Requires {@link #keysetPaging}.
+   */
+  @Value("${app.task.reminder.shards:1}")
+  private int shardCount;
+
+  /**
+   * The maximum amount of shards being processed in parallel by this node.
+   */
+  @Value("${app.task.reminder.shardParallelism:2}")
+  private int shardParallelism;
+
+  /**
+   * The delay before retrying to claim shards, which are locked by other nodes. Retries are scheduled on
+   * the shard executor, so that no thread is blocked while waiting.
+   */
+  @Value("${app.task.reminder.shardRetryInterval:30s}")
+  private Duration shardRetryInterval;
+
+  /**
+   * Persist the progress of reminder runs per page, so that interrupted runs resume after the last
+   * processed DeviceToken. Requires {@link #keysetPaging}.
+   */
+  @Value("${app.task.reminder.checkpoint:true}")
+  private boolean checkpoints;
+
+  private final ExecutorService pipelineExecutor =
+      Executors.newCachedThreadPool(new CustomizableThreadFactory("ReminderPipeline-"));
+
+  /**
+   * Processes the shards of all reminder runs of this node, so that at most {@link #shardParallelism}
+   * shards are processed at the same time.
+   */
+  private ScheduledExecutorService shardExecutor;
+
+  @PostConstruct
+  public void init() {
+    this.shardExecutor = Executors.newScheduledThreadPool(Math.max(1, this.shardParallelism),
+        new CustomizableThreadFactory("ReminderShard-"));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    this.pipelineExecutor.shutdownNow();
+    this.shardExecutor.shutdownNow();
+  }
+
   /**
    *
    * Perform sending reminders to users, which did not yet participate on the current survey instance
@@ -119,21 +233,23 @@ public class ReminderComponent {
 
   private ReminderTaskResult lockAndSendReminder(final String nameId) {
 
-    final String taskName = TASK_REMINDER_PREFIX + nameId;
+    if (isSharded())
+      return sendReminderSharded(nameId);
 
-    if (this.lockerComponent.lock(taskName)) {
+    final TaskLease lease = this.lockerComponent.acquire(TASK_REMINDER_PREFIX + nameId);
 
-      final ReminderTaskResult result = performSendReminder(nameId);
+    if (lease == null)
+      return ReminderTaskResult.NOOP;
 
-      this.lockerComponent.unlock(taskName);
+    try {
+      return performSendReminder(nameId, lease);
 
-      return result;
+    } finally {
+      this.lockerComponent.unlock(lease);
     }
-
-    return ReminderTaskResult.NOOP;
   }
 
-  private ReminderTaskResult performSendReminder(final String nameId) {
+  private ReminderTaskResult performSendReminder(final String nameId, final TaskLease lease) {
 
     LOG.debug("Sending reminders for survey '{}'...", nameId);
 
@@ -156,7 +272,278 @@ public class ReminderComponent {
     if (currentSurvey.getDependsOn() != null && dependsOnInstance == null)
       return ReminderTaskResult.empty(nameId);
 
-    return performSendReminder(currentSurvey, currentInstance, dependsOnInstance);
+    return performSendReminder(currentSurvey, currentInstance, dependsOnInstance, 0, lease);
+  }
+
+  private boolean isSharded() {
+    return this.shardCount > 1 && this.keysetPaging;
+  }
+
+  /**
+   * Sharded variant of sending reminders. The lock of the survey is only used for creating the current
+   * survey instance. Afterwards the shards are claimed one by one using separate locks, so that every
+   * node of the cluster is able to work on the same reminder run. Shards locked by other nodes are
+   * retried in the background until they can be claimed, which is the case as soon as the owning node
+   * released the lock or its lease expired. The returned result only covers the shards processed
+   * immediately.
+   */
+  private ReminderTaskResult sendReminderSharded(final String nameId) {
+
+    LOG.debug("Sending reminders for survey '{}' using {} shards...", nameId, this.shardCount);
+
+    final Survey currentSurvey = getSurveyWithReminder(nameId);
+
+    if (currentSurvey == null)
+      return ReminderTaskResult.NOOP;
+
+    /*
+     * Only the node holding the lock of the survey creates the current instance. All other nodes look up
+     * the instance and continue with claiming shards.
+     */
+    final TaskLease lease = this.lockerComponent.acquire(TASK_REMINDER_PREFIX + nameId);
+    final SurveyInstance currentInstance;
+
+    try {
+      currentInstance = getCurrentSurveyInstance(currentSurvey, lease != null);
+    } finally {
+      if (lease != null)
+        this.lockerComponent.unlock(lease);
+    }
+
+    // Another node is about to create the instance
+    if (currentInstance == null)
+      return ReminderTaskResult.NOOP;
+
+    SurveyInstance dependsOnInstance = null;
+
+    if (currentSurvey.getDependsOn() != null) {
+      dependsOnInstance = getCurrentSurveyInstance(getSurvey(currentSurvey.getDependsOn()), false);
+    }
+
+    if (currentSurvey.getDependsOn() != null && dependsOnInstance == null)
+      return ReminderTaskResult.empty(nameId);
+
+    return sendReminderShards(currentSurvey, currentInstance, dependsOnInstance);
+  }
+
+  private ReminderTaskResult sendReminderShards(
+      final Survey currentSurvey,
+      final SurveyInstance currentInstance,
+      final SurveyInstance dependsOnInstance) {
+
+    final Instant runStartedAt = Instant.now();
+    final Map<Integer, Future<ReminderTaskResult>> futures = new LinkedHashMap<>();
+
+    for (int shard = 0; shard < this.shardCount; shard++) {
+      final int currentShard = shard;
+      futures.put(shard, this.shardExecutor.submit(
+          () -> sendReminderShard(currentSurvey, currentInstance, dependsOnInstance, currentShard, runStartedAt)));
+    }
+
+    /*
+     * Shards locked by other nodes are retried at most as long as a lock stays valid without progress. A
+     * node, which is still processing the shard, completes it anyway.
+     */
+    final Instant deadline = runStartedAt.plus(this.timeoutConfig.getTaskLock()).plus(this.shardRetryInterval);
+    final Set<Integer> lockedShards = new TreeSet<>();
+
+    int countShards = 0;
+    int countDeviceTokens = 0;
+    int countNotifications = 0;
+
+    try {
+
+      for (final Map.Entry<Integer, Future<ReminderTaskResult>> entry : futures.entrySet()) {
+
+        try {
+
+          final ReminderTaskResult result = entry.getValue().get();
+
+          if (result == ReminderTaskResult.NOOP) {
+            lockedShards.add(entry.getKey());
+            scheduleShardRetry(currentSurvey, currentInstance, dependsOnInstance, entry.getKey(), runStartedAt,
+                deadline);
+            continue;
+          }
+
+          countShards++;
+          countDeviceTokens += result.getCountDeviceTokens();
+          countNotifications += result.getCountNotifications();
+
+        } catch (final ExecutionException e) {
+          // Not retried within this run; the next run resumes the shard from its checkpoint
+          LOG.error("{}: Processing shard {} failed.", currentSurvey.getNameId(), entry.getKey(), e.getCause());
+        }
+      }
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("{}: Interrupted while processing shards.", currentSurvey.getNameId());
+
+      for (final Future<ReminderTaskResult> future : futures.values())
+        future.cancel(true);
+    }
+
+    if (!lockedShards.isEmpty())
+      LOG.debug("{}: Shards {} are locked by other nodes. Retrying in {}.", currentSurvey.getNameId(),
+          lockedShards, this.shardRetryInterval);
+
+    if (countShards == 0)
+      return ReminderTaskResult.NOOP;
+
+    return ReminderTaskResult.builder()
+        .countDeviceTokens(countDeviceTokens)
+        .countNotifications(countNotifications)
+        .state(StateType.EXECUTED)
+        .surveyNameId(currentSurvey.getNameId())
+        .build();
+  }
+
+  /**
+   * Schedules claiming the specified shard again after the retry interval. The retry re-schedules itself
+   * as long as the shard is locked by another node and the deadline has not been reached.
+   */
+  private void scheduleShardRetry(
+      final Survey currentSurvey,
+      final SurveyInstance currentInstance,
+      final SurveyInstance dependsOnInstance,
+      final int shard,
+      final Instant runStartedAt,
+      final Instant deadline) {
+
+    if (Instant.now().plus(this.shardRetryInterval).isAfter(deadline)) {
+      LOG.warn("{}: Shard {} has not been processed by this node.", currentSurvey.getNameId(), shard);
+      return;
+    }
+
+    this.shardExecutor.schedule(() -> {
+
+      try {
+
+        final ReminderTaskResult result =
+            sendReminderShard(currentSurvey, currentInstance, dependsOnInstance, shard, runStartedAt);
+
+        if (result == ReminderTaskResult.NOOP) {
+          scheduleShardRetry(currentSurvey, currentInstance, dependsOnInstance, shard, runStartedAt, deadline);
+          return;
+        }
+
+        LOG.info("{}: Processed shard {} after retrying. DeviceTokens: {}, notifications: {}",
+            currentSurvey.getNameId(), shard, result.getCountDeviceTokens(), result.getCountNotifications());
+
+      } catch (final Exception e) {
+        LOG.error("{}: Processing shard {} failed.", currentSurvey.getNameId(), shard, e);
+      }
+
+    }, this.shardRetryInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private ReminderTaskResult sendReminderShard(
+      final Survey currentSurvey,
+      final SurveyInstance currentInstance,
+      final SurveyInstance dependsOnInstance,
+      final int shard,
+      final Instant runStartedAt) {
+
+    final String taskName = getTaskName(currentSurvey, shard);
+    final TaskLease lease = this.lockerComponent.acquire(taskName);
+
+    if (lease == null)
+      return ReminderTaskResult.NOOP;
+
+    try {
+
+      final ReminderCheckpoint checkpoint = getCheckpoint(taskName, currentInstance);
+
+      // Nodes of the cluster start their runs at roughly the same time
+      if (checkpoint != null && checkpoint.isCompleted()
+          && checkpoint.getUpdatedAt().isAfter(runStartedAt.minus(this.shardRetryInterval))) {
+
+        LOG.debug("{}: Shard {} has been completed by another node.", currentSurvey.getNameId(), shard);
+        return ReminderTaskResult.empty(currentSurvey.getNameId());
+      }
+
+      LOG.debug("{}: Processing shard {} of {}.", currentSurvey.getNameId(), shard, this.shardCount);
+      return performSendReminder(currentSurvey, currentInstance, dependsOnInstance, shard, lease);
+
+    } finally {
+      this.lockerComponent.unlock(lease);
+    }
+  }
+
+  private String getTaskName(final Survey survey, final int shard) {
+    return isSharded()
+        ? TASK_REMINDER_PREFIX + survey.getNameId() + SHARD_SEPARATOR + shard
+        : TASK_REMINDER_PREFIX + survey.getNameId();
+  }
+
+  private boolean isCheckpointing() {
+    return this.checkpoints && this.keysetPaging;
+  }
+
+  /**
+   * @return the checkpoint of the specified task for the specified survey instance or null, if there is
+   *         none
+   */
+  private ReminderCheckpoint getCheckpoint(final String taskName, final SurveyInstance instance) {
+
+    if (!isCheckpointing())
+      return null;
+
+    final ReminderCheckpoint checkpoint = this.transactionTemplate.execute(
+        status -> this.entityManager.find(ReminderCheckpoint.class, taskName));
+
+    if (checkpoint == null || !checkpoint.getSurveyInstanceId().equals(instance.getId()))
+      return null;
+
+    return checkpoint;
+  }
+
+  /**
+   * @return the checkpoint of an interrupted run to resume from or null, if the run has to start from the
+   *         beginning
+   */
+  private ReminderCheckpoint getResumableCheckpoint(final String taskName, final SurveyInstance instance) {
+
+    final ReminderCheckpoint checkpoint = getCheckpoint(taskName, instance);
+
+    if (checkpoint == null || checkpoint.isCompleted())
+      return null;
+
+    LOG.info("{}: Resuming reminder run after DeviceToken id: {}", taskName, checkpoint.getLastDeviceTokenId());
+
+    return checkpoint;
+  }
+
+  /**
+   * Stores the progress of the run and renews the lease of its lock, which serves as heartbeat of the run.
+   */
+  private void updateCheckpoint(
+      final TaskLease lease,
+      final SurveyInstance instance,
+      final long lastId,
+      final int countDeviceTokens,
+      final int countNotifications,
+      final boolean completed) {
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+
+      this.lockerComponent.fence(lease);
+
+      if (!isCheckpointing())
+        return;
+
+      this.entityManager.merge(ReminderCheckpoint.builder()
+          .taskName(lease.getTaskName())
+          .surveyInstanceId(instance.getId())
+          .lastDeviceTokenId(lastId)
+          .countDeviceTokens(countDeviceTokens)
+          .countNotifications(countNotifications)
+          .completed(completed)
+          .updatedAt(Instant.now())
+          .build());
+      status.flush();
+    });
   }
 
   private SurveyInstance getCurrentSurveyInstance(final Survey survey, final boolean create) {
@@ -251,38 +638,115 @@ public class ReminderComponent {
     });
   }
 
+  private List<DeviceToken> getDeviceTokensAfter(final SurveyInstance instance, final int shard, final long lastId,
+      final Instant maxTimestamp) {
+
+    LOG.debug("{}: Retrieving DeviceTokens after id: {}", instance.getSurvey().getNameId(), lastId);
+
+    final TypedQuery<DeviceToken> query = this.entityManager.createNamedQuery(isSharded()
+        ? "DeviceToken.findByCreatedAtBeforeAndIdGreaterThanAndShard"
+        : "DeviceToken.findByCreatedAtBeforeAndIdGreaterThan",
+        DeviceToken.class);
+    query.setParameter(1, maxTimestamp);
+    query.setParameter(2, lastId);
+    if (isSharded()) {
+      query.setParameter(3, (long) this.shardCount);
+      query.setParameter(4, (long) shard);
+    }
+    query.setMaxResults(this.batchSize);
+
+    return this.transactionTemplate.execute(status -> {
+      status.flush();
+      return query.getResultList();
+    });
+  }
+
+  /**
+   * Retrieve the next page of DeviceTokens after the specified id, for which neither a reminder has been
+   * sent nor a SurveyResponse exists for the specified instance.
+   */
+  private List<DeviceToken> getDeviceTokensWithoutReminderAfter(final SurveyInstance instance, final int shard,
+      final long lastId, final Instant maxTimestamp) {
+
+    LOG.debug("{}: Retrieving DeviceTokens without reminder after id: {}", instance.getSurvey().getNameId(),
+        lastId);
+
+    final TypedQuery<DeviceToken> query = this.entityManager.createNamedQuery(isSharded()
+        ? "DeviceToken.findWithoutReminderByCreatedAtBeforeAndIdGreaterThanAndShard"
+        : "DeviceToken.findWithoutReminderByCreatedAtBeforeAndIdGreaterThan",
+        DeviceToken.class);
+    query.setParameter(1, maxTimestamp);
+    query.setParameter(2, lastId);
+    query.setParameter(3, instance.getId());
+    if (isSharded()) {
+      query.setParameter(4, (long) this.shardCount);
+      query.setParameter(5, (long) shard);
+    }
+    query.setMaxResults(this.batchSize);
+
+    return this.transactionTemplate.execute(status -> {
+      status.flush();
+      return query.getResultList();
+    });
+  }
+
+  private boolean isAntiJoinFilter() {
+    return this.keysetPaging && this.antiJoinFilter;
+  }
+
+  private List<DeviceToken> getNextDeviceTokens(final SurveyInstance instance, final int shard, final int offset,
+      final long lastId, final Instant maxTimestamp) {
+
+    if (isAntiJoinFilter())
+      return getDeviceTokensWithoutReminderAfter(instance, shard, lastId, maxTimestamp);
+
+    return this.keysetPaging
+        ? getDeviceTokensAfter(instance, shard, lastId, maxTimestamp)
+        : getDeviceTokens(instance, offset, maxTimestamp);
+  }
+
   private ReminderTaskResult performSendReminder(
       final Survey currentSurvey,
       final SurveyInstance currentInstance,
-      final SurveyInstance dependsOnInstance) {
+      final SurveyInstance dependsOnInstance,
+      final int shard,
+      final TaskLease lease) {
+
+    if (this.pipeline && this.keysetPaging)
+      return performSendReminderPipelined(currentSurvey, currentInstance, dependsOnInstance, shard, lease);
 
     final Instant now = Instant.now();
-    final int batchSize = 1000;
+    final ReminderCheckpoint checkpoint = getResumableCheckpoint(lease.getTaskName(), currentInstance);
 
-    int successCount = 0;
-    int tokenCount = 0;
+    int successCount = checkpoint == null ? 0 : checkpoint.getCountNotifications();
+    int tokenCount = checkpoint == null ? 0 : checkpoint.getCountDeviceTokens();
     int offset = 0;
+    long lastId = checkpoint == null ? 0 : checkpoint.getLastDeviceTokenId();
 
-    List<DeviceToken> deviceTokens = getDeviceTokens(currentInstance, offset, now);
+    List<DeviceToken> deviceTokens = getNextDeviceTokens(currentInstance, shard, offset, lastId, now);
 
     while (!deviceTokens.isEmpty()) {
 
-      LOG.debug("{}: DeviceToken pages: Offset {} | Batch Size: {} | Page Size: {}",
+      LOG.debug("{}: DeviceToken pages: Offset {} | Last Id: {} | Batch Size: {} | Page Size: {}",
           currentSurvey.getNameId(),
           offset,
-          batchSize,
+          lastId,
+          this.batchSize,
           deviceTokens.size());
 
+      // The cursor only depends on the fetched page, so deleting invalid DeviceTokens does not affect it
+      lastId = deviceTokens.get(deviceTokens.size() - 1).getId();
+
       final List<DeviceToken> inactiveDeviceTokens = checkDependsOnCompletion(
           currentSurvey,
           dependsOnInstance,
-          checkRemindersAndResponses(currentInstance, deviceTokens));
+          isAntiJoinFilter() ? deviceTokens : checkRemindersAndResponses(currentInstance, deviceTokens));
 
       if (inactiveDeviceTokens.isEmpty()) {
 
         LOG.debug("{}: No DeviceTokens available to send messages to. Skipping sending messages.",
             currentSurvey.getNameId());
-        offset += batchSize;
+        offset += this.batchSize;
 
       } else {
 
@@ -291,30 +755,34 @@ public class ReminderComponent {
 
           if (!batchResponse.getInvalidDeviceTokens().isEmpty()) {
 
-            removeInvalidDeviceTokens(currentSurvey, batchResponse.getInvalidDeviceTokens());
+            removeInvalidDeviceTokens(currentSurvey, batchResponse.getInvalidDeviceTokens(), lease);
 
-            offset += batchSize - batchResponse.getInvalidDeviceTokens().size();
+            offset += this.batchSize - batchResponse.getInvalidDeviceTokens().size();
 
           } else {
-            offset += batchSize;
+            offset += this.batchSize;
           }
 
           if (!batchResponse.getValidDeviceTokens().isEmpty())
-            persistSentReminders(currentSurvey, currentInstance, batchResponse);
+            persistSentReminders(currentSurvey, currentInstance, batchResponse, lease);
 
           successCount += batchResponse.getBatchResponses().stream().mapToInt(f -> f.getSuccessCount()).sum();
 
         } catch (InterruptedException | ExecutionException e) {
-          offset += batchSize;
+          offset += this.batchSize;
           LOG.error(e.getMessage(), e);
         }
         tokenCount += inactiveDeviceTokens.size();
 
       }
 
-      deviceTokens = getDeviceTokens(currentInstance, offset, now);
+      updateCheckpoint(lease, currentInstance, lastId, tokenCount, successCount, false);
+
+      deviceTokens = getNextDeviceTokens(currentInstance, shard, offset, lastId, now);
     }
 
+    updateCheckpoint(lease, currentInstance, lastId, tokenCount, successCount, true);
+
     return ReminderTaskResult.builder()
         .countDeviceTokens(tokenCount)
         .countNotifications(successCount)
@@ -323,51 +791,216 @@ public class ReminderComponent {
         .build();
   }
 
-  private void removeInvalidDeviceTokens(final Survey survey, final List<DeviceToken> deviceTokens) {
+  /**
+   * Pipelined variant of sending reminders: The current thread fetches and filters pages of
+   * DeviceTokens and triggers sending the messages asynchronously. The pending batches are handed over
+   * to the persistence stage using a bounded queue, which waits for the responses of FCM, removes
+   * invalid DeviceTokens and stores the reminders. This way the database work of the next page
+   * overlaps with the FCM requests of the previous pages.
+   */
+  private ReminderTaskResult performSendReminderPipelined(
+      final Survey currentSurvey,
+      final SurveyInstance currentInstance,
+      final SurveyInstance dependsOnInstance,
+      final int shard,
+      final TaskLease lease) {
+
+    final Instant now = Instant.now();
+    final PushNotificationRequest request = createReminderRequest(currentSurvey);
+    final BlockingQueue<PendingReminderBatch> queue = new ArrayBlockingQueue<>(Math.max(1, this.pipelineDepth));
+    final ReminderCheckpoint checkpoint = getResumableCheckpoint(lease.getTaskName(), currentInstance);
 
-    LOG.debug("{}: Deleting reminders for {} invalid DeviceTokens", survey.getNameId(), deviceTokens.size());
+    final Future<Integer> persistence = this.pipelineExecutor.submit(() -> {
 
-    for (final DeviceToken deviceToken : deviceTokens) {
+      int successCount = checkpoint == null ? 0 : checkpoint.getCountNotifications();
+      PendingReminderBatch batch = queue.take();
 
-      this.transactionTemplate.executeWithoutResult(status -> {
-        final Query query = this.entityManager.createNamedQuery("Reminder.deleteByDeviceTokenId");
-        query.setParameter(1, deviceToken.getId());
-        query.executeUpdate();
-        status.flush();
-      });
+      while (batch != PendingReminderBatch.END) {
+        successCount += completeReminderBatch(currentSurvey, currentInstance, batch, lease);
+        // Progress is stored after the reminders of the batch have been stored
+        updateCheckpoint(lease, currentInstance, batch.getLastId(), batch.getCountDeviceTokens(), successCount,
+            false);
+        batch = queue.take();
+      }
+      return successCount;
+    });
+
+    int tokenCount = checkpoint == null ? 0 : checkpoint.getCountDeviceTokens();
+    long lastId = checkpoint == null ? 0 : checkpoint.getLastDeviceTokenId();
+
+    try {
+
+      List<DeviceToken> deviceTokens = getNextDeviceTokens(currentInstance, shard, 0, lastId, now);
+
+      while (!deviceTokens.isEmpty()) {
+
+        LOG.debug("{}: DeviceToken pages: Last Id: {} | Page Size: {}",
+            currentSurvey.getNameId(),
+            lastId,
+            deviceTokens.size());
+
+        lastId = deviceTokens.get(deviceTokens.size() - 1).getId();
+
+        final List<DeviceToken> inactiveDeviceTokens = checkDependsOnCompletion(
+            currentSurvey,
+            dependsOnInstance,
+            isAntiJoinFilter() ? deviceTokens : checkRemindersAndResponses(currentInstance, deviceTokens));
+
+        if (inactiveDeviceTokens.isEmpty()) {
+
+          LOG.debug("{}: No DeviceTokens available to send messages to. Skipping sending messages.",
+              currentSurvey.getNameId());
+
+          // Keep the lease alive, as long as no batch reaches the persistence stage
+          if (!this.lockerComponent.renew(lease))
+            throw new IllegalStateException("Lost lock of task: " + lease.getTaskName());
+
+        } else {
+
+          LOG.debug("{}: Sending reminders for {} DeviceTokens.", currentSurvey.getNameId(),
+              inactiveDeviceTokens.size());
+
+          tokenCount += inactiveDeviceTokens.size();
+
+          enqueue(queue, persistence, new PendingReminderBatch(inactiveDeviceTokens,
+              this.firebaseService.sendMessagesAsync(request,
+                  inactiveDeviceTokens.stream().map(m -> m.getToken()).collect(Collectors.toList())),
+              lastId, tokenCount));
+        }
+
+        deviceTokens = getNextDeviceTokens(currentInstance, shard, 0, lastId, now);
+      }
+
+      enqueue(queue, persistence, PendingReminderBatch.END);
+
+      final int successCount = persistence.get();
+
+      updateCheckpoint(lease, currentInstance, lastId, tokenCount, successCount, true);
+
+      return ReminderTaskResult.builder()
+          .countDeviceTokens(tokenCount)
+          .countNotifications(successCount)
+          .state(StateType.EXECUTED)
+          .surveyNameId(currentSurvey.getNameId())
+          .build();
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while sending reminders.", e);
+
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException("Persisting reminders failed.", e.getCause());
+
+    } finally {
+      // Stops the persistence stage in case of errors; no-op, if it has completed already
+      persistence.cancel(true);
     }
+  }
 
-    LOG.debug("{}: Deleting {} invalid DeviceTokens", survey.getNameId(), deviceTokens.size());
+  /**
+   * Hand over the batch to the persistence stage. Waits as long as the queue is full, which limits the
+   * amount of pages being in flight.
+   */
+  private void enqueue(final BlockingQueue<PendingReminderBatch> queue, final Future<Integer> persistence,
+      final PendingReminderBatch batch) throws InterruptedException, ExecutionException {
 
-    for (final DeviceToken deviceToken : deviceTokens) {
+    while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
 
-      this.transactionTemplate.executeWithoutResult(status -> {
-        final Query query = this.entityManager.createNamedQuery("DeviceToken.deleteById");
-        query.setParameter(1, deviceToken.getId());
-        query.executeUpdate();
-        status.flush();
-      });
+      if (persistence.isDone()) {
+        // Persistence stage failed -> propagate its exception
+        persistence.get();
+        throw new IllegalStateException("Persistence stage terminated unexpectedly.");
+      }
     }
+  }
 
-    LOG.debug("{}: Deletion completed", survey.getNameId(), deviceTokens.size());
+  /**
+   * Wait for the responses of FCM, remove invalid DeviceTokens and store the reminders for the valid
+   * ones.
+   *
+   * @return the amount of successfully sent messages
+   */
+  private int completeReminderBatch(final Survey survey, final SurveyInstance instance,
+      final PendingReminderBatch batch, final TaskLease lease) throws InterruptedException {
+
+    if (batch.getResponses() == null) {
+      LOG.warn("{}: Messages have not been sent as FCM is not available.", survey.getNameId());
+      return 0;
+    }
+
+    try {
+
+      final ReminderBatchResult batchResponse =
+          evaluateBatchResponses(survey, batch.getDeviceTokens(), batch.getResponses().get());
+
+      if (!batchResponse.getInvalidDeviceTokens().isEmpty())
+        removeInvalidDeviceTokens(survey, batchResponse.getInvalidDeviceTokens(), lease);
+
+      if (!batchResponse.getValidDeviceTokens().isEmpty())
+        persistSentReminders(survey, instance, batchResponse, lease);
+
+      return batchResponse.getBatchResponses().stream().mapToInt(f -> f.getSuccessCount()).sum();
+
+    } catch (final ExecutionException e) {
+      LOG.error(e.getMessage(), e);
+      return 0;
+    }
+  }
+
+  private void removeInvalidDeviceTokens(final Survey survey, final List<DeviceToken> deviceTokens,
+      final TaskLease lease) {
+
+    LOG.debug("{}: Deleting {} invalid DeviceTokens and their reminders", survey.getNameId(), deviceTokens.size());
+
+    final List<Long> deviceTokenIds = deviceTokens.stream().map(DeviceToken::getId).collect(Collectors.toList());
+
+    final Query reminderQuery = this.entityManager.createNamedQuery("Reminder.deleteByDeviceTokenIdIn");
+    reminderQuery.setParameter(1, deviceTokenIds);
+
+    final Query deviceTokenQuery = this.entityManager.createNamedQuery("DeviceToken.deleteByIdIn");
+    deviceTokenQuery.setParameter(1, deviceTokenIds);
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+      this.lockerComponent.fence(lease);
+      reminderQuery.executeUpdate();
+      deviceTokenQuery.executeUpdate();
+      status.flush();
+    });
+
+    LOG.debug("{}: Deletion completed", survey.getNameId());
   }
 
   private void persistSentReminders(final Survey survey, final SurveyInstance instance,
-      final ReminderBatchResult batchResponse) {
+      final ReminderBatchResult batchResponse, final TaskLease lease) {
 
     LOG.debug("{}: Storing reminders for {} DeviceTokens", survey.getNameId(),
         batchResponse.getValidDeviceTokens().size());
 
-    for (final DeviceToken deviceToken : batchResponse.getValidDeviceTokens()) {
+    /*
+     * Store all reminders of the current page in a single transaction, so that a page costs a single
+     * commit. Flushing and clearing in chunks keeps the persistence context small.
+     */
+    this.transactionTemplate.executeWithoutResult(status -> {
+
+      // Rejects the reminders, if another node has taken over the lock in the meantime
+      this.lockerComponent.fence(lease);
+
+      int count = 0;
+
+      for (final DeviceToken deviceToken : batchResponse.getValidDeviceTokens()) {
 
-      this.transactionTemplate.executeWithoutResult(status -> {
         this.entityManager.persist(Reminder.builder()
             .deviceToken(deviceToken)
             .surveyInstance(instance)
             .build());
-        status.flush();
-      });
-    }
+
+        if (++count % Math.max(1, this.flushInterval) == 0) {
+          this.entityManager.flush();
+          this.entityManager.clear();
+        }
+      }
+      status.flush();
+    });
 
     LOG.debug("{}: Storing reminders for {} DeviceTokens DONE", survey.getNameId(),
         batchResponse.getValidDeviceTokens().size());
@@ -458,6 +1091,9 @@ public class ReminderComponent {
     if (dependsOnInstance == null)
       return Collections.emptyList();
 
+    if (this.bulkDependsOn)
+      return checkDependsOnCompletionBulk(currentSurvey, dependsOnInstance, deviceTokens);
+
     final TypedQuery<SurveyResponse> query = this.entityManager.createNamedQuery(
         "SurveyResponse.findBySurveyInstanceIdAndUserIdAndMaxVersion", SurveyResponse.class);
 
@@ -493,17 +1129,72 @@ public class ReminderComponent {
     return result;
   }
 
+  private List<DeviceToken> checkDependsOnCompletionBulk(
+      final Survey currentSurvey,
+      final SurveyInstance dependsOnInstance,
+      final List<DeviceToken> deviceTokens) {
+
+    if (deviceTokens.isEmpty())
+      return deviceTokens;
+
+    final Set<String> userIds = deviceTokens.stream().map(f -> f.getUser().getId()).collect(Collectors.toSet());
+
+    // Only the latest version of the response to each question is taken into account
+    final TypedQuery<SurveyResponse> query = this.entityManager.createNamedQuery(
+        "SurveyResponse.findBySurveyInstanceIdAndUserIdInAndMaxVersion", SurveyResponse.class);
+    query.setParameter(1, dependsOnInstance.getId());
+    query.setParameter(2, userIds);
+
+    // Calculate the status within the transaction as it might require to load lazy associations
+    final Map<String, SurveyStatusType> statusByUserId = this.transactionTemplate.execute(status -> {
+      status.flush();
+
+      final Map<String, List<SurveyResponse>> responsesByUserId = query.getResultList().stream()
+          .collect(Collectors.groupingBy(r -> r.getUser().getId()));
+
+      LOG.trace("{}: Calculating survey status for {} users, {} of them having SurveyResponses.",
+          currentSurvey.getNameId(), userIds.size(), responsesByUserId.size());
+
+      final Map<String, SurveyStatusType> result = new HashMap<>(userIds.size());
+
+      for (final String userId : userIds) {
+        result.put(userId, this.utility.calculateSurveyStatus(dependsOnInstance.getSurvey(),
+            responsesByUserId.getOrDefault(userId, Collections.emptyList())));
+      }
+      return result;
+    });
+
+    final List<DeviceToken> result = deviceTokens.stream()
+        .filter(f -> statusByUserId.get(f.getUser().getId()) != SurveyStatusType.INCOMPLETE)
+        .collect(Collectors.toList());
+
+    LOG.debug("{}: {} DeviceTokens left.", currentSurvey.getNameId(), result.size());
+
+    return result;
+  }
+
   private ReminderBatchResult performSendReminderBatch(final Survey survey, final List<DeviceToken> deviceTokens)
       throws InterruptedException, ExecutionException {
 
     LOG.debug("{}: Sending reminders for {} DeviceTokens.", survey.getNameId(), deviceTokens.size());
 
-    final List<BatchResponse> batchResponses = this.firebaseService.sendMessages(PushNotificationRequest.builder()
+    final List<BatchResponse> batchResponses = this.firebaseService.sendMessages(createReminderRequest(survey),
+        deviceTokens.stream().map(m -> m.getToken()).collect(Collectors.toList()));
+
+    return evaluateBatchResponses(survey, deviceTokens, batchResponses);
+  }
+
+  private PushNotificationRequest createReminderRequest(final Survey survey) {
+
+    return PushNotificationRequest.builder()
         .title(this.reminderTitle)
         .message(this.reminderMessage)
         .data(Collections.singletonMap(KEY_SURVEY_NAME_ID, survey.getNameId()))
-        .build(),
-        deviceTokens.stream().map(m -> m.getToken()).collect(Collectors.toList()));
+        .build();
+  }
+
+  private ReminderBatchResult evaluateBatchResponses(final Survey survey, final List<DeviceToken> deviceTokens,
+      final List<BatchResponse> batchResponses) {
 
     final List<DeviceToken> validDeviceTokens = new ArrayList<>();
     final List<DeviceToken> invalidDeviceTokens = new ArrayList<>();
@@ -551,4 +1242,47 @@ public class ReminderComponent {
   public boolean isAvailable() {
     return this.firebaseService.isAvailable();
   }
+
+  private static final class PendingReminderBatch {
+
+    private static final PendingReminderBatch END = new PendingReminderBatch(Collections.emptyList(), null, 0, 0);
+
+    private final List<DeviceToken> deviceTokens;
+
+    private final ApiFuture<List<BatchResponse>> responses;
+
+    private final long lastId;
+
+    private final int countDeviceTokens;
+
+    private PendingReminderBatch(final List<DeviceToken> deviceTokens,
+        final ApiFuture<List<BatchResponse>> responses, final long lastId, final int countDeviceTokens) {
+      this.deviceTokens = deviceTokens;
+      this.responses = responses;
+      this.lastId = lastId;
+      this.countDeviceTokens = countDeviceTokens;
+    }
+
+    public List<DeviceToken> getDeviceTokens() {
+      return this.deviceTokens;
+    }
+
+    public ApiFuture<List<BatchResponse>> getResponses() {
+      return this.responses;
+    }
+
+    /**
+     * @return the id of the last DeviceToken of the page this batch has been created from
+     */
+    public long getLastId() {
+      return this.lastId;
+    }
+
+    /**
+     * @return the amount of DeviceTokens of the run including this batch
+     */
+    public int getCountDeviceTokens() {
+      return this.countDeviceTokens;
+    }
+  }
 }
@@ -4,26 +4,65 @@
 package one.tracking.framework.component;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.CreationHelper;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.hibernate.annotations.QueryHints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
+import com.google.common.util.concurrent.RateLimiter;
+import one.tracking.framework.component.export.AbortableExportWriter;
+import one.tracking.framework.component.export.CountingExportWriter;
+import one.tracking.framework.component.export.CsvExportWriter;
+import one.tracking.framework.component.export.ExportAbortedException;
+import one.tracking.framework.component.export.ExportColumn;
+import one.tracking.framework.component.export.ExportControl;
+import one.tracking.framework.component.export.ExportWriter;
+import one.tracking.framework.component.export.NdjsonExportWriter;
+import one.tracking.framework.component.export.ParquetExportWriter;
+import one.tracking.framework.component.export.RowConsumer;
+import one.tracking.framework.component.export.RowSource;
+import one.tracking.framework.component.export.SurveyResponseRowEncoder;
+import one.tracking.framework.component.export.XlsxExportWriter;
+import one.tracking.framework.domain.ExportFormat;
+import one.tracking.framework.domain.ExportWindow;
 import one.tracking.framework.domain.SurveyResponseData;
+import one.tracking.framework.entity.ExportWatermark;
 import one.tracking.framework.entity.health.StepCount;
 
 /**
@@ -35,147 +74,596 @@ public class SurveyDataExportComponent {
 
   private static final Logger LOG = LoggerFactory.getLogger(SurveyDataExportComponent.class);
 
+  public static final String SHEET_SURVEY = "survey";
+
+  public static final String SHEET_STEPCOUNT = "stepcount";
+
+  private static final ExportColumn[] SURVEY_RESPONSE_COLUMNS = {
+      ExportColumn.dictionary("Survey"),
+      ExportColumn.timestamp("StartTime"),
+      ExportColumn.timestamp("EndTime"),
+      ExportColumn.string("UserId"),
+      ExportColumn.string("QuestionOrder"),
+      ExportColumn.dictionary("QuestionType"),
+      ExportColumn.dictionary("Question"),
+      ExportColumn.string("Answer"),
+      ExportColumn.string("AnswerVersion"),
+      ExportColumn.bool("Skipped"),
+      ExportColumn.bool("Valid"),
+      ExportColumn.timestamp("AnswerTimestamp")};
+
+  /**
+   * Columns of formats storing typed columns, which contain the answers in separate columns per type.
+   */
+  private static final ExportColumn[] SURVEY_RESPONSE_TYPED_COLUMNS = {
+      ExportColumn.dictionary("Survey"),
+      ExportColumn.timestamp("StartTime"),
+      ExportColumn.timestamp("EndTime"),
+      ExportColumn.string("UserId"),
+      ExportColumn.integer("QuestionOrder"),
+      ExportColumn.dictionary("QuestionType"),
+      ExportColumn.dictionary("Question"),
+      ExportColumn.dictionary("ChecklistEntry"),
+      ExportColumn.bool("BoolAnswer"),
+      ExportColumn.decimal("NumberAnswer"),
+      ExportColumn.string("TextAnswer"),
+      ExportColumn.dictionary("PredefinedAnswer"),
+      ExportColumn.integer("AnswerVersion"),
+      ExportColumn.bool("Skipped"),
+      ExportColumn.bool("Valid"),
+      ExportColumn.timestamp("AnswerTimestamp")};
+
+  private static final ExportColumn[] STEPCOUNT_COLUMNS = {
+      ExportColumn.string("UserId"),
+      ExportColumn.timestamp("StartTime"),
+      ExportColumn.timestamp("EndTime"),
+      ExportColumn.integer("StepCount"),
+      ExportColumn.timestamp("Timestamp")};
+
   @Autowired
   private TransactionTemplate transactionTemplate;
 
   @Autowired
   private EntityManager entityManager;
 
-  public void export(final Instant startTime, final Instant endTime, final OutputStream outStream) throws IOException {
+  /**
+   * Use a streaming workbook, which keeps only a window of rows in memory and spills all other rows into
+   * temporary files.
+   */
+  @Value("${app.export.streaming:true}")
+  private boolean streaming;
+
+  /**
+   * The amount of rows per sheet kept in memory by the streaming workbook.
+   */
+  @Value("${app.export.rowWindow:100}")
+  private int rowWindow;
+
+  @Value("${app.export.compressTempFiles:true}")
+  private boolean compressTempFiles;
+
+  /**
+   * Read the rows using a database cursor instead of paging by offset.
+   */
+  @Value("${app.export.cursor:true}")
+  private boolean cursor;
+
+  /**
+   * The amount of rows fetched per round trip by the cursor.
+   */
+  @Value("${app.export.fetchSize:500}")
+  private int fetchSize;
+
+  /**
+   * The maximum amount of time slices being read concurrently from the database for all exports. A value
+   * of 1 reads the sheets sequentially within the requesting thread, so that each sheet gets read from a
+   * single snapshot of the database. Otherwise each time slice gets read from its own snapshot, so rows
+   * changed during the export may be exported inconsistently. Hence concurrent reading is opt-in.
+   */
+  @Value("${app.export.parallelism:1}")
+  private int parallelism;
+
+  /**
+   * The maximum amount of time slices of a single export being read concurrently, so that a slow client
+   * cannot occupy all readers.
+   */
+  @Value("${app.export.slicesPerExport:2}")
+  private int slicesPerExport;
+
+  /**
+   * The maximum time a reader waits for the client of its export to consume rows, after which the export
+   * gets aborted. Releases the reader and its database connection held by slow clients.
+   */
+  @Value("${app.export.writeTimeout:1m}")
+  private Duration writeTimeout;
+
+  /**
+   * The amount of time slices each sheet gets split into for reading them concurrently.
+   */
+  @Value("${app.export.slices:4}")
+  private int slices;
+
+  /**
+   * The maximum amount of rows per time slice, which have been read but not yet written.
+   */
+  @Value("${app.export.queueCapacity:1000}")
+  private int queueCapacity;
+
+  /**
+   * The delay of incremental exports behind the current time, which allows transactions storing data to
+   * complete before the data gets exported.
+   */
+  @Value("${app.export.incremental.lag:1m}")
+  private Duration incrementalLag;
+
+  /**
+   * The size in bytes of the row groups of Parquet exports, which get buffered in memory before they get written.
+   */
+  @Value("${app.export.parquet.rowGroupBytes:16777216}")
+  private long parquetRowGroupSize;
+
+  /**
+   * The maximum amount of rows per data page of Parquet exports.
+   */
+  @Value("${app.export.parquet.pageSize:10000}")
+  private int parquetPageSize;
+
+  /**
+   * Compress the pages of Parquet exports using GZIP.
+   */
+  @Value("${app.export.parquet.compression:true}")
+  private boolean parquetCompression;
+
+  /**
+   * The maximum amount of rows per second read from the database by all exports; 0 disables the limit.
+   */
+  @Value("${app.export.maxRowsPerSecond:0}")
+  private double maxRowsPerSecond;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private ExportCacheComponent exportCache;
+
+  private TransactionTemplate readTransactionTemplate;
+
+  private ExecutorService exportExecutor;
 
-    LOG.debug("Exporting data for interval: {} - {}", startTime, endTime);
+  private RateLimiter rateLimiter;
 
-    try (final Workbook workbook = WorkbookFactory.create(true)) {
+  @PostConstruct
+  public void init() {
+    this.readTransactionTemplate = new TransactionTemplate(this.transactionManager);
+    this.readTransactionTemplate.setReadOnly(true);
+    this.readTransactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    this.readTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
 
-      final CellStyle cellStyleDateTime = workbook.createCellStyle();
-      final CreationHelper createHelper = workbook.getCreationHelper();
-      cellStyleDateTime.setDataFormat(createHelper.createDataFormat().getFormat("m/d/yy h:mm"));
+    if (this.parallelism > 1)
+      this.exportExecutor =
+          Executors.newFixedThreadPool(this.parallelism, new CustomizableThreadFactory("SurveyDataExport-"));
+
+    if (this.maxRowsPerSecond > 0)
+      this.rateLimiter = RateLimiter.create(this.maxRowsPerSecond);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (this.exportExecutor != null)
+      this.exportExecutor.shutdownNow();
+  }
+
+  /**
+   * Exports the data of the specified interval.
+   *
+   * @param sheet
+   *          the sheet to export ({@link #SHEET_SURVEY} or {@link #SHEET_STEPCOUNT}) for formats not
+   *          supporting multiple sheets; defaults to {@link #SHEET_SURVEY}
+   */
+  public void export(final Instant startTime, final Instant endTime, final ExportFormat format, final String sheet,
+      final OutputStream outStream) throws IOException {
+    export(startTime, endTime, format, sheet, outStream, null);
+  }
 
-      exportSurveyResponseData(workbook, startTime, endTime, cellStyleDateTime);
-      exportStepCounter(workbook, startTime, endTime, cellStyleDateTime);
-      workbook.write(outStream);
+  /**
+   * Exports the data of the specified interval and tracks the amount of written rows. The export stops
+   * reading from the database as soon as writing to the stream fails.
+   *
+   * @param rowCounter
+   *          the counter to increment for each written row; may be null
+   * @throws ExportAbortedException
+   *           if writing to the stream failed, e.g. because the client closed the connection
+   * @see #export(Instant, Instant, ExportFormat, String, OutputStream)
+   */
+  public void export(final Instant startTime, final Instant endTime, final ExportFormat format, final String sheet,
+      final OutputStream outStream, final AtomicLong rowCounter) throws IOException {
+
+    LOG.debug("Exporting data for interval: {} - {} as {}", startTime, endTime, format);
+
+    final String singleSheet = format.isMultipleSheets() ? null : sheet == null ? SHEET_SURVEY : sheet;
+
+    if (singleSheet != null && !SHEET_SURVEY.equals(singleSheet) && !SHEET_STEPCOUNT.equals(singleSheet))
+      throw new IllegalArgumentException("Unsupported sheet: " + sheet);
+
+    final List<String> sheets = singleSheet == null
+        ? Arrays.asList(SHEET_SURVEY, SHEET_STEPCOUNT)
+        : Collections.singletonList(singleSheet);
+
+    final ExportControl control = new ExportControl(this.rateLimiter);
+
+    try (final ExportWriter writer = new AbortableExportWriter(rowCounter == null
+        ? createWriter(format, outStream)
+        : new CountingExportWriter(createWriter(format, outStream), rowCounter), control)) {
+
+      if (this.exportExecutor != null) {
+        exportConcurrently(writer, sheets, startTime, endTime, format.isTypedColumns(), control);
+
+      } else {
+
+        for (final String currentSheet : sheets) {
+          startSheet(writer, currentSheet, format.isTypedColumns());
+          readRows(currentSheet, format.isTypedColumns(), startTime, endTime, control, writer::writeRow);
+        }
+      }
+
+      writer.finish();
     }
   }
 
-  private void exportStepCounter(final Workbook workbook, final Instant startTime, final Instant endTime,
-      final CellStyle cellStyleDateTime) {
+  /**
+   * Reads the time slices of all sheets concurrently using the bounded executor. Each time slice gets
+   * handed over to the writer by a bounded queue. The current thread writes the slices in order of their
+   * sheets and time, so the output equals the output of a sequential export. At most
+   * {@link #slicesPerExport} slices get submitted ahead of the slice being written, which is always either
+   * completed or running. Each slice gets read within its own transaction, so the rows of a sheet are not
+   * read from a single snapshot of the database.
+   */
+  private void exportConcurrently(final ExportWriter writer, final List<String> sheets, final Instant startTime,
+      final Instant endTime, final boolean typed, final ExportControl control) throws IOException {
+
+    final List<Instant[]> timeSlices = createTimeSlices(startTime, endTime);
+    final List<ExportSlice> exportSlices = new ArrayList<>(sheets.size() * timeSlices.size());
+
+    for (final String sheet : sheets) {
+      for (final Instant[] timeSlice : timeSlices) {
+        exportSlices.add(new ExportSlice(sheet, timeSlice[0], timeSlice[1], this.queueCapacity, this.writeTimeout));
+      }
+    }
+
+    int countSubmitted = 0;
 
-    final Sheet sheet = workbook.createSheet("stepcount");
-    // Create header
-    final Row headerRow = sheet.createRow(0);
-    headerRow.createCell(0).setCellValue("UserId");
-    headerRow.createCell(1).setCellValue("StartTime");
-    headerRow.createCell(2).setCellValue("EndTime");
-    headerRow.createCell(3).setCellValue("StepCount");
-    headerRow.createCell(4).setCellValue("Timestamp");
+    try {
 
-    int offset = 0;
-    int rowIndex = 1;
-    List<StepCount> stepCounts = getStepCountData(startTime, endTime, offset);
+      while (countSubmitted < Math.min(Math.max(1, this.slicesPerExport), exportSlices.size())) {
+        submitSlice(exportSlices.get(countSubmitted++), typed, control);
+      }
 
-    while (!stepCounts.isEmpty()) {
+      String currentSheet = null;
 
-      for (final StepCount data : stepCounts) {
+      for (final ExportSlice exportSlice : exportSlices) {
 
-        final Row row = sheet.createRow(rowIndex++);
+        if (!exportSlice.getSheet().equals(currentSheet)) {
+          currentSheet = exportSlice.getSheet();
+          startSheet(writer, currentSheet, typed);
+        }
 
-        row.createCell(0).setCellValue(data.getUser().getId());
+        Object[] row = exportSlice.take();
 
-        Cell cell = row.createCell(1);
-        cell.setCellValue(LocalDateTime.ofInstant(data.getStartTime(), ZoneOffset.UTC));
-        cell.setCellStyle(cellStyleDateTime);
+        while (row != ExportSlice.END) {
+          writer.writeRow(row);
+          row = exportSlice.take();
+        }
+
+        // Propagates failures of reading the slice
+        exportSlice.getFuture().get();
+
+        if (countSubmitted < exportSlices.size())
+          submitSlice(exportSlices.get(countSubmitted++), typed, control);
+      }
 
-        cell = row.createCell(2);
-        cell.setCellValue(LocalDateTime.ofInstant(data.getEndTime(), ZoneOffset.UTC));
-        cell.setCellStyle(cellStyleDateTime);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while exporting data.");
 
-        row.createCell(3).setCellValue(data.getStepCount());
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IllegalStateException("Reading export data failed.", e.getCause());
 
-        cell = row.createCell(4);
-        cell.setCellValue(data.getUpdatedAt() == null
-            ? LocalDateTime.ofInstant(data.getCreatedAt(), ZoneOffset.UTC)
-            : LocalDateTime.ofInstant(data.getUpdatedAt(), ZoneOffset.UTC));
-        cell.setCellStyle(cellStyleDateTime);
+    } finally {
+      // Stops all readers in case of errors; no-op for completed slices
+      control.abort();
+      for (int i = 0; i < countSubmitted; i++) {
+        exportSlices.get(i).getFuture().cancel(true);
       }
+    }
+  }
+
+  private void submitSlice(final ExportSlice exportSlice, final boolean typed, final ExportControl control) {
+
+    exportSlice.setFuture(this.exportExecutor.submit(() -> {
+      readSlice(exportSlice, typed, control);
+      return null;
+    }));
+  }
+
+  private void readSlice(final ExportSlice exportSlice, final boolean typed, final ExportControl control)
+      throws IOException {
 
-      offset += stepCounts.size();
-      stepCounts = getStepCountData(startTime, endTime, offset);
+    try {
+      readRows(exportSlice.getSheet(), typed, exportSlice.getStartTime(), exportSlice.getEndTime(), control,
+          // The queued rows need to be copied, as the encoder reuses its row
+          row -> exportSlice.put(row.clone(), control));
+
+    } finally {
+      exportSlice.finish();
     }
   }
 
-  private void exportSurveyResponseData(final Workbook workbook, final Instant startTime, final Instant endTime,
-      final CellStyle cellStyleDateTime) {
+  /**
+   * Splits the interval into consecutive slices. As the queries include both bounds, each slice ends one
+   * microsecond before the next one starts. If the cache is enabled, the slices get aligned to the slices of
+   * the cache, so that these do not get split.
+   */
+  private List<Instant[]> createTimeSlices(final Instant startTime, final Instant endTime) {
 
-    final Sheet sheet = workbook.createSheet("survey");
-    // Create header
-    final Row headerRow = sheet.createRow(0);
-    headerRow.createCell(0).setCellValue("Survey");
-    headerRow.createCell(1).setCellValue("StartTime");
-    headerRow.createCell(2).setCellValue("EndTime");
-    headerRow.createCell(3).setCellValue("UserId");
-    headerRow.createCell(4).setCellValue("QuestionOrder");
-    headerRow.createCell(5).setCellValue("QuestionType");
-    headerRow.createCell(6).setCellValue("Question");
-    headerRow.createCell(7).setCellValue("Answer");
-    headerRow.createCell(8).setCellValue("AnswerVersion");
-    headerRow.createCell(9).setCellValue("Skipped");
-    headerRow.createCell(10).setCellValue("Valid");
-    headerRow.createCell(11).setCellValue("AnswerTimestamp");
+    final long step = ChronoUnit.MICROS.between(startTime, endTime) / Math.max(1, this.slices);
 
-    int offset = 0;
-    int rowIndex = 1;
-    List<SurveyResponseData> responses = getSurveyResponseData(startTime, endTime, offset);
+    if (step < 1)
+      return Collections.singletonList(new Instant[] {startTime, endTime});
+
+    final List<Instant> sliceStarts = new ArrayList<>(this.slices);
+    sliceStarts.add(startTime);
+
+    for (int i = 1; i < this.slices; i++) {
+
+      Instant sliceStart = startTime.plus(step * i, ChronoUnit.MICROS);
+
+      if (this.exportCache.isEnabled())
+        sliceStart = this.exportCache.alignToSlice(sliceStart);
 
-    while (!responses.isEmpty()) {
+      if (sliceStart.isAfter(sliceStarts.get(sliceStarts.size() - 1)))
+        sliceStarts.add(sliceStart);
+    }
+
+    final List<Instant[]> timeSlices = new ArrayList<>(sliceStarts.size());
 
-      for (final SurveyResponseData data : responses) {
+    for (int i = 0; i < sliceStarts.size(); i++) {
 
-        final Row row = sheet.createRow(rowIndex++);
-        row.createCell(0).setCellValue(data.getNameId());
+      final Instant sliceEnd = i == sliceStarts.size() - 1
+          ? endTime
+          : sliceStarts.get(i + 1).minus(1, ChronoUnit.MICROS);
 
-        Cell cell = row.createCell(1);
-        cell.setCellValue(data.getStartTime().toInstant().atZone(ZoneOffset.UTC).toLocalDateTime());
-        cell.setCellStyle(cellStyleDateTime);
+      timeSlices.add(new Instant[] {sliceStarts.get(i), sliceEnd});
+    }
+    return timeSlices;
+  }
 
-        cell = row.createCell(2);
-        cell.setCellValue(data.getEndTime().toInstant().atZone(ZoneOffset.UTC).toLocalDateTime());
-        cell.setCellStyle(cellStyleDateTime);
+  /**
+   * Reads the rows of the sheet. Closed time slices get read from the cache, if it is enabled.
+   */
+  private void readRows(final String sheet, final boolean typed, final Instant startTime, final Instant endTime,
+      final ExportControl control, final RowConsumer<Object[]> consumer) throws IOException {
+
+    final RowSource source = SHEET_SURVEY.equals(sheet)
+        ? new SurveyResponseRowSource(typed, control)
+        : new StepCountRowSource(control);
+
+    if (this.exportCache.isEnabled())
+      this.exportCache.read(SHEET_SURVEY.equals(sheet) && typed ? sheet + "-typed" : sheet, startTime, endTime,
+          source, consumer);
+    else
+      source.read(startTime, endTime, consumer);
+  }
 
-        row.createCell(3).setCellValue(data.getUserId());
-        row.createCell(4).setCellValue(data.getOrder().toString());
-        row.createCell(5).setCellValue(data.getQuestionType());
+  private void startSheet(final ExportWriter writer, final String sheet, final boolean typed) throws IOException {
 
-        row.createCell(6).setCellValue(data.getCheckListEntry() == null ? data.getQuestion()
-            : data.getQuestion() + ": " + data.getCheckListEntry());
+    if (SHEET_SURVEY.equals(sheet))
+      startSurveyResponseSheet(writer, typed);
+    else
+      startStepCountSheet(writer);
+  }
 
-        row.createCell(7).setCellValue(
-            data.getBoolAnswer() != null ? data.getBoolAnswer().toString()
-                : data.getTextAnswer() != null ? data.getTextAnswer()
-                    : data.getNumberAnswer() != null ? data.getNumberAnswer().toString()
-                        : data.getPredefinedAnswer() != null ? data.getPredefinedAnswer() : null);
+  /**
+   * @return the window of the next incremental export for the specified consumer, which starts right after
+   *         the watermark of the previous export
+   */
+  public ExportWindow getIncrementalWindow(final String consumerId) {
 
-        row.createCell(8).setCellValue(data.getVersion().toString());
+    final ExportWatermark watermark = this.transactionTemplate.execute(
+        status -> this.entityManager.find(ExportWatermark.class, consumerId));
 
-        row.createCell(9).setCellValue(data.getSkipped());
-        row.createCell(10).setCellValue(data.getValid());
+    final Instant startTime = watermark == null
+        ? Instant.EPOCH
+        : watermark.getWatermark().plus(1, ChronoUnit.MICROS);
 
-        cell = row.createCell(11);
-        cell.setCellValue(data.getCreatedAt().toInstant().atZone(ZoneOffset.UTC).toLocalDateTime());
-        cell.setCellStyle(cellStyleDateTime);
+    // The watermark must survive the precision of the database column
+    final Instant endTime = Instant.now().minus(this.incrementalLag).truncatedTo(ChronoUnit.MILLIS);
+
+    return ExportWindow.builder()
+        .consumerId(consumerId)
+        .watermark(watermark == null ? null : watermark.getWatermark())
+        .startTime(startTime)
+        .endTime(endTime)
+        .build();
+  }
+
+  /**
+   * Restores the window of an incremental export from the bounds, which have been returned to the
+   * consumer as epoch milliseconds.
+   *
+   * @throws IllegalArgumentException
+   *           if the window ends before it starts or after the current end of incremental exports
+   */
+  public ExportWindow getIncrementalWindow(final String consumerId, final long startMillis, final long endMillis) {
+
+    // The watermark has a precision of milliseconds, so truncating the start restores it
+    final Instant watermark = startMillis == 0 ? null : Instant.ofEpochMilli(startMillis);
+    final Instant endTime = Instant.ofEpochMilli(endMillis);
+
+    if (watermark != null && !endTime.isAfter(watermark))
+      throw new IllegalArgumentException("The end of the window must be after its start.");
+
+    if (endTime.isAfter(Instant.now().minus(this.incrementalLag)))
+      throw new IllegalArgumentException("The end of the window must not be after the end of incremental exports.");
+
+    return ExportWindow.builder()
+        .consumerId(consumerId)
+        .watermark(watermark)
+        .startTime(watermark == null ? Instant.EPOCH : watermark.plus(1, ChronoUnit.MICROS))
+        .endTime(endTime)
+        .build();
+  }
+
+  /**
+   * Advances the watermark of the consumer to the end of the exported window. Must only be called after
+   * the consumer acknowledged, that the export of the window has been received completely.
+   *
+   * @return true, if the watermark has been advanced; false, if the watermark is no longer the one the
+   *         window has been created for, because it has been advanced by another commit of the consumer
+   */
+  public boolean commitIncrementalWindow(final ExportWindow window) {
+
+    if (window.isEmpty())
+      return false;
+
+    if (window.getWatermark() == null) {
+
+      try {
+        this.transactionTemplate.executeWithoutResult(status -> {
+          this.entityManager.persist(ExportWatermark.builder()
+              .consumerId(window.getConsumerId())
+              .watermark(window.getEndTime())
+              .updatedAt(Instant.now())
+              .build());
+          status.flush();
+        });
+        return true;
+
+      } catch (final DataIntegrityViolationException e) {
+        LOG.debug("Watermark of consumer {} has been created concurrently.", window.getConsumerId());
+        return false;
       }
+    }
+
+    final Query query = this.entityManager.createNamedQuery("ExportWatermark.updateWatermark");
+    query.setParameter(1, window.getEndTime());
+    query.setParameter(2, Instant.now());
+    query.setParameter(3, window.getConsumerId());
+    query.setParameter(4, window.getWatermark());
 
-      offset += responses.size();
-      responses = getSurveyResponseData(startTime, endTime, offset);
+    return this.transactionTemplate.execute(status -> query.executeUpdate()) > 0;
+  }
+
+  private ExportWriter createWriter(final ExportFormat format, final OutputStream outStream) throws IOException {
+
+    switch (format) {
+      case CSV:
+        return new CsvExportWriter(outStream);
+      case NDJSON:
+        return new NdjsonExportWriter(outStream);
+      case XLSX:
+        return new XlsxExportWriter(createWorkbook(), outStream);
+      case PARQUET:
+        return new ParquetExportWriter(outStream, this.parquetRowGroupSize, this.parquetPageSize,
+            this.parquetCompression);
+      default:
+        throw new IllegalArgumentException("Unsupported format: " + format);
     }
   }
 
-  private List<SurveyResponseData> getSurveyResponseData(final Instant startTime, final Instant endTime,
-      final int offset) {
+  private Workbook createWorkbook() throws IOException {
+
+    if (!this.streaming)
+      return WorkbookFactory.create(true);
+
+    final SXSSFWorkbook workbook = new SXSSFWorkbook(Math.max(1, this.rowWindow));
+    workbook.setCompressTempFiles(this.compressTempFiles);
+    return workbook;
+  }
+
+  private void startStepCountSheet(final ExportWriter writer) throws IOException {
+    writer.startSheet(SHEET_STEPCOUNT, STEPCOUNT_COLUMNS);
+  }
+
+  private Object[] toStepCountRow(final StepCount data) {
+
+    return new Object[] {
+        data.getUser().getId(),
+        data.getStartTime(),
+        data.getEndTime(),
+        data.getStepCount(),
+        data.getUpdatedAt() == null ? data.getCreatedAt() : data.getUpdatedAt()};
+  }
+
+  private void startSurveyResponseSheet(final ExportWriter writer, final boolean typed) throws IOException {
+    writer.startSheet(SHEET_SURVEY, typed ? SURVEY_RESPONSE_TYPED_COLUMNS : SURVEY_RESPONSE_COLUMNS);
+  }
+
+  /**
+   * Reads all rows of the query using a forward-only cursor within a single read-only transaction, so
+   * that all rows are read from the same snapshot of the database. The persistence context gets cleared
+   * periodically to keep the memory footprint independent of the amount of rows.
+   */
+  private <T> void streamRows(final Supplier<TypedQuery<T>> querySupplier, final ExportControl control,
+      final RowConsumer<T> consumer) throws IOException {
+
+    final IOException exception = this.readTransactionTemplate.execute(status -> {
+
+      // Create the query within the transaction, so that the cursor is bound to its connection
+      final TypedQuery<T> query = querySupplier.get();
+      query.setHint(QueryHints.FETCH_SIZE, this.fetchSize);
+      query.setHint(QueryHints.READ_ONLY, true);
+
+      try (final Stream<T> stream = query.getResultStream()) {
+
+        final Iterator<T> iterator = stream.iterator();
+        int count = 0;
+
+        while (iterator.hasNext()) {
+
+          control.checkAborted();
+          consumer.accept(iterator.next());
+
+          if (++count % this.fetchSize == 0) {
+            this.entityManager.clear();
+            // Throttles the next round trip
+            control.onRowsRead(this.fetchSize);
+          }
+        }
+        return null;
+
+      } catch (final IOException e) {
+        return e;
+      }
+    });
+
+    if (exception != null)
+      throw exception;
+  }
+
+  private TypedQuery<SurveyResponseData> createSurveyResponseQuery(final Instant startTime, final Instant endTime) {
 
     final TypedQuery<SurveyResponseData> query = this.entityManager.createNamedQuery(
         "SurveyResponse.nativeFindByCreatedAtBetween", SurveyResponseData.class);
     query.setParameter(1, startTime);
     query.setParameter(2, endTime);
+    return query;
+  }
+
+  private TypedQuery<StepCount> createStepCountQuery(final Instant startTime, final Instant endTime) {
+
+    final TypedQuery<StepCount> query = this.entityManager.createNamedQuery(
+        "StepCount.findByCreatedAtBetween", StepCount.class);
+    query.setParameter(1, startTime);
+    query.setParameter(2, endTime);
+    return query;
+  }
+
+  private List<SurveyResponseData> getSurveyResponseData(final Instant startTime, final Instant endTime,
+      final int offset) {
+
+    final TypedQuery<SurveyResponseData> query = createSurveyResponseQuery(startTime, endTime);
     query.setFirstResult(offset);
     query.setMaxResults(500);
 
@@ -187,10 +675,7 @@ public class SurveyDataExportComponent {
   private List<StepCount> getStepCountData(final Instant startTime, final Instant endTime,
       final int offset) {
 
-    final TypedQuery<StepCount> query = this.entityManager.createNamedQuery(
-        "StepCount.findByCreatedAtBetween", StepCount.class);
-    query.setParameter(1, startTime);
-    query.setParameter(2, endTime);
+    final TypedQuery<StepCount> query = createStepCountQuery(startTime, endTime);
     query.setFirstResult(offset);
     query.setMaxResults(500);
 
@@ -198,4 +683,256 @@ public class SurveyDataExportComponent {
       return query.getResultList();
     });
   }
+
+  /**
+   * Reads all pages of a query using offset paging.
+   */
+  private <T> void readPages(final IntFunction<List<T>> pageReader, final ExportControl control,
+      final RowConsumer<T> consumer) throws IOException {
+
+    int offset = 0;
+    List<T> page = pageReader.apply(offset);
+
+    while (!page.isEmpty()) {
+
+      control.onRowsRead(page.size());
+
+      for (final T row : page) {
+        control.checkAborted();
+        consumer.accept(row);
+      }
+
+      offset += page.size();
+      page = pageReader.apply(offset);
+    }
+  }
+
+  /**
+   * @return the aggregates of the named query joined into a single value
+   */
+  private String getFingerprint(final String queryName, final Object... parameters) {
+
+    final Query query = this.entityManager.createNamedQuery(queryName);
+    for (int i = 0; i < parameters.length; i++) {
+      query.setParameter(i + 1, parameters[i]);
+    }
+
+    final Object[] result = this.transactionTemplate.execute(status -> (Object[]) query.getSingleResult());
+
+    return Arrays.stream(result).map(String::valueOf).collect(Collectors.joining("/"));
+  }
+
+  /**
+   * @return the aggregates of the named native query per slice joined into a single value. The query returns
+   *         the index of the slice followed by the aggregates of the non-empty slices.
+   */
+  private List<String> getSliceFingerprints(final String queryName, final Instant startTime, final Duration slice,
+      final int countSlices) {
+
+    final Query query = this.entityManager.createNamedQuery(queryName);
+    query.setParameter(1, startTime);
+    query.setParameter(2, startTime.plus(slice.multipliedBy(countSlices)).minus(1, ChronoUnit.MICROS));
+    query.setParameter(3, slice.getSeconds());
+
+    @SuppressWarnings("unchecked")
+    final List<Object[]> result = this.transactionTemplate.execute(status -> query.getResultList());
+
+    final String[] fingerprints = new String[countSlices];
+    Arrays.fill(fingerprints, "0");
+
+    for (final Object[] row : result) {
+      fingerprints[((Number) row[0]).intValue()] =
+          Arrays.stream(row, 1, row.length).map(String::valueOf).collect(Collectors.joining("/"));
+    }
+
+    return Arrays.asList(fingerprints);
+  }
+
+  private Instant getFirstTimestamp(final String queryName, final Instant startTime, final Instant endTime) {
+
+    final TypedQuery<Instant> query = this.entityManager.createNamedQuery(queryName, Instant.class);
+    query.setParameter(1, startTime);
+    query.setParameter(2, endTime);
+
+    return this.transactionTemplate.execute(status -> query.getSingleResult());
+  }
+
+  private final class SurveyResponseRowSource implements RowSource {
+
+    private final SurveyResponseRowEncoder encoder;
+
+    private final ExportControl control;
+
+    /**
+     * The fingerprint of the surveys and questions rendered into the rows, which is determined once per
+     * export
+     */
+    private String surveysFingerprint;
+
+    private SurveyResponseRowSource(final boolean typed, final ExportControl control) {
+      this.encoder = new SurveyResponseRowEncoder(typed);
+      this.control = control;
+    }
+
+    @Override
+    public void read(final Instant startTime, final Instant endTime, final RowConsumer<Object[]> consumer)
+        throws IOException {
+
+      final RowConsumer<SurveyResponseData> dataConsumer = data -> consumer.accept(this.encoder.encode(data));
+
+      if (SurveyDataExportComponent.this.cursor)
+        streamRows(() -> createSurveyResponseQuery(startTime, endTime), this.control, dataConsumer);
+      else
+        readPages(offset -> getSurveyResponseData(startTime, endTime, offset), this.control, dataConsumer);
+    }
+
+    @Override
+    public Instant getFirstTimestamp(final Instant startTime, final Instant endTime) {
+      return SurveyDataExportComponent.this.getFirstTimestamp("SurveyResponse.findMinCreatedAtByCreatedAtBetween",
+          startTime, endTime);
+    }
+
+    @Override
+    public List<String> getFingerprints(final Instant startTime, final Duration slice, final int countSlices) {
+
+      if (this.surveysFingerprint == null)
+        this.surveysFingerprint = SurveyDataExportComponent.this.getFingerprint("Survey.getFingerprint") + "/"
+            + SurveyDataExportComponent.this.getFingerprint("Question.getFingerprint");
+
+      return getSliceFingerprints("SurveyResponse.getSliceFingerprintsByCreatedAtBetween", startTime, slice,
+          countSlices).stream()
+              .map(fingerprint -> fingerprint + "/" + this.surveysFingerprint)
+              .collect(Collectors.toList());
+    }
+  }
+
+  private final class StepCountRowSource implements RowSource {
+
+    private final ExportControl control;
+
+    private StepCountRowSource(final ExportControl control) {
+      this.control = control;
+    }
+
+    @Override
+    public void read(final Instant startTime, final Instant endTime, final RowConsumer<Object[]> consumer)
+        throws IOException {
+
+      final RowConsumer<StepCount> dataConsumer = data -> consumer.accept(toStepCountRow(data));
+
+      if (SurveyDataExportComponent.this.cursor)
+        streamRows(() -> createStepCountQuery(startTime, endTime), this.control, dataConsumer);
+      else
+        readPages(offset -> getStepCountData(startTime, endTime, offset), this.control, dataConsumer);
+    }
+
+    @Override
+    public Instant getFirstTimestamp(final Instant startTime, final Instant endTime) {
+      return SurveyDataExportComponent.this.getFirstTimestamp("StepCount.findMinCreatedAtByCreatedAtBetween",
+          startTime, endTime);
+    }
+
+    @Override
+    public List<String> getFingerprints(final Instant startTime, final Duration slice, final int countSlices) {
+      return getSliceFingerprints("StepCount.getSliceFingerprintsByCreatedAtBetween", startTime, slice,
+          countSlices);
+    }
+  }
+
+  private static final class ExportSlice {
+
+    private static final Object[] END = new Object[0];
+
+    private static final long POLL_MILLIS = 100;
+
+    private final String sheet;
+
+    private final Instant startTime;
+
+    private final Instant endTime;
+
+    private final BlockingQueue<Object[]> rows;
+
+    private final Duration writeTimeout;
+
+    private Future<Void> future;
+
+    private ExportSlice(final String sheet, final Instant startTime, final Instant endTime, final int capacity,
+        final Duration writeTimeout) {
+      this.sheet = sheet;
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.rows = new ArrayBlockingQueue<>(Math.max(1, capacity));
+      this.writeTimeout = writeTimeout;
+    }
+
+    public String getSheet() {
+      return this.sheet;
+    }
+
+    public Instant getStartTime() {
+      return this.startTime;
+    }
+
+    public Instant getEndTime() {
+      return this.endTime;
+    }
+
+    public Future<Void> getFuture() {
+      return this.future;
+    }
+
+    public void setFuture(final Future<Void> future) {
+      this.future = future;
+    }
+
+    /**
+     * Hands over the row to the writer. Waits as long as the writer has not caught up, but not longer than
+     * the write timeout.
+     *
+     * @throws ExportAbortedException
+     *           if the writer did not catch up in time, which aborts the export
+     */
+    public void put(final Object[] row, final ExportControl control) throws IOException {
+
+      try {
+        if (this.rows.offer(row, this.writeTimeout.toMillis(), TimeUnit.MILLISECONDS))
+          return;
+
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while reading export data.");
+      }
+
+      control.abort();
+      throw new ExportAbortedException("Export rows have not been consumed within " + this.writeTimeout + ".");
+    }
+
+    /**
+     * Signals the end of the slice to the writer without waiting. If the queue is full, the writer detects
+     * the end by the completed future.
+     */
+    public void finish() {
+      this.rows.offer(END);
+    }
+
+    /**
+     * @return the next row or {@link #END}, if the slice has been read completely or reading it failed
+     */
+    public Object[] take() throws InterruptedException {
+
+      Object[] row = this.rows.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+      while (row == null) {
+
+        if (this.future.isDone()) {
+          row = this.rows.poll();
+          return row == null ? END : row;
+        }
+
+        row = this.rows.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      return row;
+    }
+  }
 }
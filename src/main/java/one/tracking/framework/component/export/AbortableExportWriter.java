@@ -0,0 +1,69 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.IOException;
+
+/**
+ * Aborts the export as soon as writing to the target fails, e.g. because the client closed the
+ * connection, so that the readers stop querying the database.
+ *
+ * @author Marko Voß
+ *
+ */
+public class AbortableExportWriter implements ExportWriter {
+
+  private final ExportWriter delegate;
+
+  private final ExportControl control;
+
+  public AbortableExportWriter(final ExportWriter delegate, final ExportControl control) {
+    this.delegate = delegate;
+    this.control = control;
+  }
+
+  @Override
+  public void startSheet(final String name, final ExportColumn... columns) throws IOException {
+
+    try {
+      this.delegate.startSheet(name, columns);
+    } catch (final IOException e) {
+      throw abort(e);
+    }
+  }
+
+  @Override
+  public void writeRow(final Object... values) throws IOException {
+
+    try {
+      this.delegate.writeRow(values);
+    } catch (final IOException e) {
+      throw abort(e);
+    }
+  }
+
+  @Override
+  public void finish() throws IOException {
+
+    try {
+      this.delegate.finish();
+    } catch (final IOException e) {
+      throw abort(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.delegate.close();
+  }
+
+  private ExportAbortedException abort(final IOException e) {
+
+    this.control.abort();
+
+    return e instanceof ExportAbortedException
+        ? (ExportAbortedException) e
+        : new ExportAbortedException("Writing the export failed.", e);
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the rows written by the delegate, which allows tracking the progress of an export.
+ *
+ * @author Marko Voß
+ *
+ */
+public class CountingExportWriter implements ExportWriter {
+
+  private final ExportWriter delegate;
+
+  private final AtomicLong rowCounter;
+
+  public CountingExportWriter(final ExportWriter delegate, final AtomicLong rowCounter) {
+    this.delegate = delegate;
+    this.rowCounter = rowCounter;
+  }
+
+  @Override
+  public void startSheet(final String name, final ExportColumn... columns) throws IOException {
+    this.delegate.startSheet(name, columns);
+  }
+
+  @Override
+  public void writeRow(final Object... values) throws IOException {
+    this.delegate.writeRow(values);
+    this.rowCounter.incrementAndGet();
+  }
+
+  @Override
+  public void finish() throws IOException {
+    this.delegate.finish();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.delegate.close();
+  }
+}
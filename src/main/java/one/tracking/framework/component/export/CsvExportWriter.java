@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes a single sheet as CSV according to RFC 4180. Timestamps are written in ISO-8601 format (UTC).
+ *
+ * @author Marko Voß
+ *
+ */
+public class CsvExportWriter implements ExportWriter {
+
+  private static final char SEPARATOR = ',';
+
+  private static final char QUOTE = '"';
+
+  private static final String LINE_SEPARATOR = "\r\n";
+
+  private final Writer writer;
+
+  public CsvExportWriter(final OutputStream outStream) {
+    this.writer = new BufferedWriter(new OutputStreamWriter(outStream, StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public void startSheet(final String name, final ExportColumn... columns) throws IOException {
+    writeRow(Arrays.stream(columns).map(ExportColumn::getName).toArray());
+  }
+
+  @Override
+  public void writeRow(final Object... values) throws IOException {
+
+    for (int i = 0; i < values.length; i++) {
+
+      if (i > 0)
+        this.writer.write(SEPARATOR);
+
+      if (values[i] != null)
+        writeValue(values[i].toString());
+    }
+    this.writer.write(LINE_SEPARATOR);
+  }
+
+  private void writeValue(final String value) throws IOException {
+
+    boolean quote = false;
+    for (int i = 0; i < value.length() && !quote; i++) {
+      final char c = value.charAt(i);
+      quote = c == SEPARATOR || c == QUOTE || c == '\r' || c == '\n';
+    }
+
+    if (!quote) {
+      this.writer.write(value);
+      return;
+    }
+
+    this.writer.write(QUOTE);
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == QUOTE)
+        this.writer.write(QUOTE);
+      this.writer.write(c);
+    }
+    this.writer.write(QUOTE);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    this.writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The target stream is owned by the caller
+  }
+}
@@ -0,0 +1,25 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.IOException;
+
+/**
+ * Thrown if an export has been aborted, e.g. because the client closed the connection.
+ *
+ * @author Marko Voß
+ *
+ */
+public class ExportAbortedException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  public ExportAbortedException(final String message) {
+    super(message);
+  }
+
+  public ExportAbortedException(final String message, final Throwable cause) {
+    super(message, cause);
+  }
+}
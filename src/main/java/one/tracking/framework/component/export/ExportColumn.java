@@ -0,0 +1,73 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+/**
+ * Column of an exported sheet. The type gets used by formats storing typed columns; all other formats
+ * only use the name.
+ *
+ * @author Marko Voß
+ *
+ */
+public final class ExportColumn {
+
+  public enum Type {
+    STRING,
+    BOOLEAN,
+    INTEGER,
+    DECIMAL,
+    TIMESTAMP
+  }
+
+  private final String name;
+
+  private final Type type;
+
+  private final boolean dictionary;
+
+  private ExportColumn(final String name, final Type type, final boolean dictionary) {
+    this.name = name;
+    this.type = type;
+    this.dictionary = dictionary;
+  }
+
+  public static ExportColumn string(final String name) {
+    return new ExportColumn(name, Type.STRING, false);
+  }
+
+  /**
+   * Creates a string column with few distinct values, which may be stored as references into a dictionary.
+   */
+  public static ExportColumn dictionary(final String name) {
+    return new ExportColumn(name, Type.STRING, true);
+  }
+
+  public static ExportColumn bool(final String name) {
+    return new ExportColumn(name, Type.BOOLEAN, false);
+  }
+
+  public static ExportColumn integer(final String name) {
+    return new ExportColumn(name, Type.INTEGER, false);
+  }
+
+  public static ExportColumn decimal(final String name) {
+    return new ExportColumn(name, Type.DECIMAL, false);
+  }
+
+  public static ExportColumn timestamp(final String name) {
+    return new ExportColumn(name, Type.TIMESTAMP, false);
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public Type getType() {
+    return this.type;
+  }
+
+  public boolean isDictionary() {
+    return this.dictionary;
+  }
+}
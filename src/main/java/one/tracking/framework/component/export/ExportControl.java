@@ -0,0 +1,64 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Controls the readers of a running export. Stops them as soon as the export got aborted and limits the
+ * rate of rows read from the database.
+ *
+ * @author Marko Voß
+ *
+ */
+public class ExportControl {
+
+  private final RateLimiter rateLimiter;
+
+  private volatile boolean aborted;
+
+  /**
+   * @param rateLimiter
+   *          the limiter of rows read from the database, which may be shared by multiple exports; may be
+   *          null
+   */
+  public ExportControl(final RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  public void abort() {
+    this.aborted = true;
+  }
+
+  public boolean isAborted() {
+    return this.aborted;
+  }
+
+  /**
+   * @throws ExportAbortedException
+   *           if the export has been aborted
+   */
+  public void checkAborted() throws ExportAbortedException {
+
+    if (this.aborted)
+      throw new ExportAbortedException("Export has been aborted.");
+  }
+
+  /**
+   * Must be called by the readers after reading rows from the database. Waits as long as the rate limit
+   * is exceeded.
+   *
+   * @throws ExportAbortedException
+   *           if the export has been aborted
+   */
+  public void onRowsRead(final int amount) throws ExportAbortedException {
+
+    checkAborted();
+
+    if (this.rateLimiter != null && amount > 0) {
+      this.rateLimiter.acquire(amount);
+      checkAborted();
+    }
+  }
+}
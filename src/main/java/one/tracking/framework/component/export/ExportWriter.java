@@ -0,0 +1,27 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes tabular export data in a specific file format. Supported values of the rows are {@link String},
+ * {@link Boolean}, {@link Number}, {@link java.time.Instant} and null. The values must match the type of
+ * their column for formats storing typed columns.
+ *
+ * @author Marko Voß
+ *
+ */
+public interface ExportWriter extends Closeable {
+
+  void startSheet(String name, ExportColumn... columns) throws IOException;
+
+  void writeRow(Object... values) throws IOException;
+
+  /**
+   * Writes all remaining content to the target stream without closing it.
+   */
+  void finish() throws IOException;
+}
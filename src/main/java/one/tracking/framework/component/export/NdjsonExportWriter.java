@@ -0,0 +1,99 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Writes a single sheet as newline delimited JSON using the column names as field names. Timestamps are
+ * written in ISO-8601 format (UTC).
+ *
+ * @author Marko Voß
+ *
+ */
+public class NdjsonExportWriter implements ExportWriter {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final JsonGenerator generator;
+
+  private String[] columns;
+
+  private boolean empty = true;
+
+  public NdjsonExportWriter(final OutputStream outStream) throws IOException {
+    this.generator = JSON_FACTORY.createGenerator(outStream, JsonEncoding.UTF8);
+    this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    this.generator.setRootValueSeparator(new SerializedString("\n"));
+  }
+
+  @Override
+  public void startSheet(final String name, final ExportColumn... columns) {
+
+    this.columns = new String[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      this.columns[i] = columns[i].getName();
+    }
+  }
+
+  @Override
+  public void writeRow(final Object... values) throws IOException {
+
+    this.generator.writeStartObject();
+
+    for (int i = 0; i < values.length; i++) {
+      this.generator.writeFieldName(this.columns[i]);
+      writeValue(values[i]);
+    }
+
+    this.generator.writeEndObject();
+    this.empty = false;
+  }
+
+  private void writeValue(final Object value) throws IOException {
+
+    if (value == null) {
+      this.generator.writeNull();
+
+    } else if (value instanceof Boolean) {
+      this.generator.writeBoolean((Boolean) value);
+
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+      this.generator.writeNumber(((Number) value).longValue());
+
+    } else if (value instanceof BigDecimal) {
+      this.generator.writeNumber((BigDecimal) value);
+
+    } else if (value instanceof BigInteger) {
+      this.generator.writeNumber((BigInteger) value);
+
+    } else if (value instanceof Number) {
+      this.generator.writeNumber(((Number) value).doubleValue());
+
+    } else {
+      this.generator.writeString(value.toString());
+    }
+  }
+
+  @Override
+  public void finish() throws IOException {
+
+    if (!this.empty)
+      this.generator.writeRaw('\n');
+
+    this.generator.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.generator.close();
+  }
+}
@@ -0,0 +1,301 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.temporal.TemporalAccessor;
+import java.util.Collections;
+import java.util.Date;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimeUnit;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+
+/**
+ * Writes a single sheet as Apache Parquet file using parquet-mr. All columns are optional and flat. Only
+ * dictionary columns use dictionary encoding, timestamps get stored as milliseconds since the epoch (UTC).
+ *
+ * @author Marko Voß
+ *
+ */
+public class ParquetExportWriter implements ExportWriter {
+
+  private final OutputStream outStream;
+
+  private final long rowGroupSize;
+
+  private final int pageSize;
+
+  private final boolean compress;
+
+  private ParquetWriter<Object[]> writer;
+
+  /**
+   * @param rowGroupSize
+   *          the amount of bytes of a row group, which gets buffered in memory before it gets written
+   * @param pageSize
+   *          the maximum amount of rows per data page
+   * @param compress
+   *          compresses the pages using GZIP
+   */
+  public ParquetExportWriter(final OutputStream outStream, final long rowGroupSize, final int pageSize,
+      final boolean compress) {
+    this.outStream = outStream;
+    this.rowGroupSize = Math.max(1, rowGroupSize);
+    this.pageSize = Math.max(1, pageSize);
+    this.compress = compress;
+  }
+
+  @Override
+  public void startSheet(final String name, final ExportColumn... columns) throws IOException {
+
+    if (this.writer != null)
+      throw new IllegalStateException("Parquet files only support a single sheet.");
+
+    final Builder builder = new Builder(new StreamOutputFile(this.outStream), columns)
+        // Skips loading the Hadoop default resources from the classpath
+        .withConf(new Configuration(false))
+        .withRowGroupSize(this.rowGroupSize)
+        .withPageRowCountLimit(this.pageSize)
+        // Otherwise the row count limit is checked after 100 rows at the earliest
+        .withMinRowCountForPageSizeCheck(
+            Math.min(this.pageSize, ParquetProperties.DEFAULT_MINIMUM_RECORD_COUNT_FOR_CHECK))
+        .withCompressionCodec(this.compress ? CompressionCodecName.GZIP : CompressionCodecName.UNCOMPRESSED)
+        .withDictionaryEncoding(false);
+
+    for (final ExportColumn column : columns) {
+      if (column.isDictionary())
+        builder.withDictionaryEncoding(column.getName(), true);
+    }
+
+    this.writer = builder.build();
+  }
+
+  @Override
+  public void writeRow(final Object... values) throws IOException {
+    this.writer.write(values);
+  }
+
+  @Override
+  public void finish() throws IOException {
+
+    if (this.writer == null)
+      return;
+
+    // Writes the remaining row group and the footer; the target stream only gets flushed
+    this.writer.close();
+    this.writer = null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The target stream is owned by the caller
+  }
+
+  private static MessageType createSchema(final ExportColumn... columns) {
+
+    final Types.MessageTypeBuilder builder = Types.buildMessage();
+
+    for (final ExportColumn column : columns) {
+
+      switch (column.getType()) {
+        case BOOLEAN:
+          builder.optional(PrimitiveTypeName.BOOLEAN).named(column.getName());
+          break;
+        case INTEGER:
+          builder.optional(PrimitiveTypeName.INT64).named(column.getName());
+          break;
+        case DECIMAL:
+          builder.optional(PrimitiveTypeName.DOUBLE).named(column.getName());
+          break;
+        case TIMESTAMP:
+          builder.optional(PrimitiveTypeName.INT64)
+              .as(LogicalTypeAnnotation.timestampType(true, TimeUnit.MILLIS))
+              .named(column.getName());
+          break;
+        default:
+          builder.optional(PrimitiveTypeName.BINARY)
+              .as(LogicalTypeAnnotation.stringType())
+              .named(column.getName());
+      }
+    }
+
+    return builder.named("schema");
+  }
+
+  private static long toEpochMilli(final Object value) {
+
+    if (value instanceof Instant)
+      return ((Instant) value).toEpochMilli();
+
+    if (value instanceof Date)
+      return ((Date) value).getTime();
+
+    if (value instanceof TemporalAccessor)
+      return Instant.from((TemporalAccessor) value).toEpochMilli();
+
+    throw new IllegalArgumentException("Unsupported timestamp: " + value.getClass().getName());
+  }
+
+  private static final class Builder extends ParquetWriter.Builder<Object[], Builder> {
+
+    private final ExportColumn[] columns;
+
+    private Builder(final OutputFile file, final ExportColumn... columns) {
+      super(file);
+      this.columns = columns;
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    @Override
+    protected WriteSupport<Object[]> getWriteSupport(final Configuration conf) {
+      return new RowWriteSupport(this.columns);
+    }
+  }
+
+  /**
+   * Writes the values of a row as fields of a flat record, skipping null values.
+   */
+  private static final class RowWriteSupport extends WriteSupport<Object[]> {
+
+    private final ExportColumn[] columns;
+
+    private RecordConsumer recordConsumer;
+
+    private RowWriteSupport(final ExportColumn... columns) {
+      this.columns = columns;
+    }
+
+    @Override
+    public WriteContext init(final Configuration configuration) {
+      return new WriteContext(createSchema(this.columns), Collections.emptyMap());
+    }
+
+    @Override
+    public void prepareForWrite(final RecordConsumer recordConsumer) {
+      this.recordConsumer = recordConsumer;
+    }
+
+    @Override
+    public void write(final Object[] values) {
+
+      this.recordConsumer.startMessage();
+
+      for (int i = 0; i < this.columns.length; i++) {
+
+        if (values[i] == null)
+          continue;
+
+        final String name = this.columns[i].getName();
+
+        this.recordConsumer.startField(name, i);
+        writeValue(this.columns[i], values[i]);
+        this.recordConsumer.endField(name, i);
+      }
+
+      this.recordConsumer.endMessage();
+    }
+
+    private void writeValue(final ExportColumn column, final Object value) {
+
+      switch (column.getType()) {
+        case BOOLEAN:
+          this.recordConsumer.addBoolean(Boolean.parseBoolean(value.toString()));
+          break;
+        case INTEGER:
+          this.recordConsumer.addLong(
+              value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString()));
+          break;
+        case DECIMAL:
+          this.recordConsumer.addDouble(
+              value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString()));
+          break;
+        case TIMESTAMP:
+          this.recordConsumer.addLong(toEpochMilli(value));
+          break;
+        default:
+          this.recordConsumer.addBinary(Binary.fromString(value.toString()));
+      }
+    }
+  }
+
+  /**
+   * Writes the file to the target stream, which does not get closed by the writer.
+   */
+  private static final class StreamOutputFile implements OutputFile {
+
+    private final OutputStream outStream;
+
+    private StreamOutputFile(final OutputStream outStream) {
+      this.outStream = outStream;
+    }
+
+    @Override
+    public PositionOutputStream create(final long blockSizeHint) {
+
+      return new PositionOutputStream() {
+
+        private long position;
+
+        @Override
+        public long getPos() {
+          return this.position;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+          StreamOutputFile.this.outStream.write(b);
+          this.position++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+          StreamOutputFile.this.outStream.write(b, off, len);
+          this.position += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+          StreamOutputFile.this.outStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+          flush();
+        }
+      };
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(final long blockSizeHint) {
+      return create(blockSizeHint);
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+      return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,16 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.IOException;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@FunctionalInterface
+public interface RowConsumer<T> {
+
+  void accept(T row) throws IOException;
+}
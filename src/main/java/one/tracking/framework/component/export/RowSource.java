@@ -0,0 +1,35 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Reads the rows of a sheet from the database. Both bounds of the intervals are inclusive.
+ *
+ * @author Marko Voß
+ *
+ */
+public interface RowSource {
+
+  void read(Instant startTime, Instant endTime, RowConsumer<Object[]> consumer) throws IOException;
+
+  /**
+   * @return the timestamp of the first row within the interval or null, if the interval contains no rows
+   */
+  Instant getFirstTimestamp(Instant startTime, Instant endTime);
+
+  /**
+   * Determines the fingerprints of consecutive slices at once. Each slice ends a microsecond before the
+   * next one starts.
+   *
+   * @param slice
+   *          the size of the slices in whole seconds
+   * @return a value per slice, which changes whenever the rows of the slice get changed
+   */
+  List<String> getFingerprints(Instant startTime, Duration slice, int countSlices);
+}
@@ -0,0 +1,165 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import one.tracking.framework.domain.SurveyResponseData;
+
+/**
+ * Renders {@link SurveyResponseData} into export rows. The encoder keeps state between the rows to avoid
+ * allocations for repeating values: The rows of a response share the same timestamps, the labels of
+ * checklist questions repeat for each response and numbers like the order or version of questions are
+ * small. The returned row gets reused by the next call, so consumers retaining rows need to copy them.
+ * Instances are not thread-safe.
+ *
+ * @author Marko Voß
+ *
+ */
+public class SurveyResponseRowEncoder {
+
+  private static final String[] SMALL_NUMBERS = new String[1024];
+
+  static {
+    for (int i = 0; i < SMALL_NUMBERS.length; i++) {
+      SMALL_NUMBERS[i] = Integer.toString(i);
+    }
+  }
+
+  private final boolean typed;
+
+  /**
+   * Labels of checklist questions by question and checklist entry
+   */
+  private final Map<Object, Map<Object, String>> labels = new HashMap<>();
+
+  private final TimestampCache startTimes = new TimestampCache();
+
+  private final TimestampCache endTimes = new TimestampCache();
+
+  private final TimestampCache createdAts = new TimestampCache();
+
+  private final Object[] row;
+
+  /**
+   * @param typed
+   *          renders the answers into separate columns per type instead of a single text column
+   */
+  public SurveyResponseRowEncoder(final boolean typed) {
+    this.typed = typed;
+    this.row = new Object[typed ? 16 : 12];
+  }
+
+  public Object[] encode(final SurveyResponseData data) {
+
+    if (!this.startTimes.matches(data.getStartTime()))
+      this.startTimes.update(data.getStartTime(), data.getStartTime().toInstant());
+
+    if (!this.endTimes.matches(data.getEndTime()))
+      this.endTimes.update(data.getEndTime(), data.getEndTime().toInstant());
+
+    if (!this.createdAts.matches(data.getCreatedAt()))
+      this.createdAts.update(data.getCreatedAt(), data.getCreatedAt().toInstant());
+
+    final Object[] row = this.row;
+
+    row[0] = data.getNameId();
+    row[1] = this.startTimes.instant;
+    row[2] = this.endTimes.instant;
+    row[3] = data.getUserId();
+
+    if (this.typed) {
+
+      row[4] = data.getOrder();
+      row[5] = data.getQuestionType();
+      row[6] = data.getQuestion();
+      row[7] = data.getCheckListEntry();
+      row[8] = data.getBoolAnswer();
+      row[9] = data.getNumberAnswer();
+      row[10] = data.getTextAnswer();
+      row[11] = data.getPredefinedAnswer();
+      row[12] = data.getVersion();
+      row[13] = data.getSkipped();
+      row[14] = data.getValid();
+      row[15] = this.createdAts.instant;
+      return row;
+    }
+
+    row[4] = toString(data.getOrder());
+    row[5] = data.getQuestionType();
+    row[6] = data.getCheckListEntry() == null
+        ? data.getQuestion()
+        : getLabel(data.getQuestion(), data.getCheckListEntry());
+    row[7] = getAnswer(data);
+    row[8] = toString(data.getVersion());
+    row[9] = data.getSkipped();
+    row[10] = data.getValid();
+    row[11] = this.createdAts.instant;
+    return row;
+  }
+
+  private String getLabel(final Object question, final Object checkListEntry) {
+
+    // Avoids capturing lambdas, which would get allocated for each row
+    Map<Object, String> checkListLabels = this.labels.get(question);
+
+    if (checkListLabels == null) {
+      checkListLabels = new HashMap<>();
+      this.labels.put(question, checkListLabels);
+    }
+
+    String label = checkListLabels.get(checkListEntry);
+
+    if (label == null) {
+      label = question + ": " + checkListEntry;
+      checkListLabels.put(checkListEntry, label);
+    }
+    return label;
+  }
+
+  private static String getAnswer(final SurveyResponseData data) {
+
+    if (data.getBoolAnswer() != null)
+      return data.getBoolAnswer().toString();
+
+    if (data.getTextAnswer() != null)
+      return data.getTextAnswer();
+
+    if (data.getNumberAnswer() != null)
+      return toString(data.getNumberAnswer());
+
+    return data.getPredefinedAnswer();
+  }
+
+  private static String toString(final Object value) {
+
+    if (value instanceof Integer) {
+      final int number = (Integer) value;
+      if (number >= 0 && number < SMALL_NUMBERS.length)
+        return SMALL_NUMBERS[number];
+    }
+    return value.toString();
+  }
+
+  /**
+   * Keeps the last converted timestamp.
+   */
+  private static final class TimestampCache {
+
+    private Object timestamp;
+
+    private Instant instant;
+
+    private boolean matches(final Object timestamp) {
+      return this.instant != null && Objects.equals(this.timestamp, timestamp);
+    }
+
+    private void update(final Object timestamp, final Instant instant) {
+      this.timestamp = timestamp;
+      this.instant = instant;
+    }
+  }
+}
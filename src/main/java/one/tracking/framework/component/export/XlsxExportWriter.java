@@ -0,0 +1,109 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Arrays;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class XlsxExportWriter implements ExportWriter {
+
+  private static final double MILLIS_PER_DAY = 86_400_000.0;
+
+  /**
+   * The serial of 1970-01-01
+   */
+  private static final double EXCEL_EPOCH_OFFSET = 25569.0;
+
+  private final Workbook workbook;
+
+  private final OutputStream outStream;
+
+  private final CellStyle cellStyleDateTime;
+
+  private Sheet sheet;
+
+  private int rowIndex;
+
+  public XlsxExportWriter(final Workbook workbook, final OutputStream outStream) {
+    this.workbook = workbook;
+    this.outStream = outStream;
+    this.cellStyleDateTime = workbook.createCellStyle();
+    this.cellStyleDateTime.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("m/d/yy h:mm"));
+  }
+
+  @Override
+  public void startSheet(final String name, final ExportColumn... columns) {
+
+    this.sheet = this.workbook.createSheet(name);
+    this.rowIndex = 0;
+
+    // Create header
+    writeRow(Arrays.stream(columns).map(ExportColumn::getName).toArray());
+  }
+
+  @Override
+  public void writeRow(final Object... values) {
+
+    final Row row = this.sheet.createRow(this.rowIndex++);
+
+    for (int i = 0; i < values.length; i++) {
+      setCellValue(row.createCell(i), values[i]);
+    }
+  }
+
+  private void setCellValue(final Cell cell, final Object value) {
+
+    if (value == null) {
+      cell.setBlank();
+
+    } else if (value instanceof Instant) {
+      cell.setCellValue(toExcelDate((Instant) value));
+      cell.setCellStyle(this.cellStyleDateTime);
+
+    } else if (value instanceof Boolean) {
+      cell.setCellValue((Boolean) value);
+
+    } else if (value instanceof Number) {
+      cell.setCellValue(((Number) value).doubleValue());
+
+    } else {
+      cell.setCellValue(value.toString());
+    }
+  }
+
+  /**
+   * Converts the instant into the serial of Excel dates (days since 1899-12-30) in UTC without allocating
+   * intermediate date objects. Only valid for dates after 1900-02-28 due to the leap year bug of Excel.
+   */
+  static double toExcelDate(final Instant instant) {
+    return instant.toEpochMilli() / MILLIS_PER_DAY + EXCEL_EPOCH_OFFSET;
+  }
+
+  @Override
+  public void finish() throws IOException {
+    this.workbook.write(this.outStream);
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.workbook instanceof SXSSFWorkbook) {
+      // Deletes the temporary files backing the sheets
+      ((SXSSFWorkbook) this.workbook).dispose();
+    }
+    this.workbook.close();
+  }
+}
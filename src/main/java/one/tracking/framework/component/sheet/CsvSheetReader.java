@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV files according to RFC 4180 encoded in UTF-8. The separator is either comma, semicolon or tab
+ * and gets detected by the first line. Empty lines are omitted.
+ *
+ * @author Marko Voß
+ *
+ */
+public class CsvSheetReader implements SheetReader {
+
+  private static final char[] SEPARATORS = {',', ';', '\t'};
+
+  private static final char QUOTE = '"';
+
+  private static final char BOM = '\uFEFF';
+
+  private static final int MAX_DETECTION_LENGTH = 8192;
+
+  private final BufferedReader reader;
+
+  public CsvSheetReader(final Path file) throws IOException {
+    this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void read(final SheetRowHandler handler) throws IOException {
+
+    skipByteOrderMark();
+
+    final char separator = detectSeparator();
+    final List<String> values = new ArrayList<>();
+    final StringBuilder value = new StringBuilder();
+
+    int rowNum = 0;
+    boolean quoted = false;
+    boolean valueStarted = false;
+    int c;
+
+    while ((c = this.reader.read()) != -1) {
+
+      if (quoted) {
+
+        if (c != QUOTE) {
+          value.append((char) c);
+          continue;
+        }
+
+        this.reader.mark(1);
+        if (this.reader.read() == QUOTE) {
+          value.append(QUOTE);
+        } else {
+          this.reader.reset();
+          quoted = false;
+        }
+        continue;
+      }
+
+      if (c == QUOTE && value.length() == 0) {
+        quoted = true;
+        valueStarted = true;
+
+      } else if (c == separator) {
+        values.add(value.toString());
+        value.setLength(0);
+        valueStarted = true;
+
+      } else if (c == '\r' || c == '\n') {
+
+        if (c == '\r') {
+          this.reader.mark(1);
+          if (this.reader.read() != '\n')
+            this.reader.reset();
+        }
+
+        if (valueStarted || value.length() > 0) {
+          values.add(value.toString());
+          if (!handler.handleRow(rowNum, values))
+            return;
+        }
+
+        rowNum++;
+        values.clear();
+        value.setLength(0);
+        valueStarted = false;
+
+      } else {
+        value.append((char) c);
+      }
+    }
+
+    if (valueStarted || value.length() > 0) {
+      values.add(value.toString());
+      handler.handleRow(rowNum, values);
+    }
+  }
+
+  private void skipByteOrderMark() throws IOException {
+
+    this.reader.mark(1);
+    if (this.reader.read() != BOM)
+      this.reader.reset();
+  }
+
+  /**
+   * Uses the first separator found outside of quotes in the first line or comma by default.
+   */
+  private char detectSeparator() throws IOException {
+
+    this.reader.mark(MAX_DETECTION_LENGTH);
+
+    try {
+
+      boolean quoted = false;
+      for (int i = 0; i < MAX_DETECTION_LENGTH; i++) {
+
+        final int c = this.reader.read();
+        if (c == -1 || !quoted && (c == '\r' || c == '\n'))
+          break;
+
+        if (c == QUOTE) {
+          quoted = !quoted;
+          continue;
+        }
+
+        for (final char separator : SEPARATORS) {
+          if (!quoted && c == separator)
+            return separator;
+        }
+      }
+      return SEPARATORS[0];
+
+    } finally {
+      this.reader.reset();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.reader.close();
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * The result of a pre-pass over the email column of a sheet: the amount of rows and invalid emails as
+ * well as the hashes of the emails occurring more than once. While building the index, a 64 bit hash of
+ * each valid email is kept. Afterwards, only the repeated hashes are kept, so that the main pass accepts
+ * all emails having a unique hash without further lookups. Emails having a repeated hash get compared by
+ * value, so hash collisions never cause distinct emails to be treated as duplicates.
+ *
+ * @author Marko Voß
+ *
+ */
+public class EmailRowIndex {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final boolean ignoreCase;
+
+  private final ToLongFunction<String> hashFunction;
+
+  private final LongHashSet repeatedHashes = new LongHashSet();
+
+  /**
+   * The accepted emails having a repeated hash
+   */
+  private final Set<String> acceptedEmails = new HashSet<>();
+
+  private int countRows;
+
+  private int countInvalid;
+
+  private int countDuplicates;
+
+  private EmailRowIndex(final boolean ignoreCase, final ToLongFunction<String> hashFunction) {
+    this.ignoreCase = ignoreCase;
+    this.hashFunction = hashFunction;
+  }
+
+  /**
+   * Reads the sheet skipping the header row.
+   *
+   * @param validator
+   *          tests the trimmed values of the email column
+   * @param ignoreCase
+   *          if true, emails differing in case only are treated as duplicates
+   */
+  public static EmailRowIndex build(final SheetReader reader, final int headerIndex,
+      final Predicate<String> validator, final boolean ignoreCase) throws IOException {
+
+    return build(reader, headerIndex, validator, ignoreCase,
+        email -> HASH_FUNCTION.hashString(email, StandardCharsets.UTF_8).asLong());
+  }
+
+  static EmailRowIndex build(final SheetReader reader, final int headerIndex, final Predicate<String> validator,
+      final boolean ignoreCase, final ToLongFunction<String> hashFunction) throws IOException {
+
+    final EmailRowIndex index = new EmailRowIndex(ignoreCase, hashFunction);
+    final LongHashSet hashes = new LongHashSet();
+
+    reader.read((rowNum, values) -> {
+
+      if (rowNum == 0) // Skip header
+        return true;
+
+      index.countRows++;
+
+      final String email = getEmail(values, headerIndex);
+
+      if (email == null || email.isEmpty() || !validator.test(email)) {
+        index.countInvalid++;
+        return true;
+      }
+
+      final long hash = index.hash(email);
+
+      if (!hashes.add(hash))
+        index.repeatedHashes.add(hash);
+
+      return true;
+    });
+
+    return index;
+  }
+
+  /**
+   * @return the trimmed value of the email column or null, if the row does not contain the column
+   */
+  public static String getEmail(final List<String> values, final int headerIndex) {
+
+    final String email = headerIndex < values.size() ? values.get(headerIndex) : null;
+    return email == null ? null : email.trim();
+  }
+
+  private String normalize(final String email) {
+    return this.ignoreCase ? email.toLowerCase(Locale.ROOT) : email;
+  }
+
+  private long hash(final String email) {
+    return this.hashFunction.applyAsLong(normalize(email));
+  }
+
+  /**
+   * Must be called for the valid emails of the sheet in the order of their rows. Not thread-safe.
+   *
+   * @return true, if the email is the first occurrence within the sheet
+   */
+  public boolean accept(final String email) {
+
+    if (!this.repeatedHashes.contains(hash(email)) || this.acceptedEmails.add(normalize(email)))
+      return true;
+
+    this.countDuplicates++;
+    return false;
+  }
+
+  /**
+   * @return the amount of rows excluding the header row
+   */
+  public int getCountRows() {
+    return this.countRows;
+  }
+
+  public int getCountInvalid() {
+    return this.countInvalid;
+  }
+
+  /**
+   * @return the amount of emails, which have not been accepted
+   */
+  public int getCountDuplicates() {
+    return this.countDuplicates;
+  }
+}
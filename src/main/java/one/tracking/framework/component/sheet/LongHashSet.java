@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+/**
+ * A set of primitive long values using open addressing, which requires 8 to 16 bytes per value instead of
+ * about 50 bytes per boxed value of a {@link java.util.HashSet}. Instances are not thread-safe.
+ *
+ * @author Marko Voß
+ *
+ */
+public class LongHashSet {
+
+  private static final int MIN_CAPACITY = 16;
+
+  /**
+   * Zero marks empty slots, so it is tracked separately
+   */
+  private boolean containsZero;
+
+  private long[] slots;
+
+  private int size;
+
+  public LongHashSet() {
+    this(MIN_CAPACITY);
+  }
+
+  public LongHashSet(final int expectedSize) {
+    this.slots = new long[tableSizeFor(expectedSize)];
+  }
+
+  /**
+   * @return true, if the value has not been contained yet
+   */
+  public boolean add(final long value) {
+
+    if (value == 0) {
+      if (this.containsZero)
+        return false;
+      this.containsZero = true;
+      this.size++;
+      return true;
+    }
+
+    if (!insert(this.slots, value))
+      return false;
+
+    // Keeps the load factor at or below 0.5
+    if (++this.size * 2 > this.slots.length)
+      resize();
+
+    return true;
+  }
+
+  public boolean contains(final long value) {
+
+    if (value == 0)
+      return this.containsZero;
+
+    final int mask = this.slots.length - 1;
+    for (int i = mix(value) & mask;; i = (i + 1) & mask) {
+      if (this.slots[i] == 0)
+        return false;
+      if (this.slots[i] == value)
+        return true;
+    }
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  private void resize() {
+
+    final long[] resized = new long[this.slots.length * 2];
+    for (final long value : this.slots) {
+      if (value != 0)
+        insert(resized, value);
+    }
+    this.slots = resized;
+  }
+
+  private static boolean insert(final long[] slots, final long value) {
+
+    final int mask = slots.length - 1;
+    for (int i = mix(value) & mask;; i = (i + 1) & mask) {
+      if (slots[i] == value)
+        return false;
+      if (slots[i] == 0) {
+        slots[i] = value;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Spreads the bits of the value as linear probing is sensitive to clustered values (MurmurHash3 finalizer)
+   */
+  private static int mix(final long value) {
+
+    long hash = value;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return (int) hash;
+  }
+
+  private static int tableSizeFor(final int expectedSize) {
+
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2L && capacity < 1 << 30)
+      capacity <<= 1;
+    return capacity;
+  }
+}
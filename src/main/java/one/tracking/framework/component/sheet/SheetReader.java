@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import org.apache.poi.poifs.filesystem.FileMagic;
+
+/**
+ * Reads the rows of the first sheet of a spreadsheet one at a time. Rows which do not contain any cells
+ * may be omitted.
+ *
+ * @author Marko Voß
+ *
+ */
+public interface SheetReader extends Closeable {
+
+  void read(SheetRowHandler handler) throws IOException;
+
+  /**
+   * The file formats supported for reading sheets.
+   */
+  enum Format {
+    /**
+     * Read in a streaming manner
+     */
+    XLSX,
+    /**
+     * Loaded into memory as these are limited to 65536 rows anyways
+     */
+    XLS,
+    CSV
+  }
+
+  /**
+   * Determines the format of an uploaded file by the content of the file. Files which are no workbooks are
+   * only read as CSV, if the name or the content type of the upload denotes a text file.
+   *
+   * @param filename
+   *          the original name of the uploaded file; may be null
+   * @param contentType
+   *          the content type of the upload; may be null
+   * @throws IllegalArgumentException
+   *           if the format of the file is not supported
+   */
+  static Format detectFormat(final Path file, final String filename, final String contentType) throws IOException {
+
+    final FileMagic fileMagic;
+    try (InputStream inStream = new BufferedInputStream(Files.newInputStream(file, StandardOpenOption.READ))) {
+      fileMagic = FileMagic.valueOf(inStream);
+    }
+
+    switch (fileMagic) {
+      case OOXML:
+        return Format.XLSX;
+      case OLE2:
+        return Format.XLS;
+      case UNKNOWN:
+        if (isTextFile(filename, contentType))
+          return Format.CSV;
+        // fall through
+      default:
+        throw new IllegalArgumentException("Unsupported file format. Expected xlsx, xls or csv.");
+    }
+  }
+
+  private static boolean isTextFile(final String filename, final String contentType) {
+
+    if (filename != null) {
+      final String name = filename.toLowerCase(Locale.ROOT);
+      if (name.endsWith(".csv") || name.endsWith(".txt"))
+        return true;
+    }
+
+    if (contentType != null) {
+      final String type = contentType.toLowerCase(Locale.ROOT);
+      return type.startsWith("text/") || type.startsWith("application/csv");
+    }
+
+    return false;
+  }
+
+  static SheetReader open(final Path file, final Format format) throws IOException {
+
+    switch (format) {
+      case XLSX:
+        return new XlsxSheetReader(file);
+      case XLS:
+        return new WorkbookSheetReader(file);
+      default:
+        return new CsvSheetReader(file);
+    }
+  }
+}
@@ -0,0 +1,24 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import java.util.List;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@FunctionalInterface
+public interface SheetRowHandler {
+
+  /**
+   * @param rowNum
+   *          the zero-based index of the row within the sheet
+   * @param values
+   *          the formatted values of the row by column index; missing cells are null. The list is reused
+   *          for the next row and must not be kept by the handler.
+   * @return false to stop reading the sheet
+   */
+  boolean handleRow(int rowNum, List<String> values);
+}
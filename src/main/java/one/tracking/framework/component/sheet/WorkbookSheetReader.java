@@ -0,0 +1,61 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+
+/**
+ * Reads the first sheet of a workbook which gets loaded into memory completely. Must only be used for
+ * formats without streaming support, i.e. xls.
+ *
+ * @author Marko Voß
+ *
+ */
+public class WorkbookSheetReader implements SheetReader {
+
+  private final Workbook workbook;
+
+  public WorkbookSheetReader(final Path file) throws IOException {
+    this.workbook = WorkbookFactory.create(file.toFile(), null, true);
+  }
+
+  @Override
+  public void read(final SheetRowHandler handler) throws IOException {
+
+    if (this.workbook.getNumberOfSheets() == 0)
+      return;
+
+    final DataFormatter formatter = new DataFormatter();
+    final List<String> values = new ArrayList<>();
+
+    for (final Row row : this.workbook.getSheetAt(0)) {
+
+      values.clear();
+
+      for (final Cell cell : row) {
+
+        while (values.size() < cell.getColumnIndex())
+          values.add(null);
+
+        values.add(formatter.formatCellValue(cell));
+      }
+
+      if (!handler.handleRow(row.getRowNum(), values))
+        return;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.workbook.close();
+  }
+}
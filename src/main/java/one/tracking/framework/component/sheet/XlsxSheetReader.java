@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads the first sheet of a xlsx file using the SAX based event model of POI. Only the current row and
+ * the shared strings table are kept in memory instead of the DOM of the whole workbook.
+ *
+ * Note that the {@link ReadOnlySharedStringsTable} holds all shared strings of the workbook in memory
+ * before the first row is read. As Excel stores each distinct text value as shared string, the memory
+ * required by a sheet of emails still grows with the amount of rows, e.g. about 100 MB for a million
+ * emails. Files which are too large for this should be uploaded as CSV.
+ *
+ * @author Marko Voß
+ *
+ */
+public class XlsxSheetReader implements SheetReader {
+
+  private final OPCPackage opcPackage;
+
+  public XlsxSheetReader(final Path file) throws IOException {
+
+    try {
+      this.opcPackage = OPCPackage.open(file.toFile(), PackageAccess.READ);
+    } catch (final OpenXML4JException e) {
+      throw new IOException("Unable to open xlsx file.", e);
+    }
+  }
+
+  @Override
+  public void read(final SheetRowHandler handler) throws IOException {
+
+    try {
+
+      final XSSFReader reader = new XSSFReader(this.opcPackage);
+      final ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(this.opcPackage, false);
+      final StylesTable styles = reader.getStylesTable();
+
+      final Iterator<InputStream> sheets = reader.getSheetsData();
+      if (!sheets.hasNext())
+        return;
+
+      try (InputStream sheet = sheets.next()) {
+
+        final XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(
+            new XSSFSheetXMLHandler(styles, strings, new RowCollector(handler), new DataFormatter(), false));
+        parser.parse(new InputSource(sheet));
+
+      } catch (final StopReadingException e) {
+        // Stopped by the handler
+      }
+
+    } catch (final OpenXML4JException | SAXException | ParserConfigurationException e) {
+      throw new IOException("Unable to read xlsx file.", e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    // Opened read-only, so nothing gets written back on close
+    this.opcPackage.revert();
+  }
+
+  /**
+   * Determines the zero-based column index of a cell reference like <code>AB12</code>.
+   */
+  static int getColumnIndex(final String cellReference) {
+
+    int column = 0;
+    for (int i = 0; i < cellReference.length(); i++) {
+
+      final char c = cellReference.charAt(i);
+      if (c < 'A' || c > 'Z')
+        break;
+
+      column = column * 26 + (c - 'A' + 1);
+    }
+    return column - 1;
+  }
+
+  private static class RowCollector implements SheetContentsHandler {
+
+    private final SheetRowHandler handler;
+
+    private final List<String> values = new ArrayList<>();
+
+    private RowCollector(final SheetRowHandler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public void startRow(final int rowNum) {
+      this.values.clear();
+    }
+
+    @Override
+    public void endRow(final int rowNum) {
+
+      if (!this.handler.handleRow(rowNum, this.values))
+        throw new StopReadingException();
+    }
+
+    @Override
+    public void cell(final String cellReference, final String formattedValue, final XSSFComment comment) {
+
+      // The reference is optional, in which case cells are stored consecutively
+      final int column = cellReference == null ? this.values.size() : getColumnIndex(cellReference);
+
+      while (this.values.size() < column)
+        this.values.add(null);
+
+      if (this.values.size() == column)
+        this.values.add(formattedValue);
+      else
+        this.values.set(column, formattedValue);
+    }
+
+    @Override
+    public void headerFooter(final String text, final boolean isHeader, final String tagName) {
+      // Not required
+    }
+  }
+
+  /**
+   * Aborts parsing the sheet as requested by the {@link SheetRowHandler}.
+   */
+  private static class StopReadingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private StopReadingException() {
+      super(null, null, false, false);
+    }
+  }
+}
@@ -1,8 +1,11 @@
 package one.tracking.framework.config;
 
+import java.util.Locale;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.format.FormatterRegistry;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import one.tracking.framework.domain.ExportFormat;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
@@ -11,4 +14,11 @@ public class WebConfig implements WebMvcConfigurer {
   public void addCorsMappings(final CorsRegistry registry) {
     registry.addMapping("/**").allowedMethods("GET", "POST", "PUT", "DELETE").allowedOrigins("http://localhost");
   }
+
+  @Override
+  public void addFormatters(final FormatterRegistry registry) {
+    // Export formats are requested in lower case; unknown formats fail the binding with 400
+    registry.addConverter(String.class, ExportFormat.class,
+        value -> ExportFormat.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+  }
 }
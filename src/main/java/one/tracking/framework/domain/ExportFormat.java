@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package one.tracking.framework.domain;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public enum ExportFormat {
+
+  XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx", true, false),
+  CSV("text/csv", "csv", false, false),
+  NDJSON("application/x-ndjson", "ndjson", false, false),
+  PARQUET("application/vnd.apache.parquet", "parquet", false, true);
+
+  private final String contentType;
+
+  private final String fileExtension;
+
+  private final boolean multipleSheets;
+
+  private final boolean typedColumns;
+
+  private ExportFormat(final String contentType, final String fileExtension, final boolean multipleSheets,
+      final boolean typedColumns) {
+    this.contentType = contentType;
+    this.fileExtension = fileExtension;
+    this.multipleSheets = multipleSheets;
+    this.typedColumns = typedColumns;
+  }
+
+  public String getContentType() {
+    return this.contentType;
+  }
+
+  public String getFileExtension() {
+    return this.fileExtension;
+  }
+
+  /**
+   * @return true, if the format is able to contain all sheets of an export within a single file
+   */
+  public boolean isMultipleSheets() {
+    return this.multipleSheets;
+  }
+
+  /**
+   * @return true, if the format stores typed columns, so that the answers get exported in separate columns
+   *         per type
+   */
+  public boolean isTypedColumns() {
+    return this.typedColumns;
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package one.tracking.framework.domain;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportJob {
+
+  private String id;
+
+  private ExportFormat format;
+
+  private boolean gzip;
+
+  private String filename;
+
+  private Path file;
+
+  @Builder.Default
+  private AtomicLong countRows = new AtomicLong();
+
+  private volatile ExportJobStatus status;
+
+  private volatile String message;
+
+  private Instant createdAt;
+
+  private volatile Instant completedAt;
+
+  private volatile ScheduledDeletionFuture<?> deletion;
+
+  /**
+   * The amount of downloads in progress. Guarded by the job.
+   */
+  private int downloads;
+
+  /**
+   * Set after the upload timeout, once the job has been removed. Gets updated while holding the job.
+   */
+  private volatile boolean expired;
+}
@@ -0,0 +1,38 @@
+/**
+ *
+ */
+package one.tracking.framework.domain;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The interval of an incremental export. Both bounds are inclusive.
+ *
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportWindow {
+
+  private String consumerId;
+
+  /**
+   * The watermark the window has been created for or null, if nothing has been exported yet.
+   */
+  private Instant watermark;
+
+  private Instant startTime;
+
+  private Instant endTime;
+
+  public boolean isEmpty() {
+    return !this.startTime.isBefore(this.endTime);
+  }
+}
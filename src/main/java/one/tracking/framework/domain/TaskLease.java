@@ -0,0 +1,27 @@
+/**
+ *
+ */
+package one.tracking.framework.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lease of an acquired task lock. The fencing token of the lock only changes, if the lock gets taken over
+ * by another owner or released.
+ *
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskLease {
+
+  private String taskName;
+
+  private long fencingToken;
+}
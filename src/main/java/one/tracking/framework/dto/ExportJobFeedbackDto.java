@@ -0,0 +1,30 @@
+/**
+ *
+ */
+package one.tracking.framework.dto;
+
+import java.time.Instant;
+import lombok.Builder;
+import lombok.Data;
+import one.tracking.framework.domain.ExportJobStatus;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder
+public class ExportJobFeedbackDto {
+
+  private ExportJobStatus status;
+
+  private long countRows;
+
+  private String message;
+
+  private Instant createdAt;
+
+  private Instant completedAt;
+
+  private Instant expiresAt;
+}
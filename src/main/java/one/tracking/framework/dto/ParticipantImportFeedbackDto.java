@@ -22,5 +22,11 @@ public class ParticipantImportFeedbackDto {
   private int countFailed;
   private int countSuccess;
 
+  /**
+   * The amount of rows of the import excluding the header row; null as long as the rows have not been
+   * counted
+   */
+  private Integer countTotal;
+
   private ParticipantImportStatus status;
 }
@@ -0,0 +1,42 @@
+/**
+ *
+ */
+package one.tracking.framework.entity;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQuery;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The upper bound of the creation timestamps of the data, which has been exported incrementally to a
+ * consumer already.
+ *
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@NamedQuery(name = "ExportWatermark.updateWatermark",
+    query = "UPDATE ExportWatermark w SET w.watermark = ?1, w.updatedAt = ?2 "
+        + "WHERE w.consumerId = ?3 AND w.watermark = ?4")
+public class ExportWatermark {
+
+  @Id
+  @Column(length = 100, nullable = false, updatable = false)
+  private String consumerId;
+
+  @Column(nullable = false)
+  private Instant watermark;
+
+  @Column(nullable = false)
+  private Instant updatedAt;
+}
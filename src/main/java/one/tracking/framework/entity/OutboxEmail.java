@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package one.tracking.framework.entity;
+
+import static one.tracking.framework.entity.DataConstants.TOKEN_VERIFY_LENGTH;
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An email, which has been queued for being sent asynchronously. Emails get deleted as soon as they have
+ * been sent successfully.
+ *
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@NamedQueries({
+    @NamedQuery(name = "OutboxEmail.findIdByStatusAndNextAttemptAtBefore",
+        query = "SELECT e.id FROM OutboxEmail e WHERE e.status = ?1 AND e.nextAttemptAt <= ?2 "
+            + "ORDER BY e.nextAttemptAt ASC"),
+    @NamedQuery(name = "OutboxEmail.claim",
+        query = "UPDATE OutboxEmail e SET e.claimToken = ?1, e.nextAttemptAt = ?2 "
+            + "WHERE e.id IN ?3 AND e.status = ?4 AND e.nextAttemptAt <= ?5"),
+    @NamedQuery(name = "OutboxEmail.findByClaimToken",
+        query = "SELECT e FROM OutboxEmail e WHERE e.claimToken = ?1"),
+    @NamedQuery(name = "OutboxEmail.updateAttempt",
+        query = "UPDATE OutboxEmail e SET e.attempts = ?1, e.status = ?2, e.nextAttemptAt = ?3, e.lastError = ?4, "
+            + "e.claimToken = NULL WHERE e.id = ?5"),
+    @NamedQuery(name = "OutboxEmail.deleteById",
+        query = "DELETE FROM OutboxEmail e WHERE e.id = ?1"),
+    @NamedQuery(name = "OutboxEmail.deleteByStatusAndNextAttemptAtBefore",
+        query = "DELETE FROM OutboxEmail e WHERE e.status = ?1 AND e.nextAttemptAt < ?2"),
+    @NamedQuery(name = "OutboxEmail.deleteByVerification",
+        query = "DELETE FROM OutboxEmail e WHERE e.verification = ?1"),
+    @NamedQuery(name = "OutboxEmail.deleteByVerificationEmail",
+        query = "DELETE FROM OutboxEmail e WHERE e.verification IN (SELECT v FROM Verification v WHERE v.email = ?1)")
+})
+public class OutboxEmail {
+
+  @Id
+  @Column(length = 36, nullable = false, updatable = false)
+  private String id;
+
+  @Column(nullable = false)
+  private String recipient;
+
+  @Column(nullable = false)
+  private String subject;
+
+  @Lob
+  @Column(nullable = false)
+  private String body;
+
+  @Column(nullable = false)
+  private boolean html;
+
+  /**
+   * The verification, whose state gets set to {@link VerificationState#ERROR} if the email cannot be sent
+   */
+  @ManyToOne
+  private Verification verification;
+
+  /**
+   * The hash of the verification contained by the email. The email is obsolete as soon as the hash of the
+   * verification has been renewed.
+   */
+  @Column(length = TOKEN_VERIFY_LENGTH)
+  private String verificationHash;
+
+  @Enumerated(EnumType.STRING)
+  @Column(length = 20, nullable = false)
+  private OutboxEmailStatus status;
+
+  @Column(nullable = false)
+  private int attempts;
+
+  /**
+   * The earliest time of the next attempt to send the email, which also expires the claim of a sender
+   */
+  @Column(nullable = false)
+  private Instant nextAttemptAt;
+
+  @Column(length = 36)
+  private String claimToken;
+
+  @Column(length = 1000)
+  private String lastError;
+
+  @Column(nullable = false, updatable = false)
+  private Instant createdAt;
+}
@@ -0,0 +1,20 @@
+/**
+ *
+ */
+package one.tracking.framework.entity;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public enum OutboxEmailStatus {
+
+  /**
+   * The email is waiting to be sent or to be retried
+   */
+  PENDING,
+  /**
+   * Sending the email failed for the maximum amount of attempts
+   */
+  FAILED;
+}
@@ -0,0 +1,44 @@
+/**
+ *
+ */
+package one.tracking.framework.entity;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The amount of rows of a {@link ParticipantImport} determined before the rows get processed, which
+ * allows reporting the progress of the import.
+ *
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class ParticipantImportStatistics {
+
+  @Id
+  @Column(length = 100, nullable = false, updatable = false)
+  private String importId;
+
+  /**
+   * The amount of rows excluding the header row
+   */
+  @Column(nullable = false)
+  private int countTotal;
+
+  @Column(nullable = false)
+  private int countInvalid;
+
+  @Column(nullable = false)
+  private Instant createdAt;
+}
@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package one.tracking.framework.entity;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a reminder run, which allows resuming interrupted runs after the last processed
+ * DeviceToken.
+ *
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class ReminderCheckpoint {
+
+  @Id
+  @Column(length = 100, nullable = false, updatable = false)
+  private String taskName;
+
+  @Column(nullable = false)
+  private Long surveyInstanceId;
+
+  @Column(nullable = false)
+  private Long lastDeviceTokenId;
+
+  @Column(nullable = false)
+  private int countDeviceTokens;
+
+  @Column(nullable = false)
+  private int countNotifications;
+
+  @Column(nullable = false)
+  private boolean completed;
+
+  @Column(nullable = false)
+  private Instant updatedAt;
+}
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package one.tracking.framework.entity;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The lock of a scheduled task. The fencing token gets incremented each time the lock is taken over or
+ * released, so that it identifies each ownership of the lock. The row is never deleted, as restarting the
+ * token would allow stale owners to write again.
+ * <p>
+ * The lock replaces the SchedulerLock entity of survey-commons. Instances of previous releases only respect
+ * the old table, so upgrading requires stopping all instances instead of a rolling update.
+ *
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@NamedQueries({
+    @NamedQuery(name = "TaskLock.findFencingTokenByTaskName",
+        query = "SELECT l.fencingToken FROM TaskLock l WHERE l.taskName = ?1"),
+    @NamedQuery(name = "TaskLock.acquire",
+        query = "UPDATE TaskLock l SET l.fencingToken = l.fencingToken + 1, l.expiresAt = ?1 "
+            + "WHERE l.taskName = ?2 AND l.expiresAt <= ?3"),
+    @NamedQuery(name = "TaskLock.renew",
+        query = "UPDATE TaskLock l SET l.expiresAt = ?1 WHERE l.taskName = ?2 AND l.fencingToken = ?3"),
+    @NamedQuery(name = "TaskLock.release",
+        query = "UPDATE TaskLock l SET l.fencingToken = l.fencingToken + 1, l.expiresAt = ?1 "
+            + "WHERE l.taskName = ?2 AND l.fencingToken = ?3")
+})
+public class TaskLock {
+
+  @Id
+  @Column(length = 100, nullable = false, updatable = false)
+  private String taskName;
+
+  @Column(nullable = false)
+  private long fencingToken;
+
+  @Column(nullable = false)
+  private Instant expiresAt;
+}
@@ -111,26 +111,47 @@ public class FirebaseService {
     if (!isAvailable())
       return null;
 
-    final List<List<String>> partitions = Lists.partition(tokens, this.config.getBatchSize());
+    final List<MulticastMessage> messages = createMulticastMessages(request, tokens);
+    final List<ApiFuture<BatchResponse>> futures = new ArrayList<>(messages.size());
 
-    final List<ApiFuture<BatchResponse>> futures = new ArrayList<>();
+    final FirebaseMessaging messaging = FirebaseMessaging.getInstance();
 
-    final MulticastMessage.Builder messageBuilder = MulticastMessage.builder()
-        .setAndroidConfig(getAndroidConfig(request.getGroup()))
-        .setApnsConfig(getApnsConfig(request.getGroup()))
-        .setNotification(Notification.builder()
-            .setTitle(request.getTitle())
-            .setBody(request.getMessage())
-            .build())
-        .putAllData(request.getData());
+    for (final MulticastMessage message : messages) {
+      futures.add(messaging.sendMulticastAsync(message));
+    }
+
+    return ApiFutures.allAsList(futures);
+  }
+
+  /**
+   * Creates a message per partition of the tokens, each of them containing at most batch size tokens.
+   */
+  List<MulticastMessage> createMulticastMessages(final PushNotificationRequest request, final List<String> tokens) {
+
+    final List<List<String>> partitions = Lists.partition(tokens, this.config.getBatchSize());
+    final List<MulticastMessage> messages = new ArrayList<>(partitions.size());
+
+    // Immutable parts are shared by the messages of all partitions
+    final AndroidConfig androidConfig = getAndroidConfig(request.getGroup());
+    final ApnsConfig apnsConfig = getApnsConfig(request.getGroup());
+    final Notification notification = Notification.builder()
+        .setTitle(request.getTitle())
+        .setBody(request.getMessage())
+        .build();
 
     for (final List<String> currentPartition : partitions) {
 
-      futures.add(FirebaseMessaging.getInstance().sendMulticastAsync(
-          messageBuilder.addAllTokens(currentPartition).build()));
+      // A new builder per partition as MulticastMessage.Builder accumulates the added tokens
+      messages.add(MulticastMessage.builder()
+          .setAndroidConfig(androidConfig)
+          .setApnsConfig(apnsConfig)
+          .setNotification(notification)
+          .putAllData(request.getData())
+          .addAllTokens(currentPartition)
+          .build());
     }
 
-    return ApiFutures.allAsList(futures);
+    return messages;
   }
 
   public String sendMessageToUser(final PushNotificationRequest request, final String token)
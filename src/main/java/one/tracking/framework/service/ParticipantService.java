@@ -4,31 +4,40 @@
 package one.tracking.framework.service;
 
 import static one.tracking.framework.entity.DataConstants.TOKEN_VERIFY_LENGTH;
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
@@ -40,10 +49,15 @@ import lombok.extern.slf4j.Slf4j;
 import one.tracking.framework.component.AsyncExecutor;
 import one.tracking.framework.component.AsyncExecutor.AsyncTask;
 import one.tracking.framework.component.AuthenticationSupport;
+import one.tracking.framework.component.EmailOutboxComponent;
+import one.tracking.framework.component.sheet.EmailRowIndex;
+import one.tracking.framework.component.sheet.SheetReader;
+import one.tracking.framework.component.sheet.SheetRowHandler;
 import one.tracking.framework.domain.InvitationFeedback;
 import one.tracking.framework.dto.ParticipantDto;
 import one.tracking.framework.dto.ParticipantImportFeedbackDto;
 import one.tracking.framework.entity.ParticipantImport;
+import one.tracking.framework.entity.ParticipantImportStatistics;
 import one.tracking.framework.entity.ParticipantImportStatus;
 import one.tracking.framework.entity.Verification;
 import one.tracking.framework.entity.VerificationState;
@@ -60,6 +74,13 @@ public class ParticipantService {
 
   private static final Pattern PATTERN_EMAIL_SIMPLE = Pattern.compile("^\\S+[@]\\S+[.]\\S+$");
 
+  private static final String SUBJECT_REGISTRATION = "Registration";
+
+  /**
+   * Marks the end of the emails queued for a worker of a parallel import (compared by identity)
+   */
+  private static final String END_OF_IMPORT = new String("END_OF_IMPORT");
+
   @Autowired
   private TransactionTemplate transactionTemplate;
 
@@ -81,16 +102,77 @@ public class ParticipantService {
   @Autowired
   private AuthenticationSupport authenticationSupport;
 
+  @Autowired
+  private EmailOutboxComponent emailOutbox;
+
   @Value("${app.public.url}")
   private String publicUrl;
 
+  /**
+   * Import the participants in chunks of {@link #importChunkSize} rows, using bulk lookups and a single
+   * transaction per chunk instead of multiple transactions per row.
+   */
+  @Value("${app.participant.import.chunked:false}")
+  private boolean chunkedImport;
+
+  @Value("${app.participant.import.chunkSize:500}")
+  private int importChunkSize;
+
+  @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+  private int jdbcBatchSize;
+
+  /**
+   * Read the sheet twice: The first pass counts the rows and detects invalid and duplicate emails, which
+   * get skipped without accessing the database by the second pass.
+   */
+  @Value("${app.participant.import.prePass:true}")
+  private boolean importPrePass;
+
+  /**
+   * Treat emails differing in case only as the same participant within an import. By default, emails are
+   * compared as they are, so that only the collation of the database decides about existing participants.
+   */
+  @Value("${app.participant.import.ignoreEmailCase:false}")
+  private boolean importIgnoreEmailCase;
+
+  /**
+   * The amount of workers processing the rows of an import in parallel. The workers are shared by all
+   * imports of a node. A value of 1 processes the rows within the thread reading the sheet.
+   */
+  @Value("${app.participant.import.parallelism:1}")
+  private int importParallelism;
+
+  /**
+   * The maximum amount of email entries per worker, which have been read but not yet processed.
+   */
+  @Value("${app.participant.import.queueCapacity:1000}")
+  private int importQueueCapacity;
+
+  /**
+   * The interval of checking parallel imports for cancellation and of updating their counters.
+   */
+  @Value("${app.participant.import.checkInterval:1s}")
+  private Duration importCheckInterval;
+
   private UriComponentsBuilder publicUrlBuilder;
 
+  private ExecutorService importExecutor;
+
   @PostConstruct
   public void init() {
 
     // throws IllegalArgumentException on invalid URIs -> startup will fail if URL is invalid
     this.publicUrlBuilder = UriComponentsBuilder.fromUriString(this.publicUrl);
+
+    if (this.importParallelism > 1)
+      this.importExecutor =
+          Executors.newFixedThreadPool(this.importParallelism, new CustomizableThreadFactory("ParticipantImport-"));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (this.importExecutor != null)
+      this.importExecutor.shutdownNow();
   }
 
   public String importParticipants(final MultipartFile file, final int selectedHeaderIndex) throws Exception {
@@ -98,8 +180,18 @@ public class ParticipantService {
     final Path tempFile = Files.createTempFile("import", ".tmp");
     final long bytesWritten = Files.copy(file.getInputStream(), tempFile, StandardCopyOption.REPLACE_EXISTING);
 
-    if (bytesWritten == 0)
-      throw new IllegalArgumentException("Empty file uploaded.");
+    final SheetReader.Format format;
+    try {
+
+      if (bytesWritten == 0)
+        throw new IllegalArgumentException("Empty file uploaded.");
+
+      format = SheetReader.detectFormat(tempFile, file.getOriginalFilename(), file.getContentType());
+
+    } catch (final IllegalArgumentException e) {
+      Files.deleteIfExists(tempFile);
+      throw e;
+    }
 
     final ParticipantImport participantImport = ParticipantImport.builder()
         .createdBy(this.authenticationSupport.getUserIdentifier())
@@ -122,7 +214,7 @@ public class ParticipantService {
 
       @Override
       public Void call() throws Exception {
-        performParticipantsImportInternal(userId, importId, tempFile, selectedHeaderIndex);
+        performParticipantsImportInternal(userId, importId, tempFile, format, selectedHeaderIndex);
         return null;
       }
 
@@ -192,6 +284,10 @@ public class ParticipantService {
     if (participantImport == null)
       throw new IllegalArgumentException("No import found for id: " + importId);
 
+    final ParticipantImportStatistics statistics = this.transactionTemplate.execute(status -> {
+      return this.entityManager.find(ParticipantImportStatistics.class, importId);
+    });
+
     final TypedQuery<Verification> query =
         this.entityManager.createNamedQuery("Verification.findByImportIdOrderByCreatedAtAsc", Verification.class);
     query.setParameter(1, importId);
@@ -209,6 +305,7 @@ public class ParticipantService {
         .countFailed(participantImport.getCountFailed())
         .countSkipped(participantImport.getCountSkipped())
         .countSuccess(participantImport.getCountSuccess())
+        .countTotal(statistics == null ? null : statistics.getCountTotal())
         .status(participantImport.getStatus())
         .entries(verifications.stream().map(verification -> ParticipantDto.builder()
             .email(verification.getEmail())
@@ -223,15 +320,22 @@ public class ParticipantService {
       final String userId,
       final String importId,
       final Path file,
+      final SheetReader.Format format,
       final int headerIndex)
       throws Exception {
 
     log.debug("IMPORT: Performing participant import");
 
-    try (Workbook workbook = WorkbookFactory.create(new BufferedInputStream(
-        Files.newInputStream(file, StandardOpenOption.READ)))) {
+    try {
+
+      final EmailRowIndex index = this.importPrePass ? indexEmails(importId, file, format, headerIndex) : null;
+
+      try (SheetReader reader = SheetReader.open(file, format)) {
+        handleSheet(reader, userId, importId, headerIndex, index);
+      }
 
-      handleSheet(workbook.getSheetAt(0), userId, importId, headerIndex);
+      if (index != null)
+        log.debug("IMPORT: Skipped {} duplicate email entries", index.getCountDuplicates());
 
     } catch (final Exception e) {
       log.error("Unable to perform import.", e);
@@ -259,74 +363,578 @@ public class ParticipantService {
     }
   }
 
-  /*
-   * FIXME: If all entries are being skipped, there is no update to the DB!!!
+  /**
+   * Skipped rows are counted together with the next registered participant. The skipped rows following
+   * the last participant get counted after reading the sheet, so that they are stored even if all rows
+   * have been skipped.
    */
-  private void handleSheet(final Sheet sheet, final String userId, final String importId, final int headerIndex) {
+  private void handleSheet(final SheetReader reader, final String userId, final String importId,
+      final int headerIndex, final EmailRowIndex index) throws IOException {
+
+    if (this.importParallelism > 1) {
+      handleSheetParallel(reader, userId, importId, headerIndex, index);
+      return;
+    }
 
-    final DataFormatter formatter = new DataFormatter();
-    int countSkipped = 0;
+    if (this.chunkedImport) {
+      handleSheetChunked(reader, userId, importId, headerIndex, index);
+      return;
+    }
 
-    for (final Row row : sheet) {
+    final int[] countSkipped = {0};
+    final boolean[] cancelled = {false};
 
-      if (row.getRowNum() == 0) // Skip header
-        continue;
+    reader.read(new SheetRowHandler() {
+
+      @Override
+      public boolean handleRow(final int rowNum, final List<String> values) {
 
-      final Cell cell = row.getCell(headerIndex, MissingCellPolicy.RETURN_BLANK_AS_NULL);
+        if (rowNum == 0) // Skip header
+          return true;
 
-      String email = formatter.formatCellValue(cell);
+        final String email = getImportEmail(values, headerIndex, index);
 
-      log.debug("IMPORT: Current email entry: {}", email);
+        log.debug("IMPORT: Current email entry: {}", email);
+
+        if (email == null) {
+          countSkipped[0]++;
+          return true;
+        }
+
+        final ParticipantImport participantImport =
+            getParticipantImport(importId, ParticipantImportStatus.IN_PROGRESS);
+        if (participantImport == null) {
+          cancelled[0] = true;
+          return false; // cancel task
+        }
+
+        final InvitationFeedback feedback = registerParticipant(userId, email, null, participantImport, false);
+
+        updateImportCounters(importId, participantImport, feedback, countSkipped[0]);
+
+        countSkipped[0] = 0;
+        return true;
+      }
+    });
+
+    if (!cancelled[0] && countSkipped[0] > 0)
+      importChunk(userId, importId, List.of(), countSkipped[0]);
+  }
+
+  private void handleSheetChunked(final SheetReader reader, final String userId, final String importId,
+      final int headerIndex, final EmailRowIndex index) throws IOException {
+
+    final List<String> chunk = new ArrayList<>(this.importChunkSize);
+    final int[] countSkipped = {0};
+    final boolean[] cancelled = {false};
+
+    reader.read((rowNum, values) -> {
+
+      if (rowNum == 0) // Skip header
+        return true;
+
+      final String email = getImportEmail(values, headerIndex, index);
 
       if (email == null) {
-        countSkipped++;
-        continue;
+        countSkipped[0]++;
+        return true;
       }
 
-      email = email.trim();
+      chunk.add(email);
+
+      if (chunk.size() < this.importChunkSize)
+        return true;
+
+      cancelled[0] = !importChunk(userId, importId, chunk, countSkipped[0]);
+      chunk.clear();
+      countSkipped[0] = 0;
+
+      return !cancelled[0];
+    });
+
+    if (!cancelled[0] && (!chunk.isEmpty() || countSkipped[0] > 0))
+      importChunk(userId, importId, chunk, countSkipped[0]);
+  }
+
+  /**
+   * @return false, if the import has been cancelled
+   */
+  private boolean importChunk(final String userId, final String importId, final List<String> emails,
+      final int countSkippedRows) {
+
+    final ParticipantImport participantImport = getParticipantImport(importId, ParticipantImportStatus.IN_PROGRESS);
+    if (participantImport == null)
+      return false; // cancel task
 
-      if (email.isEmpty() || !PATTERN_EMAIL_SIMPLE.matcher(email).matches()) {
+    registerChunk(userId, participantImport, emails, countSkippedRows, null);
+    return true;
+  }
+
+  /**
+   * Registers the participants of a chunk of rows. Existing participants are determined by a single
+   * query and all new participants get stored within a single transaction. Emails are sent after the
+   * participants have been stored, so that they only link to stored verifications. If storing the chunk
+   * fails, e.g. as one of its participants has been registered concurrently, the participants get
+   * registered one by one.
+   *
+   * @param parallelImport
+   *          the parallel import to add the counters to instead of storing them; may be null
+   */
+  private void registerChunk(final String userId, final ParticipantImport participantImport,
+      final List<String> emails, final int countSkippedRows, final ParallelImport parallelImport) {
+
+    log.debug("IMPORT: Importing chunk of {} email entries", emails.size());
+
+    final Set<String> knownEmails =
+        this.importIgnoreEmailCase ? new TreeSet<>(String.CASE_INSENSITIVE_ORDER) : new HashSet<>();
+    if (!emails.isEmpty())
+      knownEmails.addAll(findExistingEmails(emails));
+
+    final List<String> newEmails = new ArrayList<>(emails.size());
+    int countSkipped = countSkippedRows;
+
+    for (final String email : emails) {
+      if (knownEmails.add(email))
+        newEmails.add(email);
+      else
         countSkipped++;
-        continue;
-      }
+    }
 
-      final ParticipantImport participantImport = getParticipantImport(importId, ParticipantImportStatus.IN_PROGRESS);
-      if (participantImport == null)
-        break; // cancel task
+    final List<String> verificationTokens = getValidVerificationTokens(newEmails.size());
+    final List<Verification> verifications = new ArrayList<>(newEmails.size());
 
-      final InvitationFeedback feedback = registerParticipant(userId, email, null, participantImport, false);
+    for (int i = 0; i < newEmails.size(); i++) {
+      verifications.add(Verification.builder()
+          .email(newEmails.get(i))
+          .hash(verificationTokens.get(i))
+          .state(VerificationState.PENDING)
+          .createdBy(userId)
+          .participantImport(participantImport)
+          .build());
+    }
 
-      final int finalCountSkipped = countSkipped;
+    final boolean queueEmails = this.emailOutbox.isEnabled();
 
+    try {
       this.transactionTemplate.executeWithoutResult(status -> {
 
-        final TypedQuery<ParticipantImport> query =
-            this.entityManager.createNamedQuery("ParticipantImport.findById", ParticipantImport.class);
-        query.setParameter(1, importId);
-
-        final ParticipantImport entity = query.getSingleResult();
-
-        switch (feedback) {
-          case FAILED:
-            entity.setCountSkipped(participantImport.getCountSkipped() + finalCountSkipped);
-            entity.setCountFailed(participantImport.getCountFailed() + 1);
-            break;
-          case SKIPPED:
-            entity.setCountSkipped(participantImport.getCountSkipped() + finalCountSkipped + 1);
-            break;
-          case PENDING: {
-            entity.setCountSkipped(participantImport.getCountSkipped() + finalCountSkipped);
-            entity.setCountSuccess(participantImport.getCountSuccess() + 1);
-            break;
+        int count = 0;
+
+        for (final Verification verification : verifications) {
+
+          this.entityManager.persist(verification);
+
+          if (queueEmails)
+            queueRegistrationEmail(verification, null);
+
+          if (++count % this.jdbcBatchSize == 0) {
+            this.entityManager.flush();
+            this.entityManager.clear();
           }
         }
-
-        this.entityManager.merge(entity);
         status.flush();
       });
 
-      countSkipped = 0;
+    } catch (final DataAccessException e) {
+      log.warn("IMPORT: Unable to store chunk. Registering its participants one by one.", e);
+      registerEach(userId, participantImport, newEmails, countSkipped, parallelImport);
+      return;
     }
+
+    final List<String> failedHashes = new ArrayList<>();
+
+    if (!queueEmails) {
+
+      for (final Verification verification : verifications) {
+
+        boolean emailSentSuccessfully = false;
+        try {
+          emailSentSuccessfully = sendRegistrationEmail(verification.getEmail(), verification.getHash(), null);
+        } catch (final IOException e) {
+          log.warn("Unable to send email.", e);
+        }
+
+        if (!emailSentSuccessfully)
+          failedHashes.add(verification.getHash());
+      }
+    }
+
+    if (!failedHashes.isEmpty()) {
+
+      final Query query = this.entityManager.createNamedQuery("Verification.updateStateByHashInAndState");
+      query.setParameter(1, VerificationState.ERROR);
+      query.setParameter(2, Instant.now());
+      query.setParameter(3, failedHashes);
+      query.setParameter(4, VerificationState.PENDING);
+
+      this.transactionTemplate.executeWithoutResult(status -> query.executeUpdate());
+    }
+
+    addImportCounters(participantImport, verifications.size() - failedHashes.size(), countSkipped,
+        failedHashes.size(), parallelImport);
+  }
+
+  /**
+   * Registers the participants one by one, so that failing to register one does not affect the others.
+   */
+  private void registerEach(final String userId, final ParticipantImport participantImport,
+      final List<String> emails, final int countSkippedRows, final ParallelImport parallelImport) {
+
+    int countSuccess = 0;
+    int countSkipped = countSkippedRows;
+    int countFailed = 0;
+
+    for (final String email : emails) {
+
+      switch (registerParticipant(userId, email, null, participantImport, false)) {
+        case FAILED:
+          countFailed++;
+          break;
+        case SKIPPED:
+          countSkipped++;
+          break;
+        case PENDING:
+          countSuccess++;
+          break;
+      }
+    }
+
+    addImportCounters(participantImport, countSuccess, countSkipped, countFailed, parallelImport);
+  }
+
+  /**
+   * @param parallelImport
+   *          the parallel import to add the counters to instead of storing them; may be null
+   */
+  private void addImportCounters(final ParticipantImport participantImport, final int countSuccess,
+      final int countSkipped, final int countFailed, final ParallelImport parallelImport) {
+
+    if (parallelImport != null) {
+      parallelImport.countSuccess.add(countSuccess);
+      parallelImport.countSkipped.add(countSkipped);
+      parallelImport.countFailed.add(countFailed);
+      return;
+    }
+
+    final TypedQuery<ParticipantImport> query =
+        this.entityManager.createNamedQuery("ParticipantImport.findById", ParticipantImport.class);
+    query.setParameter(1, participantImport.getId());
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+      final ParticipantImport entity = query.getSingleResult();
+      entity.setCountSuccess(entity.getCountSuccess() + countSuccess);
+      entity.setCountSkipped(entity.getCountSkipped() + countSkipped);
+      entity.setCountFailed(entity.getCountFailed() + countFailed);
+      this.entityManager.merge(entity);
+      status.flush();
+    });
+  }
+
+  /**
+   * Reads the sheet within the current thread and distributes the email entries to the workers of the
+   * import executor. Entries get assigned by the hash of the email, so that duplicates are processed by
+   * the same worker and cannot be registered concurrently.
+   */
+  private void handleSheetParallel(final SheetReader reader, final String userId, final String importId,
+      final int headerIndex, final EmailRowIndex index) throws IOException {
+
+    final ParticipantImport participantImport = getParticipantImport(importId, ParticipantImportStatus.IN_PROGRESS);
+    if (participantImport == null)
+      return; // cancel task
+
+    final ParallelImport parallelImport = new ParallelImport(importId);
+    final List<BlockingQueue<String>> queues = new ArrayList<>(this.importParallelism);
+    final List<Future<?>> futures = new ArrayList<>(this.importParallelism);
+
+    for (int i = 0; i < this.importParallelism; i++) {
+
+      final BlockingQueue<String> queue = new ArrayBlockingQueue<>(this.importQueueCapacity);
+      queues.add(queue);
+      futures.add(this.importExecutor.submit(() -> {
+        try {
+          runImportWorker(queue, userId, participantImport, parallelImport);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          parallelImport.cancel();
+        } catch (final RuntimeException e) {
+          parallelImport.cancel();
+          throw e;
+        }
+      }));
+    }
+
+    Exception failure = null;
+
+    try {
+
+      reader.read((rowNum, values) -> {
+
+        if (rowNum == 0) // Skip header
+          return true;
+
+        final String email = getImportEmail(values, headerIndex, index);
+
+        if (email == null) {
+          parallelImport.countSkipped.increment();
+          return true;
+        }
+
+        if (parallelImport.isCancelled())
+          return false; // cancel task
+
+        final int worker = Math.floorMod(email.toLowerCase(Locale.ROOT).hashCode(), queues.size());
+
+        if (!offer(queues.get(worker), email, parallelImport))
+          return false; // cancel task
+
+        parallelImport.updateCountersIfDue();
+        return true;
+      });
+
+    } catch (final IOException | RuntimeException e) {
+      // Stops the workers without processing the remaining entries
+      parallelImport.cancel();
+      failure = e;
+      throw e;
+
+    } finally {
+
+      final Throwable workerFailure = awaitWorkers(queues, futures, parallelImport);
+      parallelImport.updateCounters();
+
+      // Does not mask the failure of the reading thread, which usually caused the workers to fail
+      if (workerFailure != null && failure != null)
+        failure.addSuppressed(workerFailure);
+      else if (workerFailure != null)
+        throw new IllegalStateException("Participant import worker failed.", workerFailure);
+    }
+  }
+
+  /**
+   * Signals the end of the import to all workers and waits for them to complete.
+   *
+   * @return the failure of the first failed worker with the failures of other workers being suppressed
+   *         or null, if no worker failed
+   */
+  private static Throwable awaitWorkers(final List<BlockingQueue<String>> queues, final List<Future<?>> futures,
+      final ParallelImport parallelImport) {
+
+    Throwable failure = null;
+
+    try {
+
+      for (int i = 0; i < queues.size(); i++) {
+        endWorker(queues.get(i), futures.get(i));
+      }
+
+      for (final Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (final ExecutionException e) {
+          if (failure == null)
+            failure = e.getCause();
+          else
+            failure.addSuppressed(e.getCause());
+        }
+      }
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      parallelImport.cancel();
+    }
+
+    return failure;
+  }
+
+  /**
+   * Waits for space within the queue of a worker as long as the import has not been cancelled.
+   *
+   * @return false, if the import has been cancelled
+   */
+  private static boolean offer(final BlockingQueue<String> queue, final String email,
+      final ParallelImport parallelImport) {
+
+    try {
+      while (!queue.offer(email, 100, TimeUnit.MILLISECONDS)) {
+        if (parallelImport.isCancelled())
+          return false;
+      }
+      return true;
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      parallelImport.cancel();
+      return false;
+    }
+  }
+
+  /**
+   * Signals the end of the import to a worker. Workers keep draining their queues after the import has
+   * been cancelled, so this only waits until the worker has processed its current entry.
+   */
+  private static void endWorker(final BlockingQueue<String> queue, final Future<?> future)
+      throws InterruptedException {
+
+    while (!future.isDone() && !queue.offer(END_OF_IMPORT, 100, TimeUnit.MILLISECONDS)) {
+      // Wait for the worker
+    }
+  }
+
+  private void runImportWorker(final BlockingQueue<String> queue, final String userId,
+      final ParticipantImport participantImport, final ParallelImport parallelImport) throws InterruptedException {
+
+    final List<String> chunk = new ArrayList<>(this.chunkedImport ? this.importChunkSize : 0);
+
+    for (String email = queue.take(); email != END_OF_IMPORT; email = queue.take()) {
+
+      if (parallelImport.isCancelled())
+        continue;
+
+      if (this.chunkedImport) {
+
+        chunk.add(email);
+
+        if (chunk.size() == this.importChunkSize) {
+          registerChunk(userId, participantImport, chunk, 0, parallelImport);
+          chunk.clear();
+        }
+        continue;
+      }
+
+      switch (registerParticipant(userId, email, null, participantImport, false)) {
+        case FAILED:
+          parallelImport.countFailed.increment();
+          break;
+        case SKIPPED:
+          parallelImport.countSkipped.increment();
+          break;
+        case PENDING:
+          parallelImport.countSuccess.increment();
+          break;
+      }
+    }
+
+    if (!chunk.isEmpty() && !parallelImport.isCancelled())
+      registerChunk(userId, participantImport, chunk, 0, parallelImport);
+  }
+
+  private List<String> findExistingEmails(final List<String> emails) {
+
+    final TypedQuery<String> query =
+        this.entityManager.createNamedQuery("Verification.findEmailByEmailIn", String.class);
+    query.setParameter(1, emails);
+
+    return this.transactionTemplate.execute(status -> query.getResultList());
+  }
+
+  /**
+   * Generates the verification tokens for a chunk of participants checking the tokens for collisions
+   * using a single query. Colliding tokens get replaced by tokens checked one by one.
+   */
+  private List<String> getValidVerificationTokens(final int amount) {
+
+    if (amount == 0)
+      return List.of();
+
+    final Set<String> tokens = new HashSet<>(amount);
+    final List<String> result = new ArrayList<>(amount);
+
+    for (int i = 0; i < amount; i++) {
+      final String token = this.utility.generateValidToken(TOKEN_VERIFY_LENGTH, 10, tokens::contains);
+      tokens.add(token);
+      result.add(token);
+    }
+
+    final TypedQuery<String> query =
+        this.entityManager.createNamedQuery("Verification.findHashByHashIn", String.class);
+    query.setParameter(1, result);
+
+    final Set<String> existingTokens = new HashSet<>(this.transactionTemplate.execute(status -> {
+      return query.getResultList();
+    }));
+
+    for (int i = 0; i < result.size() && !existingTokens.isEmpty(); i++) {
+      if (existingTokens.remove(result.get(i)))
+        result.set(i, getValidVerificationToken());
+    }
+    return result;
+  }
+
+  /**
+   * Performs the pre-pass over the sheet and stores the amount of rows of the import.
+   */
+  private EmailRowIndex indexEmails(final String importId, final Path file, final SheetReader.Format format,
+      final int headerIndex) throws IOException {
+
+    final EmailRowIndex index;
+    try (SheetReader reader = SheetReader.open(file, format)) {
+      index = EmailRowIndex.build(reader, headerIndex, email -> PATTERN_EMAIL_SIMPLE.matcher(email).matches(),
+          this.importIgnoreEmailCase);
+    }
+
+    log.debug("IMPORT: Found {} rows containing {} invalid email entries", index.getCountRows(),
+        index.getCountInvalid());
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+      this.entityManager.persist(ParticipantImportStatistics.builder()
+          .importId(importId)
+          .countTotal(index.getCountRows())
+          .countInvalid(index.getCountInvalid())
+          .createdAt(Instant.now())
+          .build());
+      status.flush();
+    });
+
+    return index;
+  }
+
+  /**
+   * @return the trimmed email of the row or null, if the row gets skipped as it does not contain a valid
+   *         email or, if the emails have been indexed, the email is a duplicate of a previous row
+   */
+  private static String getImportEmail(final List<String> values, final int headerIndex,
+      final EmailRowIndex index) {
+
+    final String email = EmailRowIndex.getEmail(values, headerIndex);
+
+    if (email == null || email.isEmpty() || !PATTERN_EMAIL_SIMPLE.matcher(email).matches())
+      return null;
+
+    if (index != null && !index.accept(email))
+      return null;
+
+    return email;
+  }
+
+  private void updateImportCounters(final String importId, final ParticipantImport participantImport,
+      final InvitationFeedback feedback, final int countSkipped) {
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+
+      final TypedQuery<ParticipantImport> query =
+          this.entityManager.createNamedQuery("ParticipantImport.findById", ParticipantImport.class);
+      query.setParameter(1, importId);
+
+      final ParticipantImport entity = query.getSingleResult();
+
+      switch (feedback) {
+        case FAILED:
+          entity.setCountSkipped(participantImport.getCountSkipped() + countSkipped);
+          entity.setCountFailed(participantImport.getCountFailed() + 1);
+          break;
+        case SKIPPED:
+          entity.setCountSkipped(participantImport.getCountSkipped() + countSkipped + 1);
+          break;
+        case PENDING: {
+          entity.setCountSkipped(participantImport.getCountSkipped() + countSkipped);
+          entity.setCountSuccess(participantImport.getCountSuccess() + 1);
+          break;
+        }
+      }
+
+      this.entityManager.merge(entity);
+      status.flush();
+    });
   }
 
   private ParticipantImport getParticipantImport(final String id) {
@@ -393,15 +1001,19 @@ public class ParticipantService {
       }
     });
 
-    boolean emailSentSuccessfully = false;
-
     if (!(verificationOp.isEmpty() || autoUpdateInvitation))
       return InvitationFeedback.SKIPPED;
 
-    try {
-      emailSentSuccessfully = sendRegistrationEmail(email, verificationToken, confirmationToken);
-    } catch (final IOException e) {
-      log.warn("Unable to send email.", e);
+    // Emails of imports get queued within the transaction storing the verification
+    final boolean queueEmail = participantImport != null && this.emailOutbox.isEnabled();
+    boolean emailSentSuccessfully = queueEmail;
+
+    if (!queueEmail) {
+      try {
+        emailSentSuccessfully = sendRegistrationEmail(email, verificationToken, confirmationToken);
+      } catch (final IOException e) {
+        log.warn("Unable to send email.", e);
+      }
     }
 
     if (verificationOp.isEmpty()) {
@@ -416,6 +1028,8 @@ public class ParticipantService {
 
       this.transactionTemplate.executeWithoutResult(status -> {
         this.entityManager.persist(verification);
+        if (queueEmail)
+          queueRegistrationEmail(verification, confirmationToken);
         status.flush();
       });
     } else {
@@ -428,7 +1042,11 @@ public class ParticipantService {
       verification.setHash(verificationToken);
 
       this.transactionTemplate.executeWithoutResult(status -> {
+        // Queued emails contain the previous hash
+        this.emailOutbox.discard(verification);
         this.entityManager.persist(verification);
+        if (queueEmail)
+          queueRegistrationEmail(verification, confirmationToken);
         status.flush();
       });
 
@@ -457,6 +1075,22 @@ public class ParticipantService {
   private boolean sendRegistrationEmail(final String email, final String verificationToken, final String userToken)
       throws IOException {
 
+    final String message = createRegistrationMessage(email, verificationToken, userToken);
+    return this.emailService.sendHTML(email, SUBJECT_REGISTRATION, message);
+  }
+
+  /**
+   * Must be called within the transaction storing the verification.
+   */
+  private void queueRegistrationEmail(final Verification verification, final String userToken) {
+
+    final String message = createRegistrationMessage(verification.getEmail(), verification.getHash(), userToken);
+    this.emailOutbox.enqueueHTML(verification.getEmail(), SUBJECT_REGISTRATION, message, verification);
+  }
+
+  private String createRegistrationMessage(final String email, final String verificationToken,
+      final String userToken) {
+
     final UriComponentsBuilder builder = this.publicUrlBuilder.cloneBuilder()
         .path("/auth/verify")
         .queryParam("token", verificationToken);
@@ -469,13 +1103,11 @@ public class ParticipantService {
         .encode()
         .toString();
 
-    log.debug("Sending email to '{}' with verification link: '{}'", email, publicLink);
+    log.debug("Creating email to '{}' with verification link: '{}'", email, publicLink);
 
     final Context context = new Context();
     context.setVariable("link", publicLink);
-    final String message = this.templateEngine.process("registrationTemplate", context);
-
-    return this.emailService.sendHTML(email, "Registration", message);
+    return this.templateEngine.process("registrationTemplate", context);
   }
 
   /**
@@ -485,9 +1117,89 @@ public class ParticipantService {
     final Query query = this.entityManager.createNamedQuery("Verification.deleteByEmail");
     query.setParameter(1, email);
 
+    // Queued emails reference the verification
+    final Query outboxQuery = this.entityManager.createNamedQuery("OutboxEmail.deleteByVerificationEmail");
+    outboxQuery.setParameter(1, email);
+
     this.transactionTemplate.execute(status -> {
+      outboxQuery.executeUpdate();
       query.executeUpdate();
       return true;
     });
   }
+
+  /**
+   * The state of a parallel import shared by the reading thread and the workers. The counters are only
+   * written to the database by the reading thread. Checking the import for cancellation is throttled to
+   * once per {@link ParticipantService#importCheckInterval} for all workers.
+   */
+  private class ParallelImport {
+
+    private final String importId;
+
+    private final LongAdder countSuccess = new LongAdder();
+
+    private final LongAdder countSkipped = new LongAdder();
+
+    private final LongAdder countFailed = new LongAdder();
+
+    private final AtomicLong lastCancellationCheck = new AtomicLong(System.nanoTime());
+
+    private final AtomicLong lastCountersUpdate = new AtomicLong(System.nanoTime());
+
+    private volatile boolean cancelled;
+
+    private ParallelImport(final String importId) {
+      this.importId = importId;
+    }
+
+    private boolean isCancelled() {
+
+      if (this.cancelled)
+        return true;
+
+      final long now = System.nanoTime();
+      final long lastCheck = this.lastCancellationCheck.get();
+
+      if (now - lastCheck >= ParticipantService.this.importCheckInterval.toNanos()
+          && this.lastCancellationCheck.compareAndSet(lastCheck, now)
+          && getParticipantImport(this.importId, ParticipantImportStatus.IN_PROGRESS) == null) {
+        log.debug("IMPORT: Import {} has been cancelled", this.importId);
+        this.cancelled = true;
+      }
+      return this.cancelled;
+    }
+
+    /**
+     * Stops all workers without changing the status of the import, e.g. if one of the workers failed.
+     */
+    private void cancel() {
+      this.cancelled = true;
+    }
+
+    private void updateCountersIfDue() {
+
+      final long now = System.nanoTime();
+      if (now - this.lastCountersUpdate.get() < ParticipantService.this.importCheckInterval.toNanos())
+        return;
+
+      this.lastCountersUpdate.set(now);
+      updateCounters();
+    }
+
+    /**
+     * Stores the counters without touching the status of the import, which might get cancelled
+     * concurrently.
+     */
+    private void updateCounters() {
+
+      final Query query = ParticipantService.this.entityManager.createNamedQuery("ParticipantImport.updateCounters");
+      query.setParameter(1, this.countSuccess.intValue());
+      query.setParameter(2, this.countSkipped.intValue());
+      query.setParameter(3, this.countFailed.intValue());
+      query.setParameter(4, this.importId);
+
+      ParticipantService.this.transactionTemplate.executeWithoutResult(status -> query.executeUpdate());
+    }
+  }
 }
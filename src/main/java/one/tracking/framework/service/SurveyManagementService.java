@@ -19,9 +19,14 @@ import org.apache.commons.collections4.IterableUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
+import one.tracking.framework.component.ExportJobComponent;
 import one.tracking.framework.component.SurveyDataExportComponent;
 import one.tracking.framework.domain.ContainerQuestionRelation;
 import one.tracking.framework.domain.CopyResult;
+import one.tracking.framework.domain.ExportFormat;
+import one.tracking.framework.domain.ExportJob;
+import one.tracking.framework.domain.ExportJobStatus;
+import one.tracking.framework.domain.ExportWindow;
 import one.tracking.framework.domain.Period;
 import one.tracking.framework.domain.SearchResult;
 import one.tracking.framework.domain.SurveyOverviewElement;
@@ -89,13 +94,62 @@ public class SurveyManagementService {
   @Autowired
   private SurveyDataExportComponent exportComponent;
 
+  @Autowired
+  private ExportJobComponent exportJobComponent;
+
   @PersistenceContext
   private EntityManager entityManager;
 
-  public void exportData(final Instant startTime, final Instant endTime, final OutputStream outStream)
-      throws IOException {
+  public void exportData(final Instant startTime, final Instant endTime, final ExportFormat format,
+      final String sheet, final OutputStream outStream) throws IOException {
+
+    this.exportComponent.export(startTime, endTime, format, sheet, outStream);
+  }
+
+  public ExportWindow getIncrementalExportWindow(final String consumerId) {
+    return this.exportComponent.getIncrementalWindow(consumerId);
+  }
+
+  /**
+   * Exports the data of the window. The watermark of its consumer is advanced by
+   * {@link #commitIncrementalExport(String, long, long)} as soon as the consumer received the data.
+   */
+  public void exportIncrementalData(final ExportWindow window, final ExportFormat format, final String sheet,
+      final OutputStream outStream) throws IOException {
+
+    this.exportComponent.export(window.getStartTime(), window.getEndTime(), format, sheet, outStream);
+  }
+
+  /**
+   * Advances the watermark of the consumer to the end of the window of a received incremental export.
+   *
+   * @throws ConflictException
+   *           if the watermark has been advanced by another commit of the consumer meanwhile
+   */
+  public void commitIncrementalExport(final String consumerId, final long startMillis, final long endMillis) {
+
+    final ExportWindow window = this.exportComponent.getIncrementalWindow(consumerId, startMillis, endMillis);
+
+    if (!this.exportComponent.commitIncrementalWindow(window))
+      throw new ConflictException("The watermark of consumer " + consumerId + " has been advanced already.");
+  }
+
+  public String createExportJob(final Instant startTime, final Instant endTime, final ExportFormat format,
+      final String sheet, final boolean gzip, final String filename) throws IOException {
+
+    return this.exportJobComponent.createJob(startTime, endTime, format, sheet, gzip, filename).getId();
+  }
+
+  public ExportJob getExportJob(final String jobId) {
+    return this.exportJobComponent.getJob(jobId);
+  }
+
+  public void downloadExportJob(final ExportJob job, final OutputStream outStream) throws IOException {
+
+    if (job.getStatus() != ExportJobStatus.COMPLETED)
+      throw new ConflictException("Export job is not completed. Status: " + job.getStatus());
 
-    this.exportComponent.export(startTime, endTime, outStream);
+    this.exportJobComponent.download(job, outStream);
   }
 
   public List<SurveyOverviewElement> getSurveyOverview() {
@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -26,6 +27,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
+import one.tracking.framework.component.export.ExportAbortedException;
 import one.tracking.framework.exception.ConflictException;
 
 /**
@@ -95,6 +97,18 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
     return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
   }
 
+  /**
+   * Aborted exports cannot be answered anymore, as the client closed the connection in most cases.
+   */
+  @ExceptionHandler(value = {ExportAbortedException.class})
+  public void exportAborted(final Exception e, final HttpServletResponse response) {
+
+    if (LOG.isTraceEnabled())
+      LOG.trace(e.getMessage(), e);
+    else
+      LOG.debug("{} Cause: {}", e.getMessage(), e.getCause() == null ? null : e.getCause().getMessage());
+  }
+
   @ExceptionHandler(value = {UnsupportedOperationException.class})
   @ResponseStatus(HttpStatus.NOT_IMPLEMENTED)
   public ResponseEntity<String> notImplemented(final Exception e) {
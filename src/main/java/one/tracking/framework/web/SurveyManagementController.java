@@ -4,12 +4,14 @@
 package one.tracking.framework.web;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
@@ -27,6 +29,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 import io.swagger.v3.oas.annotations.Parameter;
+import one.tracking.framework.config.TimeoutProperties;
+import one.tracking.framework.domain.ExportFormat;
+import one.tracking.framework.domain.ExportJob;
+import one.tracking.framework.domain.ExportWindow;
+import one.tracking.framework.dto.ExportJobFeedbackDto;
 import one.tracking.framework.dto.InvitationFeedbackDto;
 import one.tracking.framework.dto.Mapper;
 import one.tracking.framework.dto.ParticipantDto;
@@ -49,12 +56,18 @@ import one.tracking.framework.service.SurveyManagementService;
 @RequestMapping("/manage")
 public class SurveyManagementController {
 
+  private static final String HEADER_EXPORT_FROM = "X-Export-From";
+  private static final String HEADER_EXPORT_TO = "X-Export-To";
+
   @Autowired
   private ParticipantService participantService;
 
   @Autowired
   private SurveyManagementService surveyManagementService;
 
+  @Autowired
+  private TimeoutProperties timeoutConfig;
+
   /*
    * Participants
    */
@@ -158,6 +171,12 @@ public class SurveyManagementController {
       final Long from,
       @RequestParam("to")
       final Long to,
+      @RequestParam(name = "format", required = false, defaultValue = "xlsx")
+      final ExportFormat format,
+      @RequestParam(name = "sheet", required = false)
+      final String sheet,
+      @RequestParam(name = "gzip", required = false, defaultValue = "false")
+      final boolean gzip,
       @Parameter(hidden = true)
       final HttpServletResponse response) throws IOException {
 
@@ -166,18 +185,161 @@ public class SurveyManagementController {
 
     Assert.isTrue(startTime.isBefore(endTime), "'from' datetime value must be before 'to' datetime value.");
 
-    final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("YYYYMMdd_HHmmss")
-        .withZone(ZoneOffset.UTC);
+    final String filename = getExportFilename(format, gzip);
 
-    final String filename = "export_" + formatter.format(Instant.now()) + ".xlsx";
-
-    response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+    response.setContentType(gzip ? "application/gzip" : format.getContentType());
     response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
 
+    final OutputStream outStream = openExportStream(response, gzip);
+
     this.surveyManagementService.exportData(
         startTime.toInstant(ZoneOffset.UTC),
         endTime.toInstant(ZoneOffset.UTC),
-        response.getOutputStream());
+        format,
+        sheet,
+        outStream);
+
+    finishExportStream(outStream);
+  }
+
+  /**
+   * Exports all data created since the last committed incremental export of the specified consumer. The
+   * exported interval is returned by the headers {@value #HEADER_EXPORT_FROM} and {@value #HEADER_EXPORT_TO}
+   * as epoch milliseconds (both inclusive). The export does not advance the watermark of the consumer, so
+   * the consumer has to commit the interval as soon as the data has been received completely.
+   */
+  @RequestMapping(
+      method = RequestMethod.GET,
+      path = "/export/incremental/{consumerId}")
+  public void exportIncremental(
+      @PathVariable(name = "consumerId")
+      final String consumerId,
+      @RequestParam(name = "format", required = false, defaultValue = "xlsx")
+      final ExportFormat format,
+      @RequestParam(name = "sheet", required = false)
+      final String sheet,
+      @RequestParam(name = "gzip", required = false, defaultValue = "false")
+      final boolean gzip,
+      @Parameter(hidden = true)
+      final HttpServletResponse response) throws IOException {
+
+    Assert.isTrue(consumerId.length() <= 100, "'consumerId' must not exceed 100 characters.");
+
+    final ExportWindow window = this.surveyManagementService.getIncrementalExportWindow(consumerId);
+
+    response.setContentType(gzip ? "application/gzip" : format.getContentType());
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+        "attachment; filename=\"" + getExportFilename(format, gzip) + "\"");
+    response.setHeader(HEADER_EXPORT_FROM, String.valueOf(window.getStartTime().toEpochMilli()));
+    response.setHeader(HEADER_EXPORT_TO, String.valueOf(window.getEndTime().toEpochMilli()));
+
+    final OutputStream outStream = openExportStream(response, gzip);
+
+    this.surveyManagementService.exportIncrementalData(window, format, sheet, outStream);
+
+    finishExportStream(outStream);
+  }
+
+  /**
+   * Advances the watermark of the specified consumer to the end of an incremental export, so that the next
+   * incremental export starts after it. The parameters are the values of the headers
+   * {@value #HEADER_EXPORT_FROM} and {@value #HEADER_EXPORT_TO} of the received export.
+   */
+  @RequestMapping(
+      method = RequestMethod.POST,
+      path = "/export/incremental/{consumerId}/commit")
+  public void commitIncrementalExport(
+      @PathVariable(name = "consumerId")
+      final String consumerId,
+      @RequestParam("from")
+      @Min(0)
+      final Long from,
+      @RequestParam("to")
+      @Min(0)
+      final Long to) {
+
+    this.surveyManagementService.commitIncrementalExport(consumerId, from, to);
+  }
+
+  private OutputStream openExportStream(final HttpServletResponse response, final boolean gzip) throws IOException {
+    return gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream();
+  }
+
+  private void finishExportStream(final OutputStream outStream) throws IOException {
+
+    // Writes the trailer without closing the response stream
+    if (outStream instanceof GZIPOutputStream)
+      ((GZIPOutputStream) outStream).finish();
+  }
+
+  @RequestMapping(
+      method = RequestMethod.POST,
+      path = "/export/job")
+  public TokenResponseDto createExportJob(
+      @RequestParam("from")
+      final Long from,
+      @RequestParam("to")
+      final Long to,
+      @RequestParam(name = "format", required = false, defaultValue = "xlsx")
+      final ExportFormat format,
+      @RequestParam(name = "sheet", required = false)
+      final String sheet,
+      @RequestParam(name = "gzip", required = false, defaultValue = "false")
+      final boolean gzip) throws IOException {
+
+    final Instant startTime = Instant.ofEpochMilli(from);
+    final Instant endTime = Instant.ofEpochMilli(to);
+
+    Assert.isTrue(startTime.isBefore(endTime), "'from' datetime value must be before 'to' datetime value.");
+
+    final String jobId = this.surveyManagementService.createExportJob(startTime, endTime, format, sheet, gzip,
+        getExportFilename(format, gzip));
+
+    return TokenResponseDto.builder().token(jobId).build();
+  }
+
+  @RequestMapping(
+      method = RequestMethod.GET,
+      path = "/export/job/{jobId}")
+  public ExportJobFeedbackDto getExportJob(
+      @PathVariable(name = "jobId")
+      final String jobId) {
+
+    final ExportJob job = this.surveyManagementService.getExportJob(jobId);
+
+    return ExportJobFeedbackDto.builder()
+        .status(job.getStatus())
+        .countRows(job.getCountRows().get())
+        .message(job.getMessage())
+        .createdAt(job.getCreatedAt())
+        .completedAt(job.getCompletedAt())
+        .expiresAt(job.getCompletedAt() == null ? null : job.getCompletedAt().plus(this.timeoutConfig.getUpload()))
+        .build();
+  }
+
+  @RequestMapping(
+      method = RequestMethod.GET,
+      path = "/export/job/{jobId}/download")
+  public void downloadExportJob(
+      @PathVariable(name = "jobId")
+      final String jobId,
+      @Parameter(hidden = true)
+      final HttpServletResponse response) throws IOException {
+
+    final ExportJob job = this.surveyManagementService.getExportJob(jobId);
+
+    response.setContentType(job.isGzip() ? "application/gzip" : job.getFormat().getContentType());
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + job.getFilename() + "\"");
+
+    this.surveyManagementService.downloadExportJob(job, response.getOutputStream());
+  }
+
+  private String getExportFilename(final ExportFormat format, final boolean gzip) {
+
+    final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("YYYYMMdd_HHmmss")
+        .withZone(ZoneOffset.UTC);
+
+    return "export_" + formatter.format(Instant.now()) + "." + format.getFileExtension() + (gzip ? ".gz" : "");
   }
 
   /*
@@ -0,0 +1,60 @@
+-- Tables of the entities of this service, which are not part of survey-commons.
+-- The statements are executed on each startup before Hibernate validates the schema.
+
+CREATE TABLE IF NOT EXISTS `reminder_checkpoint` (
+  `task_name` VARCHAR(100) NOT NULL,
+  `survey_instance_id` BIGINT NOT NULL,
+  `last_device_token_id` BIGINT NOT NULL,
+  `count_device_tokens` INTEGER NOT NULL,
+  `count_notifications` INTEGER NOT NULL,
+  `completed` BIT NOT NULL,
+  `updated_at` DATETIME(6) NOT NULL,
+  PRIMARY KEY (`task_name`)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS `export_watermark` (
+  `consumer_id` VARCHAR(100) NOT NULL,
+  `watermark` DATETIME(6) NOT NULL,
+  `updated_at` DATETIME(6) NOT NULL,
+  PRIMARY KEY (`consumer_id`)
+) ENGINE=InnoDB;
+
+-- Replaces the SchedulerLock entity of survey-commons, whose table is no longer read or written. Instances
+-- of previous releases only respect the old table, so all instances must be stopped before deploying this
+-- release; a rolling update would allow both versions to run the same scheduled task concurrently.
+CREATE TABLE IF NOT EXISTS `task_lock` (
+  `task_name` VARCHAR(100) NOT NULL,
+  `fencing_token` BIGINT NOT NULL,
+  `expires_at` DATETIME(6) NOT NULL,
+  PRIMARY KEY (`task_name`)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS `outbox_email` (
+  `id` VARCHAR(36) NOT NULL,
+  `recipient` VARCHAR(255) NOT NULL,
+  `subject` VARCHAR(255) NOT NULL,
+  `body` LONGTEXT NOT NULL,
+  `html` BIT NOT NULL,
+  `verification_id` BIGINT,
+  `verification_hash` VARCHAR(256),
+  `status` VARCHAR(20) NOT NULL,
+  `attempts` INTEGER NOT NULL,
+  `next_attempt_at` DATETIME(6) NOT NULL,
+  `claim_token` VARCHAR(36),
+  `last_error` VARCHAR(1000),
+  `created_at` DATETIME(6) NOT NULL,
+  PRIMARY KEY (`id`),
+  INDEX `idx_outbox_email_status_next_attempt_at` (`status`, `next_attempt_at`),
+  INDEX `idx_outbox_email_claim_token` (`claim_token`),
+  -- Failed emails are kept for analysis, so they must not prevent deleting verifications
+  CONSTRAINT `fk_outbox_email_verification` FOREIGN KEY (`verification_id`)
+    REFERENCES `verification` (`id`) ON DELETE SET NULL
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS `participant_import_statistics` (
+  `import_id` VARCHAR(100) NOT NULL,
+  `count_total` INTEGER NOT NULL,
+  `count_invalid` INTEGER NOT NULL,
+  `created_at` DATETIME(6) NOT NULL,
+  PRIMARY KEY (`import_id`)
+) ENGINE=InnoDB;
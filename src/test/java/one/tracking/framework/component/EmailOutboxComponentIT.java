@@ -0,0 +1,341 @@
+/**
+ *
+ */
+package one.tracking.framework.component;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.entity.OutboxEmail;
+import one.tracking.framework.entity.OutboxEmailStatus;
+import one.tracking.framework.entity.Verification;
+import one.tracking.framework.entity.VerificationState;
+import one.tracking.framework.service.FirebaseService;
+import one.tracking.framework.service.mail.SendGridService;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties", properties = {
+    "app.email.outbox.enabled=true",
+    // Drained by the tests only
+    "app.email.outbox.pollInterval=1h",
+    "app.email.outbox.batchSize=100",
+    "app.email.outbox.maxAttempts=3",
+    "app.email.outbox.retryDelay=1m",
+    "app.email.outbox.failedRetention=1d"})
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("dev")
+public class EmailOutboxComponentIT {
+
+  private static final String SUBJECT = "Test";
+
+  @MockBean
+  private FirebaseService firebaseService;
+
+  @MockBean
+  private SendGridService sendGridService;
+
+  @Autowired
+  private EmailOutboxComponent emailOutbox;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Test
+  public void testSentEmailIsDeleted() throws Exception {
+
+    when(this.sendGridService.sendHTML(anyString(), anyString(), anyString())).thenReturn(true);
+
+    enqueue("test@example.com", null);
+
+    this.emailOutbox.drain();
+
+    verify(this.sendGridService).sendHTML("test@example.com", SUBJECT, "Body");
+    assertThat(getEmails(), is(empty()));
+  }
+
+  @Test
+  public void testConcurrentClaims() throws Exception {
+
+    final int amountEmails = 50;
+    final int amountThreads = 4;
+
+    for (int i = 0; i < amountEmails; i++)
+      enqueue("test." + i + "@example.com", null);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(amountThreads);
+    final CountDownLatch latch = new CountDownLatch(1);
+    final List<Future<List<OutboxEmail>>> futures = new ArrayList<>(amountThreads);
+
+    try {
+
+      for (int i = 0; i < amountThreads; i++) {
+        futures.add(executor.submit(() -> {
+          latch.await();
+          return this.emailOutbox.claim();
+        }));
+      }
+
+      latch.countDown();
+
+      final Set<String> claimedIds = new HashSet<>();
+      int countClaimed = 0;
+
+      for (final Future<List<OutboxEmail>> future : futures) {
+        for (final OutboxEmail email : future.get()) {
+          claimedIds.add(email.getId());
+          countClaimed++;
+        }
+      }
+
+      // Each email has been claimed exactly once
+      assertThat(countClaimed, is(amountEmails));
+      assertThat(claimedIds, hasSize(amountEmails));
+
+      // Claimed emails are not due until the claim timeout passed
+      assertThat(this.emailOutbox.claim(), is(empty()));
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testNextBatchIsClaimedWhileSending() throws Exception {
+
+    final int amountEmails = 150;
+    final CountDownLatch sendLatch = new CountDownLatch(1);
+
+    when(this.sendGridService.sendHTML(anyString(), anyString(), anyString())).thenAnswer(invocation -> {
+      sendLatch.await();
+      return true;
+    });
+
+    for (int i = 0; i < amountEmails; i++)
+      enqueue("test." + i + "@example.com", null);
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+
+      final Future<?> drain = executor.submit(this.emailOutbox::drain);
+
+      // Both batches got claimed, while the senders of the first batch are still blocked
+      await().atMost(Duration.ofSeconds(10)).until(() -> getEmails().stream()
+          .filter(email -> email.getClaimToken() != null)
+          .count() == amountEmails);
+      assertThat(drain.isDone(), is(false));
+
+      sendLatch.countDown();
+      drain.get(10, TimeUnit.SECONDS);
+
+      verify(this.sendGridService, times(amountEmails)).sendHTML(anyString(), anyString(), anyString());
+      assertThat(getEmails(), is(empty()));
+
+    } finally {
+      sendLatch.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRetryBackoff() throws Exception {
+
+    when(this.sendGridService.sendHTML(anyString(), anyString(), anyString())).thenReturn(false);
+
+    enqueue("test@example.com", null);
+
+    Instant before = Instant.now();
+    this.emailOutbox.drain();
+
+    OutboxEmail email = getEmails().get(0);
+
+    assertThat(email.getAttempts(), is(1));
+    assertThat(email.getStatus(), is(OutboxEmailStatus.PENDING));
+    assertThat(email.getClaimToken(), is(nullValue()));
+    assertNextAttempt(email, before, Duration.ofMinutes(1));
+
+    // Not due yet
+    this.emailOutbox.drain();
+    verify(this.sendGridService, times(1)).sendHTML(anyString(), anyString(), anyString());
+
+    makeDue();
+    before = Instant.now();
+    this.emailOutbox.drain();
+
+    email = getEmails().get(0);
+
+    assertThat(email.getAttempts(), is(2));
+    assertThat(email.getStatus(), is(OutboxEmailStatus.PENDING));
+    assertNextAttempt(email, before, Duration.ofMinutes(2));
+  }
+
+  @Test
+  public void testGiveUp() throws Exception {
+
+    when(this.sendGridService.sendHTML(anyString(), anyString(), anyString()))
+        .thenThrow(new IllegalStateException("Test error"));
+
+    final Verification verification = createVerification("test@example.com", "hash");
+    enqueue("test@example.com", verification);
+
+    for (int i = 0; i < 3; i++) {
+      makeDue();
+      this.emailOutbox.drain();
+    }
+
+    final OutboxEmail email = getEmails().get(0);
+
+    assertThat(email.getAttempts(), is(3));
+    assertThat(email.getStatus(), is(OutboxEmailStatus.FAILED));
+    assertThat(email.getLastError(), is("Test error"));
+    assertThat(getVerificationState(verification), is(VerificationState.ERROR));
+
+    // Failed emails are not retried
+    makeDue();
+    this.emailOutbox.drain();
+    verify(this.sendGridService, times(3)).sendHTML(anyString(), anyString(), anyString());
+  }
+
+  @Test
+  public void testExpiredFailedEmailsAreDeleted() throws Exception {
+
+    enqueue("test@example.com", null);
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+      this.entityManager.createQuery("UPDATE OutboxEmail e SET e.status = ?1, e.nextAttemptAt = ?2")
+          .setParameter(1, OutboxEmailStatus.FAILED)
+          .setParameter(2, Instant.now().minus(Duration.ofDays(2)))
+          .executeUpdate();
+    });
+
+    // Not deleted by polls
+    this.emailOutbox.drain();
+    assertThat(getEmails(), hasSize(1));
+
+    this.emailOutbox.deleteExpiredFailedEmails();
+
+    assertThat(getEmails(), is(empty()));
+    verify(this.sendGridService, never()).sendHTML(anyString(), anyString(), anyString());
+  }
+
+  @Test
+  public void testEmailOfRenewedVerificationIsDropped() throws Exception {
+
+    final Verification verification = createVerification("test@example.com", "hash");
+    enqueue("test@example.com", verification);
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+      this.entityManager.createQuery("UPDATE Verification v SET v.hash = ?1 WHERE v.id = ?2")
+          .setParameter(1, "renewed")
+          .setParameter(2, verification.getId())
+          .executeUpdate();
+    });
+
+    this.emailOutbox.drain();
+
+    assertThat(getEmails(), is(empty()));
+    verify(this.sendGridService, never()).sendHTML(anyString(), anyString(), anyString());
+  }
+
+  @Test
+  public void testDiscard() throws Exception {
+
+    final Verification verification = createVerification("test@example.com", "hash");
+    enqueue("test@example.com", verification);
+    enqueue("other@example.com", null);
+
+    this.transactionTemplate.executeWithoutResult(status -> this.emailOutbox.discard(verification));
+
+    final List<OutboxEmail> emails = getEmails();
+
+    assertThat(emails, hasSize(1));
+    assertThat(emails.get(0).getRecipient(), is("other@example.com"));
+  }
+
+  private void assertNextAttempt(final OutboxEmail email, final Instant before, final Duration delay) {
+
+    assertThat(email.getNextAttemptAt(), is(greaterThan(before.plus(delay).minusMillis(1))));
+    assertThat(email.getNextAttemptAt(), is(lessThan(Instant.now().plus(delay).plusMillis(1))));
+  }
+
+  private void enqueue(final String recipient, final Verification verification) {
+
+    this.transactionTemplate.executeWithoutResult(
+        status -> this.emailOutbox.enqueueHTML(recipient, SUBJECT, "Body", verification));
+  }
+
+  private void makeDue() {
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+      this.entityManager.createQuery("UPDATE OutboxEmail e SET e.nextAttemptAt = ?1")
+          .setParameter(1, Instant.now().minusSeconds(1))
+          .executeUpdate();
+    });
+  }
+
+  private List<OutboxEmail> getEmails() {
+
+    return this.transactionTemplate.execute(status -> this.entityManager
+        .createQuery("SELECT e FROM OutboxEmail e ORDER BY e.createdAt ASC", OutboxEmail.class)
+        .getResultList());
+  }
+
+  private Verification createVerification(final String email, final String hash) {
+
+    final Verification verification = Verification.builder()
+        .email(email)
+        .hash(hash)
+        .state(VerificationState.PENDING)
+        .createdBy("test")
+        .build();
+
+    this.transactionTemplate.executeWithoutResult(status -> this.entityManager.persist(verification));
+
+    return verification;
+  }
+
+  private VerificationState getVerificationState(final Verification verification) {
+
+    return this.transactionTemplate.execute(
+        status -> this.entityManager.find(Verification.class, verification.getId()).getState());
+  }
+}
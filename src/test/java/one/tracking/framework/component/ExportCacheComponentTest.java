@@ -0,0 +1,300 @@
+/**
+ *
+ */
+package one.tracking.framework.component;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import one.tracking.framework.component.export.RowConsumer;
+import one.tracking.framework.component.export.RowSource;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class ExportCacheComponentTest {
+
+  private static final String KEY = "test";
+
+  private static final Instant START_TIME = Instant.parse("2020-01-01T00:00:00Z");
+
+  /**
+   * Four closed slices of a day followed by a single microsecond read from the source
+   */
+  private static final Instant END_TIME = Instant.parse("2020-01-05T00:00:00Z");
+
+  @TempDir
+  Path tempDir;
+
+  private ExportCacheComponent exportCache;
+
+  private TestRowSource source;
+
+  @BeforeEach
+  public void before() throws IOException {
+
+    this.exportCache = new ExportCacheComponent();
+    ReflectionTestUtils.setField(this.exportCache, "enabled", true);
+    ReflectionTestUtils.setField(this.exportCache, "directory", this.tempDir.toString());
+    ReflectionTestUtils.setField(this.exportCache, "slice", Duration.ofDays(1));
+    ReflectionTestUtils.setField(this.exportCache, "closedAfter", Duration.ofHours(1));
+    this.exportCache.init();
+
+    this.source = new TestRowSource();
+    this.source.add("2020-01-01T10:00:00Z", "a", 1L, 1.5, true, new BigDecimal("1.25"), null);
+    this.source.add("2020-01-02T10:00:00Z", "b", 2, 2.5, false, new BigDecimal("2.25"), "ü");
+    this.source.add("2020-01-03T10:00:00Z", "c", 3L, 3.5, null, null, "");
+    this.source.add("2020-01-05T00:00:00Z", "d", 4L, 4.5, true, BigDecimal.ZERO, null);
+  }
+
+  @Test
+  public void testClosedSlicesAreCached() throws Exception {
+
+    assertThat(read(), is(this.source.getRows()));
+    assertThat(this.source.countSliceReads, is(4));
+    assertThat(this.source.countFingerprintQueries, is(1));
+    assertThat(getCacheFiles(), hasSize(4));
+
+    this.source.countSliceReads = 0;
+
+    // Replayed from the cache, including the types of the values
+    assertThat(read(), is(this.source.getRows()));
+    assertThat(this.source.countSliceReads, is(0));
+    assertThat(this.source.countFingerprintQueries, is(2));
+  }
+
+  @Test
+  public void testChangedSliceIsRebuilt() throws Exception {
+
+    read();
+
+    this.source.changedSlice = Instant.parse("2020-01-02T00:00:00Z");
+    this.source.countSliceReads = 0;
+
+    assertThat(read(), is(this.source.getRows()));
+    assertThat(this.source.countSliceReads, is(1));
+  }
+
+  @Test
+  public void testChangedFingerprintRebuildsSlice() throws Exception {
+
+    read();
+
+    this.source.fingerprint = "changed";
+    this.source.countSliceReads = 0;
+
+    assertThat(read(), is(this.source.getRows()));
+    assertThat(this.source.countSliceReads, is(4));
+  }
+
+  @Test
+  public void testTruncatedFileIsRebuilt() throws Exception {
+
+    read();
+
+    for (final Path file : getCacheFiles()) {
+      final byte[] bytes = Files.readAllBytes(file);
+      Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+    }
+
+    assertCorruptFilesRebuilt();
+  }
+
+  @Test
+  public void testIncompleteRowsAreRebuilt() throws Exception {
+
+    read();
+
+    // Valid compressed files, which end within the rows
+    for (final Path file : getCacheFiles()) {
+
+      final byte[] content;
+      try (InputStream inStream = new GZIPInputStream(Files.newInputStream(file))) {
+        content = inStream.readAllBytes();
+      }
+
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (OutputStream outStream = new GZIPOutputStream(bytes)) {
+        outStream.write(content, 0, content.length - 10);
+      }
+      Files.write(file, bytes.toByteArray());
+    }
+
+    assertCorruptFilesRebuilt();
+  }
+
+  @Test
+  public void testGarbageIsRebuilt() throws Exception {
+
+    read();
+
+    for (final Path file : getCacheFiles()) {
+      Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+    }
+
+    assertCorruptFilesRebuilt();
+  }
+
+  /**
+   * Each row gets consumed exactly once and the cache gets rebuilt, so that the next export uses it again.
+   */
+  private void assertCorruptFilesRebuilt() throws IOException {
+
+    this.source.countSliceReads = 0;
+
+    assertThat(read(), is(this.source.getRows()));
+    assertThat(this.source.countSliceReads, is(4));
+
+    this.source.countSliceReads = 0;
+
+    assertThat(read(), is(this.source.getRows()));
+    assertThat(this.source.countSliceReads, is(0));
+  }
+
+  @Test
+  public void testOpenSlicesAreNotCached() throws Exception {
+
+    final Instant now = Instant.now();
+    this.source.add(now.minusSeconds(60).toString(), "e", 5L, 5.5, false, BigDecimal.ONE, null);
+
+    read(now.minus(Duration.ofDays(1)), now);
+
+    assertThat(getCacheFiles(), is(empty()));
+  }
+
+  @Test
+  public void testEmptyIntervalIsNotCached() throws Exception {
+
+    final List<List<Object>> rows = new ArrayList<>();
+    this.exportCache.read(KEY, Instant.parse("2019-01-01T00:00:00Z"), Instant.parse("2019-01-05T00:00:00Z"),
+        this.source, row -> rows.add(Arrays.asList(row)));
+
+    assertThat(rows, is(empty()));
+    assertThat(getCacheFiles(), is(empty()));
+  }
+
+  @Test
+  public void testAlignToSlice() {
+
+    assertThat(this.exportCache.alignToSlice(Instant.parse("2020-01-02T10:00:00Z")),
+        is(Instant.parse("2020-01-02T00:00:00Z")));
+    assertThat(this.exportCache.alignToSlice(Instant.parse("2020-01-02T00:00:00Z")),
+        is(Instant.parse("2020-01-02T00:00:00Z")));
+    assertThat(this.exportCache.alignToSlice(Instant.parse("1969-12-31T10:00:00Z")),
+        is(Instant.parse("1969-12-31T00:00:00Z")));
+  }
+
+  private List<List<Object>> read() throws IOException {
+    return read(START_TIME, END_TIME);
+  }
+
+  private List<List<Object>> read(final Instant startTime, final Instant endTime) throws IOException {
+
+    final List<List<Object>> rows = new ArrayList<>();
+    this.exportCache.read(KEY, startTime, endTime, this.source, row -> rows.add(Arrays.asList(row)));
+    return rows;
+  }
+
+  private List<Path> getCacheFiles() throws IOException {
+
+    final Path directory = this.tempDir.resolve(KEY);
+
+    if (!Files.exists(directory))
+      return List.of();
+
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.toString().endsWith(".rows.gz")).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static final class TestRowSource implements RowSource {
+
+    private final List<Instant> timestamps = new ArrayList<>();
+
+    private final List<Object[]> rows = new ArrayList<>();
+
+    private String fingerprint = "initial";
+
+    /**
+     * The start of a slice, whose fingerprint differs from the others, if set
+     */
+    private Instant changedSlice;
+
+    private int countFingerprintQueries;
+
+    /**
+     * The amount of reads of whole slices
+     */
+    private int countSliceReads;
+
+    private void add(final String timestamp, final Object... values) {
+      this.timestamps.add(Instant.parse(timestamp));
+      this.rows.add(values);
+    }
+
+    private List<List<Object>> getRows() {
+      return this.rows.stream().map(Arrays::asList).collect(Collectors.toList());
+    }
+
+    @Override
+    public void read(final Instant startTime, final Instant endTime, final RowConsumer<Object[]> consumer)
+        throws IOException {
+
+      if (Duration.between(startTime, endTime).compareTo(Duration.ofHours(23)) > 0)
+        this.countSliceReads++;
+
+      for (int i = 0; i < this.rows.size(); i++) {
+        if (isBetween(this.timestamps.get(i), startTime, endTime))
+          consumer.accept(this.rows.get(i).clone());
+      }
+    }
+
+    @Override
+    public Instant getFirstTimestamp(final Instant startTime, final Instant endTime) {
+
+      return this.timestamps.stream()
+          .filter(timestamp -> isBetween(timestamp, startTime, endTime))
+          .min(Instant::compareTo)
+          .orElse(null);
+    }
+
+    @Override
+    public List<String> getFingerprints(final Instant startTime, final Duration slice, final int countSlices) {
+
+      this.countFingerprintQueries++;
+
+      final List<String> fingerprints = new ArrayList<>();
+      for (int i = 0; i < countSlices; i++) {
+        final boolean changed = startTime.plus(slice.multipliedBy(i)).equals(this.changedSlice);
+        fingerprints.add(changed ? "changed" : this.fingerprint);
+      }
+      return fingerprints;
+    }
+
+    private static boolean isBetween(final Instant timestamp, final Instant startTime, final Instant endTime) {
+      return !timestamp.isBefore(startTime) && !timestamp.isAfter(endTime);
+    }
+  }
+}
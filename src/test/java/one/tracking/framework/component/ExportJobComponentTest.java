@@ -0,0 +1,365 @@
+/**
+ *
+ */
+package one.tracking.framework.component;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import one.tracking.framework.config.TimeoutProperties;
+import one.tracking.framework.domain.ExportFormat;
+import one.tracking.framework.domain.ExportJob;
+import one.tracking.framework.domain.ExportJobStatus;
+import one.tracking.framework.exception.ConflictException;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class ExportJobComponentTest {
+
+  private static final Instant START_TIME = Instant.parse("2020-01-01T00:00:00Z");
+
+  private static final Instant END_TIME = Instant.parse("2020-02-01T00:00:00Z");
+
+  private static final String CONTENT = "data";
+
+  private ExportJobComponent exportJobComponent;
+
+  private SurveyDataExportComponent exportComponent;
+
+  private TestAsyncExecutor asyncExecutor;
+
+  private ThreadPoolTaskScheduler taskScheduler;
+
+  /**
+   * Blocks the exports until released, if set
+   */
+  private volatile CountDownLatch exportLatch;
+
+  private final List<ExportJob> createdJobs = new ArrayList<>();
+
+  @BeforeEach
+  public void before() throws Exception {
+
+    this.exportComponent = mock(SurveyDataExportComponent.class);
+
+    doAnswer(invocation -> {
+
+      if (this.exportLatch != null)
+        this.exportLatch.await();
+
+      final OutputStream outStream = invocation.getArgument(4);
+      final AtomicLong rowCounter = invocation.getArgument(5);
+
+      outStream.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+      rowCounter.incrementAndGet();
+      return null;
+
+    }).when(this.exportComponent).export(any(), any(), any(), any(), any(OutputStream.class), any(AtomicLong.class));
+
+    this.taskScheduler = new ThreadPoolTaskScheduler();
+    this.taskScheduler.initialize();
+
+    this.asyncExecutor = new TestAsyncExecutor();
+
+    this.exportJobComponent = new ExportJobComponent();
+    ReflectionTestUtils.setField(this.exportJobComponent, "exportComponent", this.exportComponent);
+    ReflectionTestUtils.setField(this.exportJobComponent, "asyncExecutor", this.asyncExecutor);
+    ReflectionTestUtils.setField(this.exportJobComponent, "taskScheduler", this.taskScheduler);
+    setUploadTimeout(Duration.ofMinutes(10));
+    setMaxConcurrentJobs(2);
+  }
+
+  @AfterEach
+  public void after() throws IOException {
+
+    if (this.exportLatch != null)
+      this.exportLatch.countDown();
+
+    this.asyncExecutor.executor.shutdownNow();
+    this.taskScheduler.shutdown();
+
+    for (final ExportJob job : this.createdJobs) {
+      Files.deleteIfExists(job.getFile());
+    }
+  }
+
+  @Test
+  public void testCompletedJob() throws Exception {
+
+    final ExportJob job = createJob(false);
+
+    assertThat(this.exportJobComponent.getJob(job.getId()), is(job));
+
+    awaitStatus(job, ExportJobStatus.COMPLETED);
+
+    assertThat(job.getCountRows().get(), is(1L));
+    assertThat(job.getCompletedAt(), is(notNullValue()));
+    assertThat(job.getMessage(), is(nullValue()));
+    assertThat(new String(Files.readAllBytes(job.getFile()), StandardCharsets.UTF_8), is(CONTENT));
+  }
+
+  @Test
+  public void testCompressedJob() throws Exception {
+
+    final ExportJob job = createJob(true);
+
+    awaitStatus(job, ExportJobStatus.COMPLETED);
+
+    try (final InputStream inStream = new GZIPInputStream(Files.newInputStream(job.getFile()))) {
+      assertThat(new String(inStream.readAllBytes(), StandardCharsets.UTF_8), is(CONTENT));
+    }
+  }
+
+  @Test
+  public void testFailedJob() throws Exception {
+
+    doThrow(new IOException("Failure")).when(this.exportComponent)
+        .export(any(), any(), any(), any(), any(OutputStream.class), any(AtomicLong.class));
+
+    final ExportJob job = createJob(false);
+
+    awaitStatus(job, ExportJobStatus.FAILED);
+
+    assertThat(job.getMessage(), is("Failure"));
+    assertThat(job.getCompletedAt(), is(notNullValue()));
+  }
+
+  @Test
+  public void testMaxConcurrentJobs() throws Exception {
+
+    this.exportLatch = new CountDownLatch(1);
+
+    final ExportJob first = createJob(false);
+    final ExportJob second = createJob(false);
+
+    assertThrows(ConflictException.class, () -> createJob(false));
+    assertThat(first.getStatus(), is(ExportJobStatus.IN_PROGRESS));
+    assertThat(second.getStatus(), is(ExportJobStatus.IN_PROGRESS));
+
+    this.exportLatch.countDown();
+
+    awaitStatus(first, ExportJobStatus.COMPLETED);
+    awaitStatus(second, ExportJobStatus.COMPLETED);
+
+    // Completed jobs do not count, although their files are kept until the upload timeout
+    final ExportJob third = await().atMost(Duration.ofSeconds(10)).until(this::tryCreateJob, notNullValue());
+
+    awaitStatus(third, ExportJobStatus.COMPLETED);
+  }
+
+  @Test
+  public void testRejectedJobIsRemoved() throws Exception {
+
+    setMaxConcurrentJobs(1);
+
+    this.asyncExecutor.rejecting = true;
+
+    assertThrows(TaskRejectedException.class, () -> createJob(false));
+
+    this.asyncExecutor.rejecting = false;
+
+    // The slot of the rejected job has been released
+    awaitStatus(createJob(false), ExportJobStatus.COMPLETED);
+  }
+
+  @Test
+  public void testJobIsDeletedAfterUploadTimeout() throws Exception {
+
+    setUploadTimeout(Duration.ofMillis(100));
+
+    final ExportJob job = createJob(false);
+
+    awaitStatus(job, ExportJobStatus.COMPLETED);
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> !Files.exists(job.getFile()));
+
+    assertThrows(NoSuchElementException.class, () -> this.exportJobComponent.getJob(job.getId()));
+  }
+
+  @Test
+  public void testDownload() throws Exception {
+
+    final ExportJob job = createJob(false);
+
+    awaitStatus(job, ExportJobStatus.COMPLETED);
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    this.exportJobComponent.download(job, outStream);
+
+    assertThat(new String(outStream.toByteArray(), StandardCharsets.UTF_8), is(CONTENT));
+  }
+
+  @Test
+  public void testDeletionWaitsForDownload() throws Exception {
+
+    setUploadTimeout(Duration.ofMillis(500));
+
+    final ExportJob job = createJob(false);
+
+    awaitStatus(job, ExportJobStatus.COMPLETED);
+
+    final CountDownLatch downloadStarted = new CountDownLatch(1);
+    final CountDownLatch downloadLatch = new CountDownLatch(1);
+
+    // Blocks the download until released
+    final OutputStream outStream = new OutputStream() {
+
+      @Override
+      public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) throws IOException {
+
+        downloadStarted.countDown();
+
+        try {
+          downloadLatch.await();
+        } catch (final InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+    };
+
+    final ExecutorService downloadExecutor = Executors.newSingleThreadExecutor();
+
+    try {
+      final Future<?> download = downloadExecutor.submit(() -> {
+        this.exportJobComponent.download(job, outStream);
+        return null;
+      });
+
+      assertThat(downloadStarted.await(10, TimeUnit.SECONDS), is(true));
+
+      // The job expires, but its file is kept while it is being downloaded
+      await().atMost(Duration.ofSeconds(10)).until(job::isExpired);
+
+      assertThrows(NoSuchElementException.class, () -> this.exportJobComponent.getJob(job.getId()));
+      assertThat(Files.exists(job.getFile()), is(true));
+
+      downloadLatch.countDown();
+      download.get(10, TimeUnit.SECONDS);
+
+      assertThat(Files.exists(job.getFile()), is(false));
+
+    } finally {
+      downloadLatch.countDown();
+      downloadExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDownloadOfExpiredJob() throws Exception {
+
+    setUploadTimeout(Duration.ofMillis(100));
+
+    final ExportJob job = createJob(false);
+
+    awaitStatus(job, ExportJobStatus.COMPLETED);
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> !Files.exists(job.getFile()));
+
+    assertThrows(NoSuchElementException.class,
+        () -> this.exportJobComponent.download(job, new ByteArrayOutputStream()));
+  }
+
+  @Test
+  public void testUnknownJob() {
+    assertThrows(NoSuchElementException.class, () -> this.exportJobComponent.getJob("unknown"));
+  }
+
+  private ExportJob createJob(final boolean gzip) throws Exception {
+
+    final ExportJob job =
+        this.exportJobComponent.createJob(START_TIME, END_TIME, ExportFormat.CSV, null, gzip, "export.csv");
+
+    this.createdJobs.add(job);
+    assertThat(Files.exists(job.getFile()), is(true));
+    return job;
+  }
+
+  /**
+   * @return null if the maximum amount of jobs is in progress
+   */
+  private ExportJob tryCreateJob() throws Exception {
+
+    try {
+      return createJob(false);
+    } catch (final ConflictException e) {
+      return null;
+    }
+  }
+
+  private void awaitStatus(final ExportJob job, final ExportJobStatus status) {
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> job.getStatus(), is(not(ExportJobStatus.IN_PROGRESS)));
+    assertThat(job.getStatus(), is(status));
+  }
+
+  private void setUploadTimeout(final Duration upload) {
+
+    ReflectionTestUtils.setField(this.exportJobComponent, "timeoutConfig",
+        new TimeoutProperties(Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofMinutes(1), upload));
+  }
+
+  private void setMaxConcurrentJobs(final int maxConcurrentJobs) {
+
+    ReflectionTestUtils.setField(this.exportJobComponent, "maxConcurrentJobs", maxConcurrentJobs);
+    this.exportJobComponent.init();
+  }
+
+  /**
+   * Performs the tasks on separate threads like the asynchronous proxy of the {@link AsyncExecutor}.
+   */
+  private static final class TestAsyncExecutor extends AsyncExecutor {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private volatile boolean rejecting;
+
+    @Override
+    public <V> V execute(final AsyncTask<V> task) {
+
+      if (this.rejecting)
+        throw new TaskRejectedException("Executor is busy.");
+
+      this.executor.submit(() -> super.execute(task));
+      return null;
+    }
+  }
+}
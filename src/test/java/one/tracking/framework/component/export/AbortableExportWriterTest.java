@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class AbortableExportWriterTest {
+
+  private TestExportWriter delegate;
+
+  private ExportControl control;
+
+  private AbortableExportWriter writer;
+
+  @BeforeEach
+  public void before() {
+
+    this.delegate = new TestExportWriter();
+    this.control = new ExportControl(null);
+    this.writer = new AbortableExportWriter(this.delegate, this.control);
+  }
+
+  @Test
+  public void testDelegates() throws IOException {
+
+    this.writer.startSheet("Sheet", ExportColumn.string("A"));
+    this.writer.writeRow("a");
+    this.writer.finish();
+    this.writer.close();
+
+    assertThat(this.delegate.calls, is(Arrays.asList("startSheet", "writeRow", "finish", "close")));
+    assertThat(this.control.isAborted(), is(false));
+  }
+
+  @Test
+  public void testFailedWriteAbortsExport() throws IOException {
+
+    final IOException failure = new IOException("Broken pipe");
+    this.delegate.failure = failure;
+
+    final ExportAbortedException exception = assertThrows(ExportAbortedException.class,
+        () -> this.writer.writeRow("a"));
+
+    assertThat(exception.getCause(), is(sameInstance(failure)));
+    assertThat(this.control.isAborted(), is(true));
+
+    // The readers stop as soon as they check the control
+    assertThrows(ExportAbortedException.class, () -> this.control.checkAborted());
+    assertThrows(ExportAbortedException.class, () -> this.control.onRowsRead(1));
+  }
+
+  @Test
+  public void testFailedStartAndFinishAbortExport() throws IOException {
+
+    this.delegate.failure = new IOException("Broken pipe");
+
+    assertThrows(ExportAbortedException.class, () -> this.writer.startSheet("Sheet"));
+    assertThat(this.control.isAborted(), is(true));
+
+    this.before();
+    this.delegate.failure = new IOException("Broken pipe");
+
+    assertThrows(ExportAbortedException.class, () -> this.writer.finish());
+    assertThat(this.control.isAborted(), is(true));
+  }
+
+  @Test
+  public void testAbortedExceptionIsNotWrapped() throws IOException {
+
+    final ExportAbortedException failure = new ExportAbortedException("Timed out");
+    this.delegate.failure = failure;
+
+    assertThat(assertThrows(ExportAbortedException.class, () -> this.writer.writeRow("a")),
+        is(sameInstance(failure)));
+    assertThat(this.control.isAborted(), is(true));
+  }
+
+  @Test
+  public void testRateLimitedControl() throws IOException {
+
+    final ExportControl rateLimited = new ExportControl(RateLimiter.create(1000));
+
+    rateLimited.onRowsRead(0);
+    rateLimited.onRowsRead(10);
+    rateLimited.abort();
+
+    assertThrows(ExportAbortedException.class, () -> rateLimited.onRowsRead(10));
+  }
+
+  private static final class TestExportWriter implements ExportWriter {
+
+    private final List<String> calls = new ArrayList<>();
+
+    private IOException failure;
+
+    @Override
+    public void startSheet(final String name, final ExportColumn... columns) throws IOException {
+      call("startSheet");
+    }
+
+    @Override
+    public void writeRow(final Object... values) throws IOException {
+      call("writeRow");
+    }
+
+    @Override
+    public void finish() throws IOException {
+      call("finish");
+    }
+
+    @Override
+    public void close() throws IOException {
+      call("close");
+    }
+
+    private void call(final String method) throws IOException {
+
+      if (this.failure != null)
+        throw this.failure;
+
+      this.calls.add(method);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class CsvExportWriterTest {
+
+  @Test
+  public void testHeaderAndValues() throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+
+    try (final CsvExportWriter writer = new CsvExportWriter(outStream)) {
+      writer.startSheet("Sheet", ExportColumn.string("Text"), ExportColumn.integer("Number"),
+          ExportColumn.bool("Bool"), ExportColumn.decimal("Decimal"), ExportColumn.timestamp("Timestamp"));
+      writer.writeRow("a", 1, true, new BigDecimal("1.50"), Instant.parse("2020-01-02T03:04:05.006Z"));
+      writer.writeRow("ü", -1, false, BigDecimal.ZERO, Instant.parse("2020-01-02T03:04:05Z"));
+      writer.finish();
+    }
+
+    assertThat(toString(outStream), is("Text,Number,Bool,Decimal,Timestamp\r\n"
+        + "a,1,true,1.50,2020-01-02T03:04:05.006Z\r\n"
+        + "ü,-1,false,0,2020-01-02T03:04:05Z\r\n"));
+  }
+
+  @Test
+  public void testNullAndEmptyValues() throws IOException {
+
+    // Both are written as empty fields
+    assertThat(writeRow(null, "", null), is(",,\r\n"));
+    assertThat(writeRow((Object) null), is("\r\n"));
+  }
+
+  @Test
+  public void testQuoting() throws IOException {
+
+    assertThat(writeRow("plain", "with space", "semi;colon"), is("plain,with space,semi;colon\r\n"));
+    assertThat(writeRow("a,b"), is("\"a,b\"\r\n"));
+    assertThat(writeRow("say \"hi\""), is("\"say \"\"hi\"\"\"\r\n"));
+    assertThat(writeRow("\""), is("\"\"\"\"\r\n"));
+    assertThat(writeRow("line\nbreak", "carriage\rreturn", "both\r\n"),
+        is("\"line\nbreak\",\"carriage\rreturn\",\"both\r\n\"\r\n"));
+
+    // Values of other types are quoted based on their string representation
+    assertThat(writeRow(new Object() {
+      @Override
+      public String toString() {
+        return "x,y";
+      }
+    }), is("\"x,y\"\r\n"));
+  }
+
+  @Test
+  public void testFinishDoesNotCloseStream() throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+
+    try (final CsvExportWriter writer = new CsvExportWriter(outStream)) {
+      writer.writeRow("a");
+      // Buffered until finished
+      assertThat(outStream.size(), is(0));
+      writer.finish();
+    }
+
+    outStream.write('b');
+
+    assertThat(toString(outStream), is("a\r\nb"));
+  }
+
+  private static String writeRow(final Object... values) throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+
+    try (final CsvExportWriter writer = new CsvExportWriter(outStream)) {
+      writer.writeRow(values);
+      writer.finish();
+    }
+
+    return toString(outStream);
+  }
+
+  private static String toString(final ByteArrayOutputStream outStream) {
+    return new String(outStream.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class NdjsonExportWriterTest {
+
+  private static final ExportColumn[] COLUMNS = {
+      ExportColumn.string("Text"),
+      ExportColumn.integer("Number"),
+      ExportColumn.bool("Bool"),
+      ExportColumn.decimal("Decimal"),
+      ExportColumn.timestamp("Timestamp")};
+
+  @Test
+  public void testRows() throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+
+    try (final NdjsonExportWriter writer = new NdjsonExportWriter(outStream)) {
+      writer.startSheet("Sheet", COLUMNS);
+      writer.writeRow("a", 1, true, new BigDecimal("1.50"), Instant.parse("2020-01-02T03:04:05Z"));
+      writer.writeRow("b\"\n\u00FC", Long.MAX_VALUE, false, 2.5, Instant.parse("2020-01-02T03:04:05.006Z"));
+      writer.writeRow(null, null, null, null, null);
+      writer.finish();
+    }
+
+    // A single object per line, which ends with a line feed
+    assertThat(toString(outStream), is(
+        "{\"Text\":\"a\",\"Number\":1,\"Bool\":true,\"Decimal\":1.50,\"Timestamp\":\"2020-01-02T03:04:05Z\"}\n"
+            + "{\"Text\":\"b\\\"\\n\u00FC\",\"Number\":9223372036854775807,\"Bool\":false,\"Decimal\":2.5,"
+            + "\"Timestamp\":\"2020-01-02T03:04:05.006Z\"}\n"
+            + "{\"Text\":null,\"Number\":null,\"Bool\":null,\"Decimal\":null,\"Timestamp\":null}\n"));
+  }
+
+  @Test
+  public void testNumbers() throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+
+    try (final NdjsonExportWriter writer = new NdjsonExportWriter(outStream)) {
+      writer.startSheet("Sheet", ExportColumn.decimal("A"), ExportColumn.decimal("B"),
+          ExportColumn.decimal("C"), ExportColumn.decimal("D"));
+      writer.writeRow((short) 1, new BigInteger("123456789012345678901234567890"), 1.5f,
+          new BigDecimal("0.1"));
+      writer.finish();
+    }
+
+    assertThat(toString(outStream), is("{\"A\":1,\"B\":123456789012345678901234567890,\"C\":1.5,\"D\":0.1}\n"));
+  }
+
+  @Test
+  public void testSheetChangesFieldNames() throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+
+    try (final NdjsonExportWriter writer = new NdjsonExportWriter(outStream)) {
+      writer.startSheet("First", ExportColumn.string("A"));
+      writer.writeRow("a");
+      writer.startSheet("Second", ExportColumn.string("B"));
+      writer.writeRow("b");
+      writer.finish();
+    }
+
+    assertThat(toString(outStream), is("{\"A\":\"a\"}\n{\"B\":\"b\"}\n"));
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+
+    try (final NdjsonExportWriter writer = new NdjsonExportWriter(outStream)) {
+      writer.startSheet("Sheet", COLUMNS);
+      writer.finish();
+    }
+
+    // Without a header no line gets written at all
+    assertThat(outStream.size(), is(0));
+  }
+
+  private static String toString(final ByteArrayOutputStream outStream) {
+    return new String(outStream.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,374 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.page.DataPage;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.page.PageReader;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimeUnit;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type.Repetition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Reads the written files using parquet-mr.
+ *
+ * @author Marko Voß
+ *
+ */
+public class ParquetExportWriterTest {
+
+  private static final long ROW_GROUP_SIZE = 8 * 1024 * 1024;
+
+  private static final ExportColumn[] ALL_TYPES = {
+      ExportColumn.string("string"),
+      ExportColumn.dictionary("dictionary"),
+      ExportColumn.bool("bool"),
+      ExportColumn.integer("integer"),
+      ExportColumn.decimal("decimal"),
+      ExportColumn.timestamp("timestamp")};
+
+  @TempDir
+  java.nio.file.Path tempDir;
+
+  @Test
+  public void testAllTypes() throws Exception {
+
+    final Instant timestamp = Instant.parse("2020-01-02T10:15:30.123Z");
+
+    final List<Object[]> rows = Arrays.asList(
+        new Object[] {"a", "x", true, 1L, 1.5, timestamp},
+        new Object[] {"ü\"€", "y", false, -2, new BigDecimal("2.25"), Date.from(timestamp)},
+        new Object[] {"", "x", "true", "3", "3.5", null},
+        new Object[] {null, null, null, null, null, null},
+        new Object[] {"b", "x", false, Long.MIN_VALUE, -0.0, Instant.EPOCH});
+
+    final List<List<Object>> expected = Arrays.asList(
+        Arrays.asList("a", "x", true, 1L, 1.5, timestamp.toEpochMilli()),
+        Arrays.asList("ü\"€", "y", false, -2L, 2.25, timestamp.toEpochMilli()),
+        Arrays.asList("", "x", true, 3L, 3.5, null),
+        Arrays.asList(null, null, null, null, null, null),
+        Arrays.asList("b", "x", false, Long.MIN_VALUE, -0.0, 0L));
+
+    for (final boolean compress : new boolean[] {false, true}) {
+
+      final Path file = write(ALL_TYPES, rows, ROW_GROUP_SIZE, 100, compress);
+
+      assertThat(read(file), is(expected));
+
+      final MessageType schema = readSchema(file);
+      assertThat(schema.getFieldCount(), is(ALL_TYPES.length));
+      assertColumn(schema, "string", PrimitiveTypeName.BINARY, LogicalTypeAnnotation.stringType());
+      assertColumn(schema, "dictionary", PrimitiveTypeName.BINARY, LogicalTypeAnnotation.stringType());
+      assertColumn(schema, "bool", PrimitiveTypeName.BOOLEAN, null);
+      assertColumn(schema, "integer", PrimitiveTypeName.INT64, null);
+      assertColumn(schema, "decimal", PrimitiveTypeName.DOUBLE, null);
+      assertColumn(schema, "timestamp", PrimitiveTypeName.INT64,
+          LogicalTypeAnnotation.timestampType(true, TimeUnit.MILLIS));
+
+      try (ParquetFileReader reader = open(file)) {
+        for (final ColumnChunkMetaData column : reader.getFooter().getBlocks().get(0).getColumns()) {
+          assertThat(column.getCodec(),
+              is(compress ? CompressionCodecName.GZIP : CompressionCodecName.UNCOMPRESSED));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testNullHeavyColumns() throws Exception {
+
+    final ExportColumn[] columns = {
+        ExportColumn.string("sparse"),
+        ExportColumn.string("empty"),
+        ExportColumn.dictionary("emptyDictionary"),
+        ExportColumn.bool("emptyBool"),
+        ExportColumn.integer("emptyInteger"),
+        ExportColumn.timestamp("emptyTimestamp"),
+        ExportColumn.integer("sparseInteger")};
+
+    final List<Object[]> rows = new ArrayList<>();
+    final List<List<Object>> expected = new ArrayList<>();
+
+    for (int i = 0; i < 10000; i++) {
+
+      final boolean present = i % 97 == 0;
+
+      rows.add(new Object[] {present ? "v" + i : null, null, null, null, null, null, present ? i : null});
+      expected.add(Arrays.asList(present ? "v" + i : null, null, null, null, null, null, present ? (long) i : null));
+    }
+
+    final Path file = write(columns, rows, ROW_GROUP_SIZE, 1000, true);
+
+    assertThat(read(file), is(expected));
+  }
+
+  @Test
+  public void testDictionaryEncoding() throws Exception {
+
+    final ExportColumn[] columns = {ExportColumn.dictionary("dictionary"), ExportColumn.string("string")};
+
+    final List<Object[]> rows = new ArrayList<>();
+    final List<List<Object>> expected = new ArrayList<>();
+
+    for (int i = 0; i < 2000; i++) {
+
+      // Runs of equal values as well as more than 256 distinct values
+      final String value = i < 1000 ? "run" + i / 50 : i % 7 == 0 ? null : "value" + i % 350;
+
+      rows.add(new Object[] {value, value});
+      expected.add(Arrays.asList(value, value));
+    }
+
+    final Path file = write(columns, rows, ROW_GROUP_SIZE, 500, false);
+
+    assertThat(read(file), is(expected));
+
+    try (ParquetFileReader reader = open(file)) {
+
+      final BlockMetaData block = reader.getFooter().getBlocks().get(0);
+
+      final ColumnChunkMetaData dictionaryColumn = block.getColumns().get(0);
+      assertThat(dictionaryColumn.getEncodings(), hasItem(Encoding.PLAIN_DICTIONARY));
+      assertThat(dictionaryColumn.getDictionaryPageOffset(), is(greaterThan(0L)));
+
+      final ColumnChunkMetaData plainColumn = block.getColumns().get(1);
+      assertThat(plainColumn.getEncodings(), hasItem(Encoding.PLAIN));
+      assertThat(plainColumn.getEncodings(), not(hasItem(Encoding.PLAIN_DICTIONARY)));
+      assertThat(plainColumn.getDictionaryPageOffset(), is(0L));
+
+      final long countDistinct = rows.stream()
+          .map(row -> row[0])
+          .filter(Objects::nonNull)
+          .distinct()
+          .count();
+      assertThat(countDistinct, is(greaterThan(256L)));
+
+      final PageReadStore rowGroup = reader.readNextRowGroup();
+      final PageReader pages = rowGroup.getPageReader(reader.getFileMetaData().getSchema().getColumns().get(0));
+      final DictionaryPage dictionaryPage = pages.readDictionaryPage();
+
+      assertThat(dictionaryPage, is(not(nullValue())));
+      assertThat((long) dictionaryPage.getDictionarySize(), is(countDistinct));
+    }
+  }
+
+  @Test
+  public void testMultiplePagesAndRowGroups() throws Exception {
+
+    final List<Object[]> rows = new ArrayList<>();
+    final List<List<Object>> expected = new ArrayList<>();
+
+    for (int i = 0; i < 2500; i++) {
+
+      // Nulls shift the values against the page boundaries
+      final boolean present = i % 7 != 0;
+      final Instant timestamp = Instant.ofEpochMilli(1_600_000_000_000L + i);
+
+      rows.add(new Object[] {
+          present ? "string" + i : null,
+          present ? "dictionary" + i % 10 : null,
+          present ? i % 3 == 0 : null,
+          present ? i : null,
+          present ? i / 4.0 : null,
+          present ? timestamp : null});
+      expected.add(Arrays.asList(
+          present ? "string" + i : null,
+          present ? "dictionary" + i % 10 : null,
+          present ? i % 3 == 0 : null,
+          present ? (long) i : null,
+          present ? i / 4.0 : null,
+          present ? timestamp.toEpochMilli() : null));
+    }
+
+    // Row groups get limited by their size in bytes
+    final Path file = write(ALL_TYPES, rows, 16 * 1024, 64, true);
+
+    assertThat(read(file), is(expected));
+
+    try (ParquetFileReader reader = open(file)) {
+
+      assertThat(reader.getFooter().getBlocks().size(), is(greaterThan(1)));
+
+      final List<ColumnDescriptor> columns = reader.getFileMetaData().getSchema().getColumns();
+      long countRows = 0;
+
+      for (PageReadStore rowGroup = reader.readNextRowGroup(); rowGroup != null;
+          rowGroup = reader.readNextRowGroup()) {
+
+        for (final ColumnDescriptor column : columns) {
+          assertThat(countValues(rowGroup.getPageReader(column), 64), is(rowGroup.getRowCount()));
+        }
+        countRows += rowGroup.getRowCount();
+      }
+
+      assertThat(countRows, is((long) rows.size()));
+    }
+  }
+
+  @Test
+  public void testLargePages() throws Exception {
+
+    final ExportColumn[] columns = {
+        ExportColumn.string("empty"),
+        ExportColumn.dictionary("emptyDictionary"),
+        ExportColumn.dictionary("singleValue"),
+        ExportColumn.integer("integer")};
+
+    final List<Object[]> rows = new ArrayList<>();
+    final List<List<Object>> expected = new ArrayList<>();
+
+    // Pages of more than 2^15 values
+    for (int i = 0; i < 50000; i++) {
+      rows.add(new Object[] {null, null, "value", i});
+      expected.add(Arrays.asList(null, null, "value", (long) i));
+    }
+
+    final Path file = write(columns, rows, ROW_GROUP_SIZE, 40000, true);
+
+    assertThat(read(file), is(expected));
+
+    try (ParquetFileReader reader = open(file)) {
+
+      final PageReadStore rowGroup = reader.readNextRowGroup();
+      final List<ColumnDescriptor> descriptors = reader.getFileMetaData().getSchema().getColumns();
+
+      assertThat(rowGroup.getRowCount(), is(50000L));
+
+      final PageReader singleValue = rowGroup.getPageReader(descriptors.get(2));
+      assertThat(singleValue.readDictionaryPage().getDictionarySize(), is(1));
+      assertThat(singleValue.readPage().getValueCount(), is(40000));
+      assertThat(countValues(singleValue, 40000), is(10000L));
+
+      for (final ColumnDescriptor column : Arrays.asList(descriptors.get(0), descriptors.get(1), descriptors.get(3))) {
+        assertThat(countValues(rowGroup.getPageReader(column), 40000), is(50000L));
+      }
+    }
+  }
+
+  /**
+   * Counts the values of all data pages of a column chunk and checks the amount of values per page.
+   */
+  private static long countValues(final PageReader pages, final int pageSize) {
+
+    long countValues = 0;
+
+    for (DataPage page = pages.readPage(); page != null; page = pages.readPage()) {
+      assertThat(page.getValueCount(), is(lessThanOrEqualTo(pageSize)));
+      countValues += page.getValueCount();
+    }
+
+    return countValues;
+  }
+
+  private Path write(final ExportColumn[] columns, final List<Object[]> rows, final long rowGroupSize,
+      final int pageSize, final boolean compress) throws IOException {
+
+    final java.nio.file.Path file = Files.createTempFile(this.tempDir, "export", ".parquet");
+
+    try (OutputStream outStream = Files.newOutputStream(file);
+        ExportWriter writer = new ParquetExportWriter(outStream, rowGroupSize, pageSize, compress)) {
+
+      writer.startSheet("test", columns);
+      for (final Object[] row : rows) {
+        writer.writeRow(row);
+      }
+      writer.finish();
+    }
+
+    return new Path(file.toUri());
+  }
+
+  private static List<List<Object>> read(final Path file) throws IOException {
+
+    final List<List<Object>> rows = new ArrayList<>();
+
+    try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), file).build()) {
+
+      for (Group group = reader.read(); group != null; group = reader.read()) {
+
+        final List<Object> row = new ArrayList<>();
+
+        for (int i = 0; i < group.getType().getFieldCount(); i++) {
+          row.add(getValue(group, i));
+        }
+        rows.add(row);
+      }
+    }
+
+    return rows;
+  }
+
+  private static Object getValue(final Group group, final int field) {
+
+    if (group.getFieldRepetitionCount(field) == 0)
+      return null;
+
+    switch (group.getType().getType(field).asPrimitiveType().getPrimitiveTypeName()) {
+      case BOOLEAN:
+        return group.getBoolean(field, 0);
+      case INT64:
+        return group.getLong(field, 0);
+      case DOUBLE:
+        return group.getDouble(field, 0);
+      default:
+        return group.getString(field, 0);
+    }
+  }
+
+  private static MessageType readSchema(final Path file) throws IOException {
+
+    try (ParquetFileReader reader = open(file)) {
+      return reader.getFileMetaData().getSchema();
+    }
+  }
+
+  private static ParquetFileReader open(final Path file) throws IOException {
+    return ParquetFileReader.open(HadoopInputFile.fromPath(file, new Configuration()));
+  }
+
+  private static void assertColumn(final MessageType schema, final String name,
+      final PrimitiveTypeName primitiveType, final LogicalTypeAnnotation logicalType) {
+
+    final PrimitiveType type = schema.getType(name).asPrimitiveType();
+
+    assertThat(type.getPrimitiveTypeName(), is(primitiveType));
+    assertThat(type.getRepetition(), is(Repetition.OPTIONAL));
+    assertThat(type.getLogicalTypeAnnotation(), is(logicalType));
+  }
+}
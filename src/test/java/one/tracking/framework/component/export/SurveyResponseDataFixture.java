@@ -0,0 +1,195 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.objenesis.ObjenesisStd;
+import one.tracking.framework.domain.SurveyResponseData;
+
+/**
+ * Creates {@link SurveyResponseData} as populated by Hibernate from the result of the native export query,
+ * which sets the fields directly. Also contains the rendering of the rows used before
+ * {@link SurveyResponseRowEncoder} as reference.
+ *
+ * @author Marko Voß
+ *
+ */
+final class SurveyResponseDataFixture {
+
+  static final Instant NOW = Instant.parse("2022-06-01T12:00:00Z");
+
+  private static final ObjenesisStd OBJENESIS = new ObjenesisStd();
+
+  private SurveyResponseDataFixture() {}
+
+  /**
+   * @param namesAndValues
+   *          pairs of field names and values overriding the values of a valid row
+   */
+  static SurveyResponseData create(final Object... namesAndValues) {
+
+    final Map<String, Object> values = new LinkedHashMap<>();
+    values.put("nameId", "BASIC");
+    values.put("startTime", NOW.minusSeconds(7 * 86400));
+    values.put("endTime", NOW);
+    values.put("userId", "user");
+    values.put("order", 0);
+    values.put("questionType", "BOOL");
+    values.put("question", "Question");
+    values.put("checkListEntry", null);
+    values.put("boolAnswer", true);
+    values.put("numberAnswer", null);
+    values.put("textAnswer", null);
+    values.put("predefinedAnswer", null);
+    values.put("version", 1);
+    values.put("skipped", false);
+    values.put("valid", true);
+    values.put("createdAt", NOW.minusSeconds(3600));
+
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+
+      if (!values.containsKey(namesAndValues[i]))
+        throw new IllegalArgumentException("Unknown field: " + namesAndValues[i]);
+
+      values.put((String) namesAndValues[i], namesAndValues[i + 1]);
+    }
+
+    final SurveyResponseData data = OBJENESIS.newInstance(SurveyResponseData.class);
+
+    try {
+      for (final Map.Entry<String, Object> entry : values.entrySet()) {
+        set(data, entry.getKey(), entry.getValue());
+      }
+    } catch (final ReflectiveOperationException e) {
+      throw new IllegalStateException("Unable to create survey response data.", e);
+    }
+
+    return data;
+  }
+
+  /**
+   * The rendering of survey response rows before the introduction of {@link SurveyResponseRowEncoder}:
+   * converts all timestamps, concatenates the labels of checklist questions and converts all numbers into
+   * strings for each row.
+   */
+  static Object[] renderLegacy(final SurveyResponseData data, final boolean typed) {
+
+    if (typed) {
+
+      return new Object[] {
+          data.getNameId(),
+          data.getStartTime().toInstant(),
+          data.getEndTime().toInstant(),
+          data.getUserId(),
+          data.getOrder(),
+          data.getQuestionType(),
+          data.getQuestion(),
+          data.getCheckListEntry(),
+          data.getBoolAnswer(),
+          data.getNumberAnswer(),
+          data.getTextAnswer(),
+          data.getPredefinedAnswer(),
+          data.getVersion(),
+          data.getSkipped(),
+          data.getValid(),
+          data.getCreatedAt().toInstant()};
+    }
+
+    return new Object[] {
+        data.getNameId(),
+        data.getStartTime().toInstant(),
+        data.getEndTime().toInstant(),
+        data.getUserId(),
+        data.getOrder().toString(),
+        data.getQuestionType(),
+        data.getCheckListEntry() == null ? data.getQuestion()
+            : data.getQuestion() + ": " + data.getCheckListEntry(),
+        data.getBoolAnswer() != null ? data.getBoolAnswer().toString()
+            : data.getTextAnswer() != null ? data.getTextAnswer()
+                : data.getNumberAnswer() != null ? data.getNumberAnswer().toString()
+                    : data.getPredefinedAnswer() != null ? data.getPredefinedAnswer() : null,
+        data.getVersion().toString(),
+        data.getSkipped(),
+        data.getValid(),
+        data.getCreatedAt().toInstant()};
+  }
+
+  /**
+   * Sets the field converting the value into the type of the field.
+   */
+  private static void set(final Object target, final String name, final Object value)
+      throws ReflectiveOperationException {
+
+    final Field field = findField(target.getClass(), name);
+    field.setAccessible(true);
+    field.set(target, convert(value, field.getType()));
+  }
+
+  private static Field findField(final Class<?> type, final String name) throws NoSuchFieldException {
+
+    for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+      try {
+        return current.getDeclaredField(name);
+      } catch (final NoSuchFieldException e) {
+        // Continue with the super class
+      }
+    }
+    throw new NoSuchFieldException(name);
+  }
+
+  private static Object convert(final Object value, final Class<?> type) {
+
+    if (value == null || type.isInstance(value))
+      return value;
+
+    if (value instanceof Instant) {
+
+      final Instant instant = (Instant) value;
+
+      if (type == Timestamp.class)
+        return Timestamp.from(instant);
+      if (type == Date.class)
+        return Date.from(instant);
+      if (type == OffsetDateTime.class)
+        return instant.atOffset(ZoneOffset.UTC);
+      if (type == ZonedDateTime.class)
+        return instant.atZone(ZoneOffset.UTC);
+      if (type == LocalDateTime.class)
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    if (value instanceof Number) {
+
+      final Number number = (Number) value;
+
+      if (type == int.class || type == Integer.class)
+        return number.intValue();
+      if (type == long.class || type == Long.class)
+        return number.longValue();
+      if (type == short.class || type == Short.class)
+        return number.shortValue();
+      if (type == double.class || type == Double.class)
+        return number.doubleValue();
+      if (type == float.class || type == Float.class)
+        return number.floatValue();
+      if (type == BigDecimal.class)
+        return new BigDecimal(number.toString());
+    }
+
+    if (type == String.class)
+      return value.toString();
+
+    throw new IllegalArgumentException("Unsupported conversion of " + value.getClass() + " into " + type);
+  }
+}
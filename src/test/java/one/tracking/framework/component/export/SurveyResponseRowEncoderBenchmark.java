@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import static one.tracking.framework.component.export.SurveyResponseDataFixture.NOW;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import one.tracking.framework.domain.SurveyResponseData;
+
+/**
+ * Compares the allocations of rendering survey responses into export rows using the previous per-row
+ * rendering of {@link SurveyResponseDataFixture#renderLegacy(SurveyResponseData, boolean)} and
+ * {@link SurveyResponseRowEncoder}. Both consume the values of the rows the same way, so the difference
+ * is caused by the rendering only. Run {@link #main(String[])} from the test classpath and compare the
+ * values of <code>gc.alloc.rate.norm</code> (bytes per row).
+ *
+ * @author Marko Voß
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SurveyResponseRowEncoderBenchmark {
+
+  private static final int AMOUNT_ROWS = 1024;
+
+  /**
+   * The amount of answered questions per survey response
+   */
+  private static final int ROWS_PER_RESPONSE = 16;
+
+  @Param({"false", "true"})
+  private boolean typed;
+
+  private final SurveyResponseData[] rows = new SurveyResponseData[AMOUNT_ROWS];
+
+  private SurveyResponseRowEncoder encoder;
+
+  @Setup
+  public void setup() {
+
+    for (int i = 0; i < AMOUNT_ROWS; i++) {
+
+      final int response = i / ROWS_PER_RESPONSE;
+      final int question = i % ROWS_PER_RESPONSE;
+
+      this.rows[i] = SurveyResponseDataFixture.create(
+          "startTime", NOW.minusSeconds(7 * 86400),
+          "endTime", NOW,
+          "userId", "user-" + response,
+          "order", question,
+          "questionType", question % 4 == 0 ? "CHECKLIST" : "RANGE",
+          "question", "Question " + question,
+          "checkListEntry", question % 4 == 0 ? "Entry " + question % 3 : null,
+          "boolAnswer", question % 4 == 0 ? question % 8 == 0 : null,
+          "numberAnswer", question % 4 == 1 ? question * 3 : null,
+          "textAnswer", question % 4 == 2 ? "Some text " + response : null,
+          "predefinedAnswer", question % 4 == 3 ? "ANSWER_" + question : null,
+          "createdAt", NOW.minusSeconds(86400 - response));
+    }
+
+    this.encoder = new SurveyResponseRowEncoder(this.typed);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(AMOUNT_ROWS)
+  public void renderLegacy(final Blackhole blackhole) {
+
+    for (final SurveyResponseData data : this.rows) {
+      consume(blackhole, SurveyResponseDataFixture.renderLegacy(data, this.typed));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(AMOUNT_ROWS)
+  public void renderEncoder(final Blackhole blackhole) {
+
+    for (final SurveyResponseData data : this.rows) {
+      consume(blackhole, this.encoder.encode(data));
+    }
+  }
+
+  private static void consume(final Blackhole blackhole, final Object[] row) {
+
+    for (final Object value : row) {
+      blackhole.consume(value);
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+
+    new Runner(new OptionsBuilder()
+        .include(SurveyResponseRowEncoderBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build())
+        .run();
+  }
+}
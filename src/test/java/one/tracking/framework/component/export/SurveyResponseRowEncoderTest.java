@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import static one.tracking.framework.component.export.SurveyResponseDataFixture.NOW;
+import static one.tracking.framework.component.export.SurveyResponseDataFixture.create;
+import static one.tracking.framework.component.export.SurveyResponseDataFixture.renderLegacy;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import one.tracking.framework.domain.SurveyResponseData;
+
+/**
+ * Encodes sequences of rows and compares each row with the rendering used before the encoder, so that no
+ * value of a previous row survives within the reused row or the caches of the encoder.
+ *
+ * @author Marko Voß
+ *
+ */
+public class SurveyResponseRowEncoderTest {
+
+  /**
+   * Indexes of the columns of untyped rows
+   */
+  private static final int QUESTION = 6;
+
+  private static final int ANSWER = 7;
+
+  @Test
+  public void testDifferentAnswers() {
+
+    final List<SurveyResponseData> rows = Arrays.asList(
+        create("boolAnswer", true),
+        create("boolAnswer", null, "textAnswer", "text"),
+        create("boolAnswer", null, "numberAnswer", 42),
+        create("boolAnswer", null, "predefinedAnswer", "ANSWER_1"),
+        // Skipped questions without any answer
+        create("boolAnswer", null, "skipped", true),
+        create("boolAnswer", false, "valid", false));
+
+    assertEncodedRows(rows, false);
+    assertEncodedRows(rows, true);
+
+    final SurveyResponseRowEncoder encoder = new SurveyResponseRowEncoder(false);
+    assertThat(encoder.encode(rows.get(1))[ANSWER], is("text"));
+    assertThat(encoder.encode(rows.get(4))[ANSWER], is(nullValue()));
+  }
+
+  @Test
+  public void testChecklistLabels() {
+
+    final List<SurveyResponseData> rows = Arrays.asList(
+        create("question", "Symptoms", "checkListEntry", "Fever"),
+        create("question", "Symptoms", "checkListEntry", "Cough"),
+        // Plain question following a checklist entry
+        create("question", "Symptoms", "checkListEntry", null),
+        create("question", "Other", "checkListEntry", "Fever"),
+        create("question", "Symptoms", "checkListEntry", "Fever"));
+
+    assertEncodedRows(rows, false);
+    assertEncodedRows(rows, true);
+
+    final SurveyResponseRowEncoder encoder = new SurveyResponseRowEncoder(false);
+    final Object label = encoder.encode(rows.get(0))[QUESTION];
+
+    assertThat(label, is("Symptoms: Fever"));
+    assertThat(encoder.encode(rows.get(2))[QUESTION], is("Symptoms"));
+    assertThat(encoder.encode(rows.get(3))[QUESTION], is("Other: Fever"));
+
+    // Repeating labels are not concatenated again
+    assertThat(encoder.encode(rows.get(4))[QUESTION], is(sameInstance(label)));
+  }
+
+  @Test
+  public void testTimestamps() {
+
+    final Instant otherTime = NOW.plusSeconds(60);
+
+    final List<SurveyResponseData> rows = Arrays.asList(
+        create(),
+        create("createdAt", otherTime),
+        create("startTime", otherTime, "endTime", otherTime.plusSeconds(60)),
+        // Same values as the first row with new timestamp objects
+        create());
+
+    assertEncodedRows(rows, false);
+    assertEncodedRows(rows, true);
+
+    final SurveyResponseRowEncoder encoder = new SurveyResponseRowEncoder(false);
+    final Object createdAt = encoder.encode(rows.get(0))[11];
+
+    assertThat(encoder.encode(rows.get(1))[11], is(otherTime));
+    assertThat(encoder.encode(rows.get(3))[11], is(createdAt));
+  }
+
+  @Test
+  public void testNumbers() {
+
+    final List<SurveyResponseData> rows = Arrays.asList(
+        create("order", 0, "version", 1),
+        create("order", 1023, "version", 1024),
+        create("order", -1, "version", 5, "boolAnswer", null, "numberAnswer", -7),
+        create("order", 100000, "version", 2, "boolAnswer", null, "numberAnswer", 2000));
+
+    assertEncodedRows(rows, false);
+    assertEncodedRows(rows, true);
+  }
+
+  @Test
+  public void testRowIsReused() {
+
+    final SurveyResponseRowEncoder encoder = new SurveyResponseRowEncoder(true);
+    final Object[] row = encoder.encode(create());
+
+    assertThat(row.length, is(16));
+    assertThat(encoder.encode(create("textAnswer", "text")), is(sameInstance(row)));
+    assertThat(new SurveyResponseRowEncoder(false).encode(create()).length, is(12));
+  }
+
+  @Test
+  public void testRandomRows() {
+
+    final Random random = new Random(42);
+    final List<SurveyResponseData> rows = new ArrayList<>();
+
+    for (int i = 0; i < 1000; i++) {
+
+      final int answerType = random.nextInt(5);
+      final boolean checklist = random.nextInt(4) == 0;
+
+      rows.add(create(
+          "userId", "user-" + random.nextInt(10),
+          "startTime", NOW.minusSeconds(random.nextInt(3) * 86400),
+          "createdAt", NOW.minusSeconds(random.nextInt(3)),
+          "order", random.nextInt(20),
+          "question", "Question " + random.nextInt(5),
+          "checkListEntry", checklist ? "Entry " + random.nextInt(3) : null,
+          "boolAnswer", answerType == 0 ? random.nextBoolean() : null,
+          "numberAnswer", answerType == 1 ? random.nextInt(100) : null,
+          "textAnswer", answerType == 2 ? "Text " + random.nextInt(100) : null,
+          "predefinedAnswer", answerType == 3 ? "ANSWER_" + random.nextInt(3) : null,
+          "skipped", answerType == 4));
+    }
+
+    assertEncodedRows(rows, false);
+    assertEncodedRows(rows, true);
+  }
+
+  /**
+   * Encodes the rows in order using a single encoder.
+   */
+  private static void assertEncodedRows(final List<SurveyResponseData> rows, final boolean typed) {
+
+    final SurveyResponseRowEncoder encoder = new SurveyResponseRowEncoder(typed);
+
+    for (final SurveyResponseData data : rows) {
+      assertThat(Arrays.asList(encoder.encode(data)), is(Arrays.asList(renderLegacy(data, typed))));
+    }
+  }
+}
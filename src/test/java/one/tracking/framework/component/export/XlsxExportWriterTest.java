@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package one.tracking.framework.component.export;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class XlsxExportWriterTest {
+
+  private static final Instant TIMESTAMP = Instant.parse("2020-01-02T03:04:05Z");
+
+  private static final int AMOUNT_ROWS = 25;
+
+  @Test
+  public void testWorkbook() throws IOException {
+    assertWorkbook(new XSSFWorkbook());
+  }
+
+  @Test
+  public void testStreamingWorkbook() throws IOException {
+
+    // Rows exceeding the window get flushed into temporary files
+    assertWorkbook(new SXSSFWorkbook(10));
+  }
+
+  @Test
+  public void testToExcelDate() {
+
+    assertThat(XlsxExportWriter.toExcelDate(Instant.EPOCH), is(25569.0));
+    assertThat(XlsxExportWriter.toExcelDate(Instant.parse("2020-01-01T12:00:00Z")), is(43831.5));
+    assertThat(XlsxExportWriter.toExcelDate(Instant.parse("2020-01-01T12:00:00Z")),
+        is(DateUtil.getExcelDate(LocalDateTime.of(2020, 1, 1, 12, 0))));
+  }
+
+  private static void assertWorkbook(final Workbook workbook) throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+
+    try (final XlsxExportWriter writer = new XlsxExportWriter(workbook, outStream)) {
+
+      writer.startSheet("First", ExportColumn.string("Text"), ExportColumn.integer("Number"),
+          ExportColumn.bool("Bool"), ExportColumn.timestamp("Timestamp"), ExportColumn.decimal("Decimal"),
+          ExportColumn.string("Empty"));
+
+      for (int i = 0; i < AMOUNT_ROWS; i++) {
+        writer.writeRow("row" + i, i, i % 2 == 0, TIMESTAMP.plusSeconds(i), new BigDecimal("1.25"), null);
+      }
+
+      writer.startSheet("Second", ExportColumn.integer("StepCount"));
+      writer.writeRow(1000L);
+
+      writer.finish();
+    }
+
+    try (final Workbook result = new XSSFWorkbook(new ByteArrayInputStream(outStream.toByteArray()))) {
+
+      assertThat(result.getNumberOfSheets(), is(2));
+
+      final Sheet first = result.getSheet("First");
+      assertThat(first.getLastRowNum(), is(AMOUNT_ROWS));
+
+      final Row header = first.getRow(0);
+      assertThat(header.getCell(0).getStringCellValue(), is("Text"));
+      assertThat(header.getCell(5).getStringCellValue(), is("Empty"));
+
+      for (int i = 0; i < AMOUNT_ROWS; i++) {
+
+        final Row row = first.getRow(i + 1);
+        assertThat(row.getCell(0).getStringCellValue(), is("row" + i));
+        assertThat(row.getCell(1).getNumericCellValue(), is((double) i));
+        assertThat(row.getCell(2).getBooleanCellValue(), is(i % 2 == 0));
+        assertThat(row.getCell(3).getNumericCellValue(), is(XlsxExportWriter.toExcelDate(TIMESTAMP.plusSeconds(i))));
+        assertThat(row.getCell(3).getCellStyle().getDataFormatString(), is("m/d/yy h:mm"));
+        assertThat(row.getCell(4).getNumericCellValue(), is(1.25));
+        assertThat(row.getCell(5, MissingCellPolicy.CREATE_NULL_AS_BLANK).getCellType(), is(CellType.BLANK));
+      }
+
+      // Each sheet starts with its own header
+      final Sheet second = result.getSheet("Second");
+      assertThat(second.getLastRowNum(), is(1));
+      assertThat(second.getRow(0).getCell(0).getStringCellValue(), is("StepCount"));
+      assertThat(second.getRow(1).getCell(0).getNumericCellValue(), is(1000.0));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class CsvSheetReaderTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testSeparators() throws Exception {
+
+    final Map<Integer, List<String>> expected = Map.of(
+        0, List.of("name", "email"),
+        1, List.of("Test", "test@example.com"));
+
+    assertThat(read("name,email\nTest,test@example.com\n"), is(expected));
+    assertThat(read("name;email\nTest;test@example.com\n"), is(expected));
+    assertThat(read("name\temail\nTest\ttest@example.com\n"), is(expected));
+  }
+
+  @Test
+  public void testSeparatorDetectedOutsideOfQuotes() throws Exception {
+
+    assertThat(read("\"name,first\";email\nTest;test@example.com"), is(Map.of(
+        0, List.of("name,first", "email"),
+        1, List.of("Test", "test@example.com"))));
+  }
+
+  @Test
+  public void testQuotedValues() throws Exception {
+
+    assertThat(read("a,b,c\n\"x,y\",\"say \"\"hi\"\"\",\"line\nbreak\"\n"), is(Map.of(
+        0, List.of("a", "b", "c"),
+        1, List.of("x,y", "say \"hi\"", "line\nbreak"))));
+  }
+
+  @Test
+  public void testEmptyValues() throws Exception {
+
+    assertThat(read("a,,c\n,\n\"\"\n"), is(Map.of(
+        0, List.of("a", "", "c"),
+        1, List.of("", ""),
+        2, List.of(""))));
+  }
+
+  @Test
+  public void testLineEndingsAndEmptyLines() throws Exception {
+
+    // Empty lines are omitted but counted
+    assertThat(read("a\r\nb\r\rc\n\nd"), is(Map.of(
+        0, List.of("a"),
+        1, List.of("b"),
+        3, List.of("c"),
+        5, List.of("d"))));
+  }
+
+  @Test
+  public void testByteOrderMark() throws Exception {
+
+    assertThat(read("\uFEFFname,email\n"), is(Map.of(0, List.of("name", "email"))));
+  }
+
+  @Test
+  public void testStopReading() throws Exception {
+
+    final List<Integer> rowNums = new ArrayList<>();
+
+    try (SheetReader reader = new CsvSheetReader(write("a\nb\nc\n"))) {
+      reader.read((rowNum, values) -> {
+        rowNums.add(rowNum);
+        return rowNum < 1;
+      });
+    }
+
+    assertThat(rowNums, is(Arrays.asList(0, 1)));
+  }
+
+  private Path write(final String content) throws IOException {
+    return Files.writeString(this.tempDir.resolve("test.csv"), content, StandardCharsets.UTF_8);
+  }
+
+  private Map<Integer, List<String>> read(final String content) throws IOException {
+
+    final Map<Integer, List<String>> rows = new TreeMap<>();
+
+    try (SheetReader reader = new CsvSheetReader(write(content))) {
+      reader.read((rowNum, values) -> {
+        // The list of values gets reused
+        rows.put(rowNum, new ArrayList<>(values));
+        return true;
+      });
+    }
+
+    return rows;
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class EmailRowIndexTest {
+
+  private static final int HEADER_INDEX = 1;
+
+  @Test
+  public void testCounts() throws Exception {
+
+    final EmailRowIndex index = build(false,
+        "a@example.com",
+        " b@example.com ",
+        "",
+        null,
+        "no email",
+        "a@example.com");
+
+    assertThat(index.getCountRows(), is(6));
+    assertThat(index.getCountInvalid(), is(3));
+    assertThat(index.getCountDuplicates(), is(0));
+  }
+
+  @Test
+  public void testAcceptFirstOccurrence() throws Exception {
+
+    final EmailRowIndex index = build(false,
+        "a@example.com",
+        "b@example.com",
+        "a@example.com",
+        "c@example.com",
+        "b@example.com",
+        "a@example.com");
+
+    assertThat(acceptAll(index, "a@example.com", "b@example.com", "a@example.com", "c@example.com",
+        "b@example.com", "a@example.com"), is(List.of(true, true, false, true, false, false)));
+    assertThat(index.getCountDuplicates(), is(3));
+  }
+
+  @Test
+  public void testCaseSensitive() throws Exception {
+
+    final EmailRowIndex index = build(false, "A@example.com", "a@example.com");
+
+    assertThat(acceptAll(index, "A@example.com", "a@example.com"), is(List.of(true, true)));
+  }
+
+  @Test
+  public void testIgnoreCase() throws Exception {
+
+    final EmailRowIndex index = build(true, "A@example.com", "a@example.com");
+
+    assertThat(acceptAll(index, "A@example.com", "a@example.com"), is(List.of(true, false)));
+    assertThat(index.getCountDuplicates(), is(1));
+  }
+
+  @Test
+  public void testHashCollisionsAreConfirmed() throws Exception {
+
+    // All emails share the same hash
+    final ToLongFunction<String> hashFunction = email -> 42L;
+
+    final EmailRowIndex index = build(false, hashFunction,
+        "a@example.com",
+        "b@example.com",
+        "c@example.com",
+        "b@example.com");
+
+    assertThat(acceptAll(index, "a@example.com", "b@example.com", "c@example.com", "b@example.com"),
+        is(List.of(true, true, true, false)));
+    assertThat(index.getCountDuplicates(), is(1));
+  }
+
+  @Test
+  public void testGetEmail() {
+
+    assertThat(EmailRowIndex.getEmail(Arrays.asList("Test", " a@example.com "), HEADER_INDEX),
+        is("a@example.com"));
+    assertThat(EmailRowIndex.getEmail(Arrays.asList("Test", null), HEADER_INDEX), is(nullValue()));
+    assertThat(EmailRowIndex.getEmail(Arrays.asList("Test"), HEADER_INDEX), is(nullValue()));
+  }
+
+  private static List<Boolean> acceptAll(final EmailRowIndex index, final String... emails) {
+    return Arrays.stream(emails).map(index::accept).collect(Collectors.toList());
+  }
+
+  private static EmailRowIndex build(final boolean ignoreCase, final String... emails) throws IOException {
+    return EmailRowIndex.build(reader(emails), HEADER_INDEX, EmailRowIndexTest::isValid, ignoreCase);
+  }
+
+  private static EmailRowIndex build(final boolean ignoreCase, final ToLongFunction<String> hashFunction,
+      final String... emails) throws IOException {
+    return EmailRowIndex.build(reader(emails), HEADER_INDEX, EmailRowIndexTest::isValid, ignoreCase,
+        hashFunction);
+  }
+
+  private static boolean isValid(final String email) {
+    return email.contains("@");
+  }
+
+  /**
+   * @return a reader of a sheet containing a header row and a row per email
+   */
+  private static SheetReader reader(final String... emails) {
+
+    return new SheetReader() {
+
+      @Override
+      public void read(final SheetRowHandler handler) {
+
+        final List<String> values = new ArrayList<>(2);
+
+        values.add("name");
+        values.add("email");
+
+        if (!handler.handleRow(0, values))
+          return;
+
+        for (int i = 0; i < emails.length; i++) {
+
+          values.clear();
+          values.add("Test");
+          values.add(emails[i]);
+
+          if (!handler.handleRow(i + 1, values))
+            return;
+        }
+      }
+
+      @Override
+      public void close() {
+        // nothing to close
+      }
+    };
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class LongHashSetTest {
+
+  @Test
+  public void testAddAndContains() {
+
+    final LongHashSet set = new LongHashSet();
+
+    assertThat(set.add(42L), is(true));
+    assertThat(set.add(42L), is(false));
+    assertThat(set.add(-42L), is(true));
+
+    assertThat(set.contains(42L), is(true));
+    assertThat(set.contains(-42L), is(true));
+    assertThat(set.contains(43L), is(false));
+    assertThat(set.size(), is(2));
+  }
+
+  @Test
+  public void testZero() {
+
+    final LongHashSet set = new LongHashSet();
+
+    assertThat(set.contains(0L), is(false));
+    assertThat(set.add(0L), is(true));
+    assertThat(set.add(0L), is(false));
+    assertThat(set.contains(0L), is(true));
+    assertThat(set.size(), is(1));
+  }
+
+  @Test
+  public void testExtremeValues() {
+
+    final LongHashSet set = new LongHashSet();
+
+    assertThat(set.add(Long.MIN_VALUE), is(true));
+    assertThat(set.add(Long.MAX_VALUE), is(true));
+    assertThat(set.add(-1L), is(true));
+
+    assertThat(set.contains(Long.MIN_VALUE), is(true));
+    assertThat(set.contains(Long.MAX_VALUE), is(true));
+    assertThat(set.contains(-1L), is(true));
+    assertThat(set.size(), is(3));
+  }
+
+  @Test
+  public void testResizeKeepsValues() {
+
+    final LongHashSet set = new LongHashSet();
+
+    // Clustered values as well as values sharing the lower bits
+    for (long i = 1; i <= 10_000; i++) {
+      assertThat(set.add(i), is(true));
+      assertThat(set.add(i << 32), is(true));
+    }
+
+    assertThat(set.size(), is(20_000));
+
+    for (long i = 1; i <= 10_000; i++) {
+      assertThat(set.contains(i), is(true));
+      assertThat(set.contains(i << 32), is(true));
+      assertThat(set.add(i), is(false));
+    }
+
+    assertThat(set.contains(10_001L), is(false));
+  }
+
+  @Test
+  public void testMatchesHashSet() {
+
+    final Random random = new Random(42);
+    final LongHashSet set = new LongHashSet(100);
+    final Set<Long> expected = new HashSet<>();
+
+    for (int i = 0; i < 50_000; i++) {
+
+      // A small range, so that values get added repeatedly
+      final long value = random.nextInt(20_000) - 10_000;
+
+      assertThat(set.add(value), is(expected.add(value)));
+    }
+
+    assertThat(set.size(), is(expected.size()));
+
+    for (long value = -10_000; value < 10_000; value++) {
+      assertThat(set.contains(value), is(expected.contains(value)));
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import one.tracking.framework.component.sheet.SheetReader.Format;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class SheetReaderTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testWorkbooksDetectedByContent() throws Exception {
+
+    final Path xlsx = writeWorkbook(new XSSFWorkbook(), "upload.bin");
+    final Path xls = writeWorkbook(new HSSFWorkbook(), "upload.txt");
+
+    // Name and content type are ignored for workbooks
+    assertThat(SheetReader.detectFormat(xlsx, "upload.csv", "text/csv"), is(Format.XLSX));
+    assertThat(SheetReader.detectFormat(xls, null, null), is(Format.XLS));
+
+    try (SheetReader reader = SheetReader.open(xlsx, Format.XLSX)) {
+      assertThat(reader, is(instanceOf(XlsxSheetReader.class)));
+    }
+    try (SheetReader reader = SheetReader.open(xls, Format.XLS)) {
+      assertThat(reader, is(instanceOf(WorkbookSheetReader.class)));
+    }
+  }
+
+  @Test
+  public void testCsvDetectedByNameOrContentType() throws Exception {
+
+    final Path file = writeText("name,email\nTest,test@example.com\n");
+
+    assertThat(SheetReader.detectFormat(file, "Participants.CSV", null), is(Format.CSV));
+    assertThat(SheetReader.detectFormat(file, "participants.txt", "application/octet-stream"), is(Format.CSV));
+    assertThat(SheetReader.detectFormat(file, null, "text/csv"), is(Format.CSV));
+    assertThat(SheetReader.detectFormat(file, "participants", "text/plain; charset=UTF-8"), is(Format.CSV));
+    assertThat(SheetReader.detectFormat(file, null, "application/csv"), is(Format.CSV));
+
+    try (SheetReader reader = SheetReader.open(file, Format.CSV)) {
+      assertThat(reader, is(instanceOf(CsvSheetReader.class)));
+    }
+  }
+
+  @Test
+  public void testUnsupportedFormat() throws Exception {
+
+    final Path text = writeText("name,email\nTest,test@example.com\n");
+
+    assertThrows(IllegalArgumentException.class, () -> SheetReader.detectFormat(text, null, null));
+    assertThrows(IllegalArgumentException.class,
+        () -> SheetReader.detectFormat(text, "participants.bin", "application/octet-stream"));
+
+    // Known formats other than workbooks are never read as CSV
+    final Path pdf = writeText("%PDF-1.4\n");
+
+    assertThrows(IllegalArgumentException.class,
+        () -> SheetReader.detectFormat(pdf, "participants.csv", "text/csv"));
+  }
+
+  private Path writeText(final String content) throws IOException {
+    return Files.writeString(this.tempDir.resolve("upload"), content, StandardCharsets.UTF_8);
+  }
+
+  private Path writeWorkbook(final Workbook workbook, final String filename) throws IOException {
+
+    final Path file = this.tempDir.resolve(filename);
+
+    try (workbook; OutputStream outStream = Files.newOutputStream(file)) {
+      workbook.createSheet().createRow(0).createCell(0).setCellValue("email");
+      workbook.write(outStream);
+    }
+
+    return file;
+  }
+}
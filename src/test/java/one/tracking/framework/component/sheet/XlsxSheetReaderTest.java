@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package one.tracking.framework.component.sheet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class XlsxSheetReaderTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testReadFirstSheet() throws Exception {
+
+    final Path file = this.tempDir.resolve("test.xlsx");
+
+    try (Workbook workbook = new XSSFWorkbook()) {
+
+      final Sheet sheet = workbook.createSheet("Participants");
+
+      final Row header = sheet.createRow(0);
+      header.createCell(0).setCellValue("name");
+      header.createCell(2).setCellValue("email");
+
+      final Row first = sheet.createRow(1);
+      first.createCell(0).setCellValue("Test");
+      first.createCell(2).setCellValue("test@example.com");
+
+      // Empty row 2 is omitted; the missing cells in between are null
+      final Row second = sheet.createRow(3);
+      second.createCell(2).setCellValue("other@example.com");
+      second.createCell(27).setCellValue(42);
+
+      workbook.createSheet("Ignored").createRow(0).createCell(0).setCellValue("ignored");
+
+      write(workbook, file);
+    }
+
+    final Map<Integer, List<String>> rows = read(file);
+
+    final List<String> expectedSecond = new ArrayList<>(Arrays.asList(new String[28]));
+    expectedSecond.set(2, "other@example.com");
+    expectedSecond.set(27, "42");
+
+    assertThat(rows, is(Map.of(
+        0, Arrays.asList("name", null, "email"),
+        1, Arrays.asList("Test", null, "test@example.com"),
+        3, expectedSecond)));
+  }
+
+  @Test
+  public void testStopReading() throws Exception {
+
+    final Path file = this.tempDir.resolve("test.xlsx");
+
+    try (Workbook workbook = new XSSFWorkbook()) {
+
+      final Sheet sheet = workbook.createSheet();
+      for (int i = 0; i < 10; i++)
+        sheet.createRow(i).createCell(0).setCellValue("test." + i + "@example.com");
+
+      write(workbook, file);
+    }
+
+    final List<Integer> rowNums = new ArrayList<>();
+
+    try (SheetReader reader = new XlsxSheetReader(file)) {
+      reader.read((rowNum, values) -> {
+        rowNums.add(rowNum);
+        return rowNum < 2;
+      });
+    }
+
+    assertThat(rowNums, is(Arrays.asList(0, 1, 2)));
+  }
+
+  @Test
+  public void testGetColumnIndex() {
+
+    assertThat(XlsxSheetReader.getColumnIndex("A1"), is(0));
+    assertThat(XlsxSheetReader.getColumnIndex("B12"), is(1));
+    assertThat(XlsxSheetReader.getColumnIndex("Z3"), is(25));
+    assertThat(XlsxSheetReader.getColumnIndex("AA1"), is(26));
+    assertThat(XlsxSheetReader.getColumnIndex("AB12"), is(27));
+    assertThat(XlsxSheetReader.getColumnIndex("AZ1"), is(51));
+    assertThat(XlsxSheetReader.getColumnIndex("BA1"), is(52));
+    assertThat(XlsxSheetReader.getColumnIndex("XFD1048576"), is(16383));
+  }
+
+  private static void write(final Workbook workbook, final Path file) throws IOException {
+
+    try (OutputStream outStream = Files.newOutputStream(file)) {
+      workbook.write(outStream);
+    }
+  }
+
+  private static Map<Integer, List<String>> read(final Path file) throws IOException {
+
+    final Map<Integer, List<String>> rows = new TreeMap<>();
+
+    try (SheetReader reader = new XlsxSheetReader(file)) {
+      reader.read((rowNum, values) -> {
+        // The list of values gets reused
+        rows.put(rowNum, new ArrayList<>(values));
+        return true;
+      });
+    }
+
+    return rows;
+  }
+}
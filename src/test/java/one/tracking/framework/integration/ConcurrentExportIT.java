@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package one.tracking.framework.integration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.component.SurveyDataExportComponent;
+import one.tracking.framework.domain.ExportFormat;
+import one.tracking.framework.entity.meta.Survey;
+import one.tracking.framework.service.FirebaseService;
+
+/**
+ * Compares the concurrent export of time slices, which is opt-in, with the sequential export.
+ *
+ * @author Marko Voß
+ *
+ */
+@Import(ITConfiguration.class)
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties", properties = {
+    "app.export.parallelism=2",
+    "app.export.slicesPerExport=2",
+    "app.export.slices=4",
+    "app.export.queueCapacity=10"})
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("dev")
+public class ConcurrentExportIT {
+
+  private static final int AMOUNT_RESPONSES = 1234;
+
+  @MockBean
+  private FirebaseService firebaseService;
+
+  @Autowired
+  private SurveyDataExportComponent exportComponent;
+
+  @Autowired
+  private HelperBean helperBean;
+
+  private Instant startTime;
+
+  private Instant endTime;
+
+  @BeforeEach
+  public void before() throws Exception {
+
+    // The responses get spread over the time slices of the interval
+    this.startTime = Instant.now();
+
+    final Survey survey = this.helperBean.createSimpleSurvey("TEST", false);
+
+    for (int i = 0; i < AMOUNT_RESPONSES; i++) {
+      this.helperBean.completeSimpleSurvey(this.helperBean.createUser(null), survey);
+    }
+
+    this.endTime = Instant.now();
+  }
+
+  @Test
+  public void testConcurrentMatchesSequentialExport() throws Exception {
+
+    final String concurrentExport = export(ExportFormat.CSV);
+
+    // Without the executor the sheets get read sequentially
+    final ExecutorService exportExecutor =
+        (ExecutorService) ReflectionTestUtils.getField(this.exportComponent, "exportExecutor");
+    ReflectionTestUtils.setField(this.exportComponent, "exportExecutor", null);
+    exportExecutor.shutdown();
+
+    final String sequentialExport = export(ExportFormat.CSV);
+
+    assertThat(concurrentExport.split("\r\n").length, is(AMOUNT_RESPONSES + 1));
+    assertThat(concurrentExport, is(sequentialExport));
+  }
+
+  private String export(final ExportFormat format) throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    this.exportComponent.export(this.startTime, this.endTime, format, null, outStream);
+    return new String(outStream.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
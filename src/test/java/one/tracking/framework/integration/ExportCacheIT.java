@@ -0,0 +1,146 @@
+/**
+ *
+ */
+package one.tracking.framework.integration;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.component.ExportCacheComponent;
+import one.tracking.framework.component.SurveyDataExportComponent;
+import one.tracking.framework.domain.ExportFormat;
+import one.tracking.framework.entity.meta.Survey;
+import one.tracking.framework.service.FirebaseService;
+
+/**
+ * Compares exports read from the cache of closed time slices with uncached exports. The slices of a second
+ * get closed right after their end, so that the slices of the responses get cached using the fingerprints
+ * of the native queries.
+ *
+ * @author Marko Voß
+ *
+ */
+@Import(ITConfiguration.class)
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties", properties = {
+    "app.export.parallelism=1",
+    "app.export.cache.enabled=true",
+    "app.export.cache.directory=${java.io.tmpdir}/export-cache-it",
+    "app.export.cache.slice=1s",
+    "app.export.cache.closedAfter=0s"})
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("dev")
+public class ExportCacheIT {
+
+  private static final int AMOUNT_RESPONSES = 200;
+
+  @MockBean
+  private FirebaseService firebaseService;
+
+  @Autowired
+  private SurveyDataExportComponent exportComponent;
+
+  @Autowired
+  private ExportCacheComponent exportCache;
+
+  @Autowired
+  private HelperBean helperBean;
+
+  private Path cacheDirectory;
+
+  private Instant startTime;
+
+  private Instant endTime;
+
+  @BeforeEach
+  public void before() throws Exception {
+
+    this.cacheDirectory = (Path) ReflectionTestUtils.getField(this.exportCache, "cacheDirectory");
+    FileSystemUtils.deleteRecursively(this.cacheDirectory);
+
+    // Aligned to the slices, so that the interval contains all slices of the responses completely
+    this.startTime = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+    final Survey survey = this.helperBean.createSimpleSurvey("TEST", false);
+
+    for (int i = 0; i < AMOUNT_RESPONSES; i++) {
+      this.helperBean.completeSimpleSurvey(this.helperBean.createUser(null), survey);
+    }
+
+    // Closes the slice of the last response
+    final Instant lastResponse = Instant.now();
+    await().atMost(Duration.ofSeconds(10)).until(() -> Instant.now().isAfter(lastResponse.plusSeconds(1)));
+
+    this.endTime = Instant.now();
+  }
+
+  @Test
+  public void testCachedMatchesUncachedExport() throws Exception {
+
+    ReflectionTestUtils.setField(this.exportCache, "enabled", false);
+    final String uncachedExport = export(ExportFormat.CSV);
+    ReflectionTestUtils.setField(this.exportCache, "enabled", true);
+
+    final String cachingExport = export(ExportFormat.CSV);
+    final Map<Path, FileTime> cacheFiles = getCacheFiles();
+
+    assertThat(cacheFiles.keySet(), is(not(empty())));
+
+    final String cachedExport = export(ExportFormat.CSV);
+
+    assertThat(uncachedExport.split("\r\n").length, is(AMOUNT_RESPONSES + 1));
+    assertThat(cachingExport, is(uncachedExport));
+    assertThat(cachedExport, is(uncachedExport));
+
+    // The unchanged fingerprints did not rebuild any slice
+    assertThat(getCacheFiles(), is(cacheFiles));
+  }
+
+  private String export(final ExportFormat format) throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    this.exportComponent.export(this.startTime, this.endTime, format, null, outStream);
+    return new String(outStream.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private Map<Path, FileTime> getCacheFiles() throws IOException {
+
+    try (Stream<Path> files = Files.walk(this.cacheDirectory)) {
+      return files.filter(file -> file.toString().endsWith(".rows.gz"))
+          .collect(Collectors.toMap(file -> file, file -> {
+            try {
+              return Files.getLastModifiedTime(file);
+            } catch (final IOException e) {
+              throw new IllegalStateException(e);
+            }
+          }));
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ *
+ */
+package one.tracking.framework.integration;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.service.FirebaseService;
+
+/**
+ * Requests exports using the different spellings of the export formats.
+ *
+ * @author Marko Voß
+ *
+ */
+@AutoConfigureMockMvc
+@Import(ITConfiguration.class)
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties")
+@DirtiesContext
+@ActiveProfiles("dev")
+public class ExportControllerIT {
+
+  private static final String ENDPOINT_EXPORT = "/manage/export";
+
+  @MockBean
+  private FirebaseService firebaseService;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Test
+  public void testExportFormat() throws Exception {
+
+    this.mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT_EXPORT)
+        .param("from", "0")
+        .param("to", "1000")
+        .param("format", "csv")
+        .with(httpBasic("admin", "admin")))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith("text/csv"));
+
+    this.mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT_EXPORT)
+        .param("from", "0")
+        .param("to", "1000")
+        .param("format", "NDJSON")
+        .with(httpBasic("admin", "admin")))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"));
+
+    this.mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT_EXPORT)
+        .param("from", "0")
+        .param("to", "1000")
+        .param("format", "pdf")
+        .with(httpBasic("admin", "admin")))
+        .andExpect(status().isBadRequest());
+  }
+}
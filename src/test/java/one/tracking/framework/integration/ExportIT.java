@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package one.tracking.framework.integration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.component.SurveyDataExportComponent;
+import one.tracking.framework.component.export.ExportAbortedException;
+import one.tracking.framework.domain.ExportFormat;
+import one.tracking.framework.entity.meta.Survey;
+import one.tracking.framework.service.FirebaseService;
+
+/**
+ * Compares the rows read by the database cursor with the rows read by offset paging, which uses pages of
+ * 500 rows.
+ *
+ * @author Marko Voß
+ *
+ */
+@Import(ITConfiguration.class)
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties", properties = {
+    "app.export.parallelism=1",
+    "app.export.cursor=true",
+    "app.export.fetchSize=100"})
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("dev")
+public class ExportIT {
+
+  private static final int AMOUNT_RESPONSES = 1234;
+
+  @MockBean
+  private FirebaseService firebaseService;
+
+  @Autowired
+  private SurveyDataExportComponent exportComponent;
+
+  @Autowired
+  private HelperBean helperBean;
+
+  @BeforeEach
+  public void before() throws Exception {
+
+    final Survey survey = this.helperBean.createSimpleSurvey("TEST", false);
+
+    for (int i = 0; i < AMOUNT_RESPONSES; i++) {
+      this.helperBean.completeSimpleSurvey(this.helperBean.createUser(null), survey);
+    }
+  }
+
+  @Test
+  public void testCursorMatchesPaging() throws Exception {
+
+    final AtomicLong cursorRows = new AtomicLong();
+    final String cursorExport = export(ExportFormat.CSV, cursorRows);
+
+    ReflectionTestUtils.setField(this.exportComponent, "cursor", false);
+
+    final AtomicLong pagedRows = new AtomicLong();
+    final String pagedExport = export(ExportFormat.CSV, pagedRows);
+
+    // Header and a line per response
+    assertThat(cursorExport.split("\r\n").length, is(AMOUNT_RESPONSES + 1));
+    assertThat(cursorRows.get(), is(pagedRows.get()));
+    assertThat(cursorExport, is(pagedExport));
+  }
+
+  @Test
+  public void testCursorMatchesPagingTyped() throws Exception {
+
+    final String cursorExport = export(ExportFormat.NDJSON, null);
+
+    ReflectionTestUtils.setField(this.exportComponent, "cursor", false);
+
+    final String pagedExport = export(ExportFormat.NDJSON, null);
+
+    assertThat(cursorExport.split("\n").length, is(AMOUNT_RESPONSES));
+    assertThat(cursorExport, is(pagedExport));
+  }
+
+  @Test
+  public void testFailedWriteStopsCursor() throws Exception {
+
+    final AtomicLong rowCounter = new AtomicLong();
+
+    // Fails as soon as the first buffered chunk of the CSV writer gets written
+    final OutputStream outStream = new OutputStream() {
+
+      @Override
+      public void write(final int b) throws IOException {
+        throw new IOException("Connection closed");
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) throws IOException {
+        throw new IOException("Connection closed");
+      }
+    };
+
+    assertThrows(ExportAbortedException.class, () -> this.exportComponent.export(Instant.EPOCH, getEndTime(),
+        ExportFormat.CSV, null, outStream, rowCounter));
+
+    assertThat(rowCounter.get(), is(lessThan((long) AMOUNT_RESPONSES)));
+  }
+
+  private String export(final ExportFormat format, final AtomicLong rowCounter) throws IOException {
+
+    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    this.exportComponent.export(Instant.EPOCH, getEndTime(), format, null, outStream, rowCounter);
+    return new String(outStream.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static Instant getEndTime() {
+    return Instant.now().plus(Duration.ofMinutes(1));
+  }
+}
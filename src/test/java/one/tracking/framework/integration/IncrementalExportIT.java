@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package one.tracking.framework.integration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.component.SurveyDataExportComponent;
+import one.tracking.framework.domain.ExportWindow;
+import one.tracking.framework.exception.ConflictException;
+import one.tracking.framework.service.FirebaseService;
+import one.tracking.framework.service.SurveyManagementService;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@Import(ITConfiguration.class)
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties")
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("dev")
+public class IncrementalExportIT {
+
+  private static final String CONSUMER_ID = "TEST_CONSUMER";
+
+  @MockBean
+  private FirebaseService firebaseService;
+
+  @Autowired
+  private SurveyDataExportComponent exportComponent;
+
+  @Autowired
+  private SurveyManagementService surveyManagementService;
+
+  @Test
+  public void testInitialWindow() throws Exception {
+
+    // Default lag of one minute
+    final Instant minEndTime = Instant.now().minus(Duration.ofMinutes(1)).truncatedTo(ChronoUnit.MILLIS);
+    final ExportWindow window = this.exportComponent.getIncrementalWindow(CONSUMER_ID);
+    final Instant maxEndTime = Instant.now().minus(Duration.ofMinutes(1));
+
+    assertThat(window.getConsumerId(), is(CONSUMER_ID));
+    assertThat(window.getWatermark(), is(nullValue()));
+    assertThat(window.getStartTime(), is(Instant.EPOCH));
+    assertThat(window.getEndTime(), is(window.getEndTime().truncatedTo(ChronoUnit.MILLIS)));
+    assertThat(window.getEndTime(), is(greaterThanOrEqualTo(minEndTime)));
+    assertThat(window.getEndTime(), is(lessThanOrEqualTo(maxEndTime)));
+  }
+
+  @Test
+  public void testWindowStartsAfterCommittedWatermark() throws Exception {
+
+    final ExportWindow first = this.exportComponent.getIncrementalWindow(CONSUMER_ID);
+
+    // Without a commit, the next window starts at the same position
+    assertThat(this.exportComponent.getIncrementalWindow(CONSUMER_ID).getStartTime(), is(Instant.EPOCH));
+
+    assertThat(this.exportComponent.commitIncrementalWindow(first), is(true));
+
+    final ExportWindow second = this.exportComponent.getIncrementalWindow(CONSUMER_ID);
+
+    assertThat(second.getWatermark(), is(first.getEndTime()));
+    assertThat(second.getStartTime(), is(first.getEndTime().plus(1, ChronoUnit.MICROS)));
+  }
+
+  @Test
+  public void testCommitIsCompareAndSet() throws Exception {
+
+    // Creating the watermark
+    final ExportWindow first = this.exportComponent.getIncrementalWindow(CONSUMER_ID);
+
+    assertThat(this.exportComponent.commitIncrementalWindow(first), is(true));
+    assertThat(this.exportComponent.commitIncrementalWindow(first), is(false));
+
+    Thread.sleep(10);
+
+    // Updating the watermark
+    final ExportWindow second = this.exportComponent.getIncrementalWindow(CONSUMER_ID);
+    Thread.sleep(10);
+    final ExportWindow concurrent = this.exportComponent.getIncrementalWindow(CONSUMER_ID);
+
+    assertThat(this.exportComponent.commitIncrementalWindow(second), is(true));
+    assertThat(this.exportComponent.commitIncrementalWindow(concurrent), is(false));
+    assertThat(this.exportComponent.commitIncrementalWindow(second), is(false));
+
+    assertThat(this.exportComponent.getIncrementalWindow(CONSUMER_ID).getWatermark(), is(second.getEndTime()));
+  }
+
+  @Test
+  public void testRestoreWindowFromHeaders() throws Exception {
+
+    final ExportWindow first = this.exportComponent.getIncrementalWindow(CONSUMER_ID);
+
+    assertThat(this.exportComponent.getIncrementalWindow(CONSUMER_ID,
+        first.getStartTime().toEpochMilli(), first.getEndTime().toEpochMilli()), is(equalTo(first)));
+
+    this.exportComponent.commitIncrementalWindow(first);
+    Thread.sleep(10);
+
+    final ExportWindow second = this.exportComponent.getIncrementalWindow(CONSUMER_ID);
+
+    assertThat(this.exportComponent.getIncrementalWindow(CONSUMER_ID,
+        second.getStartTime().toEpochMilli(), second.getEndTime().toEpochMilli()), is(equalTo(second)));
+  }
+
+  @Test
+  public void testRejectInvalidWindow() throws Exception {
+
+    final long now = Instant.now().toEpochMilli();
+
+    assertThrows(IllegalArgumentException.class,
+        () -> this.exportComponent.getIncrementalWindow(CONSUMER_ID, 0, now));
+    assertThrows(IllegalArgumentException.class,
+        () -> this.exportComponent.getIncrementalWindow(CONSUMER_ID, 2000, 1000));
+  }
+
+  @Test
+  public void testCommitIncrementalExport() throws Exception {
+
+    final ExportWindow window = this.exportComponent.getIncrementalWindow(CONSUMER_ID);
+    final long from = window.getStartTime().toEpochMilli();
+    final long to = window.getEndTime().toEpochMilli();
+
+    this.surveyManagementService.commitIncrementalExport(CONSUMER_ID, from, to);
+
+    assertThat(this.exportComponent.getIncrementalWindow(CONSUMER_ID).getWatermark(), is(window.getEndTime()));
+    assertThrows(ConflictException.class,
+        () -> this.surveyManagementService.commitIncrementalExport(CONSUMER_ID, from, to));
+  }
+}
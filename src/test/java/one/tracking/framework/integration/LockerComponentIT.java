@@ -0,0 +1,233 @@
+/**
+ *
+ */
+package one.tracking.framework.integration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.component.LockerComponent;
+import one.tracking.framework.domain.TaskLease;
+import one.tracking.framework.service.FirebaseService;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@Import(ITConfiguration.class)
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties")
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("dev")
+public class LockerComponentIT {
+
+  private static final String TASK_NAME = "TEST_LOCK";
+
+  @MockBean
+  private FirebaseService firebaseService;
+
+  @Autowired
+  private LockerComponent lockerComponent;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Test
+  public void testAcquireAndRelease() throws Exception {
+
+    final TaskLease lease = this.lockerComponent.acquire(TASK_NAME);
+
+    assertThat(lease, is(not(nullValue())));
+    assertThat(this.lockerComponent.acquire(TASK_NAME), is(nullValue()));
+    assertThat(this.lockerComponent.renew(lease), is(true));
+    assertThat(this.lockerComponent.unlock(lease), is(true));
+
+    assertThat(this.lockerComponent.acquire(TASK_NAME), is(not(nullValue())));
+  }
+
+  @Test
+  public void testReleasedLeaseIsStale() throws Exception {
+
+    final TaskLease releasedLease = this.lockerComponent.acquire(TASK_NAME);
+
+    assertThat(releasedLease, is(not(nullValue())));
+    assertThat(this.lockerComponent.unlock(releasedLease), is(true));
+
+    assertThat(this.lockerComponent.renew(releasedLease), is(false));
+    assertThrows(IllegalStateException.class,
+        () -> this.transactionTemplate.executeWithoutResult(status -> this.lockerComponent.fence(releasedLease)));
+    assertThat(this.lockerComponent.unlock(releasedLease), is(false));
+  }
+
+  @Test
+  public void testFencingTokenIncreases() throws Exception {
+
+    long fencingToken = 0;
+
+    for (int i = 0; i < 3; i++) {
+
+      final TaskLease lease = this.lockerComponent.acquire(TASK_NAME);
+
+      assertThat(lease, is(not(nullValue())));
+      assertThat(lease.getFencingToken(), is(greaterThan(fencingToken)));
+      fencingToken = lease.getFencingToken();
+
+      if (i % 2 == 0)
+        assertThat(this.lockerComponent.unlock(lease), is(true));
+      else
+        expireLock();
+    }
+  }
+
+  @Test
+  public void testFenceStaleOwner() throws Exception {
+
+    final TaskLease staleLease = this.lockerComponent.acquire(TASK_NAME);
+
+    assertThat(staleLease, is(not(nullValue())));
+
+    expireLock();
+
+    final TaskLease lease = this.lockerComponent.acquire(TASK_NAME);
+
+    assertThat(lease, is(not(nullValue())));
+    assertThat(lease.getFencingToken(), is(not(staleLease.getFencingToken())));
+
+    assertThat(this.lockerComponent.renew(staleLease), is(false));
+    assertThrows(IllegalStateException.class,
+        () -> this.transactionTemplate.executeWithoutResult(status -> this.lockerComponent.fence(staleLease)));
+    assertThat(this.lockerComponent.unlock(staleLease), is(false));
+
+    assertThat(this.lockerComponent.renew(lease), is(true));
+    this.transactionTemplate.executeWithoutResult(status -> this.lockerComponent.fence(lease));
+    assertThat(this.lockerComponent.unlock(lease), is(true));
+  }
+
+  @Test
+  public void testConcurrentTakeOver() throws Exception {
+
+    assertThat(this.lockerComponent.acquire(TASK_NAME), is(not(nullValue())));
+
+    expireLock();
+
+    final int amountThreads = 8;
+    final ExecutorService executor = Executors.newFixedThreadPool(amountThreads);
+    final CountDownLatch latch = new CountDownLatch(1);
+    final List<Future<TaskLease>> futures = new ArrayList<>(amountThreads);
+
+    try {
+
+      for (int i = 0; i < amountThreads; i++) {
+        futures.add(executor.submit(() -> {
+          latch.await();
+          return this.lockerComponent.acquire(TASK_NAME);
+        }));
+      }
+
+      latch.countDown();
+
+      int countAcquired = 0;
+      for (final Future<TaskLease> future : futures) {
+        if (future.get() != null)
+          countAcquired++;
+      }
+
+      assertThat(countAcquired, is(1));
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testLeaseHoldsStoredToken() throws Exception {
+
+    final TaskLease first = this.lockerComponent.acquire(TASK_NAME);
+
+    assertThat(first.getFencingToken(), is(getStoredFencingToken()));
+    assertThat(this.lockerComponent.unlock(first), is(true));
+
+    // Released locks are taken over by an update of the existing row
+    final TaskLease second = this.lockerComponent.acquire(TASK_NAME);
+
+    assertThat(second, is(not(nullValue())));
+    assertThat(second.getFencingToken(), is(first.getFencingToken() + 2));
+    assertThat(second.getFencingToken(), is(getStoredFencingToken()));
+  }
+
+  @Test
+  public void testConcurrentFirstAcquisition() throws Exception {
+
+    final int amountThreads = 8;
+    final ExecutorService executor = Executors.newFixedThreadPool(amountThreads);
+    final CountDownLatch latch = new CountDownLatch(1);
+    final List<Future<TaskLease>> futures = new ArrayList<>(amountThreads);
+
+    try {
+
+      for (int i = 0; i < amountThreads; i++) {
+        futures.add(executor.submit(() -> {
+          latch.await();
+          return this.lockerComponent.acquire(TASK_NAME);
+        }));
+      }
+
+      latch.countDown();
+
+      int countAcquired = 0;
+      for (final Future<TaskLease> future : futures) {
+        if (future.get() != null)
+          countAcquired++;
+      }
+
+      // Only one of the competing inserts succeeds
+      assertThat(countAcquired, is(1));
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private long getStoredFencingToken() {
+
+    return this.transactionTemplate.execute(status -> this.entityManager
+        .createNamedQuery("TaskLock.findFencingTokenByTaskName", Long.class)
+        .setParameter(1, TASK_NAME)
+        .getSingleResult());
+  }
+
+  private void expireLock() {
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+      this.entityManager.createQuery("UPDATE TaskLock l SET l.expiresAt = ?1 WHERE l.taskName = ?2")
+          .setParameter(1, Instant.now())
+          .setParameter(2, TASK_NAME)
+          .executeUpdate();
+    });
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ *
+ */
+package one.tracking.framework.integration;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalMatchers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.dto.ParticipantImportFeedbackDto;
+import one.tracking.framework.entity.ParticipantImportStatus;
+import one.tracking.framework.service.ParticipantService;
+import one.tracking.framework.service.mail.SendGridService;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@Import(ITConfiguration.class)
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties", properties = {
+    "app.participant.import.parallelism=4",
+    "app.participant.import.queueCapacity=10",
+    "app.participant.import.checkInterval=100ms"})
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("dev")
+public class ParticipantParallelImportIT {
+
+  private static final String INVALID_EMAIL = "test.1000@example.com";
+  private static final String CANCEL_AT_EMAIL = "test.2000@example.com";
+
+  private static final int AMOUNT_WORKERS = 4;
+
+  /**
+   * The time it takes to send an email after the import has been cancelled
+   */
+  private static final long SEND_DELAY_MILLIS = 10;
+
+  @MockBean
+  private SendGridService sendGridService;
+
+  @Autowired
+  private ParticipantService participantService;
+
+  @Autowired
+  private ResourceLoader resourceLoader;
+
+  @Test
+  public void testCountersAddUp() throws Exception {
+
+    when(this.sendGridService.sendHTML(eq(INVALID_EMAIL), anyString(), anyString())).thenReturn(false);
+    when(this.sendGridService.sendHTML(AdditionalMatchers.not(eq(INVALID_EMAIL)), anyString(), anyString()))
+        .thenReturn(true);
+
+    final String importId = importSheet();
+
+    final ParticipantImportFeedbackDto feedback = awaitStatus(importId, ParticipantImportStatus.DONE);
+
+    assertThat(feedback.getCountSuccess(), is(9998));
+    assertThat(feedback.getCountFailed(), is(1));
+    assertThat(feedback.getCountSkipped(), is(1));
+    assertThat(feedback.getCountTotal(), is(10000));
+
+    // Each email has been processed exactly once by the workers
+    verify(this.sendGridService, times(9999)).sendHTML(anyString(), anyString(), anyString());
+  }
+
+  @Test
+  public void testCancelStopsAllWorkers() throws Exception {
+
+    final AtomicReference<String> importId = new AtomicReference<>();
+    final AtomicInteger countSent = new AtomicInteger();
+    final AtomicInteger countSentAfterCancel = new AtomicInteger();
+    final AtomicBoolean cancelled = new AtomicBoolean();
+
+    when(this.sendGridService.sendHTML(anyString(), anyString(), anyString())).thenAnswer(invocation -> {
+
+      final String email = invocation.getArgument(0);
+
+      if (cancelled.get()) {
+        countSentAfterCancel.incrementAndGet();
+        Thread.sleep(SEND_DELAY_MILLIS);
+      }
+
+      countSent.incrementAndGet();
+
+      if (CANCEL_AT_EMAIL.equals(email)) {
+
+        await().atMost(Duration.of(10, ChronoUnit.SECONDS)).until(() -> importId.get() != null);
+        this.participantService.cancelImport(importId.get());
+
+        cancelled.set(true);
+      }
+
+      return !INVALID_EMAIL.equals(email);
+    });
+
+    importId.set(importSheet());
+
+    final ParticipantImportFeedbackDto feedback = awaitStopped(importId.get(), countSent);
+
+    assertThat(feedback.getStatus(), is(ParticipantImportStatus.CANCELLED));
+    assertThat(feedback.getCountSuccess(), is(greaterThan(0)));
+    assertThat(feedback.getCountSuccess(), is(lessThan(9998)));
+
+    // The workers notice the cancellation within the check interval, so each one sends few further emails
+    assertThat(countSentAfterCancel.get(), is(lessThanOrEqualTo(AMOUNT_WORKERS * 25)));
+  }
+
+  private String importSheet() throws Exception {
+
+    final Resource resource = this.resourceLoader.getResource("classpath:import-test.xlsx");
+
+    assertThat(resource.exists(), is(true));
+
+    final MockMultipartFile file =
+        new MockMultipartFile("file", resource.getFilename(), null, resource.getInputStream());
+
+    return this.participantService.importParticipants(file, 2);
+  }
+
+  private ParticipantImportFeedbackDto awaitStatus(final String importId, final ParticipantImportStatus status) {
+
+    final ParticipantImportFeedbackDto[] feedback = new ParticipantImportFeedbackDto[1];
+
+    await()
+        .atMost(Duration.of(5, ChronoUnit.MINUTES))
+        .with()
+        .pollInterval(Duration.of(500, ChronoUnit.MILLIS))
+        .until(() -> {
+          feedback[0] = this.participantService.getImportedParticipants(importId, 0, 1);
+          return feedback[0].getStatus() == status;
+        });
+
+    return feedback[0];
+  }
+
+  /**
+   * Waits until all emails which have been sent are contained in the stored counters, which are stored
+   * for the last time after all workers stopped.
+   */
+  private ParticipantImportFeedbackDto awaitStopped(final String importId, final AtomicInteger countSent) {
+
+    final ParticipantImportFeedbackDto[] feedback = new ParticipantImportFeedbackDto[1];
+
+    await()
+        .atMost(Duration.of(1, ChronoUnit.MINUTES))
+        .with()
+        .pollInterval(Duration.of(500, ChronoUnit.MILLIS))
+        .until(() -> {
+          feedback[0] = this.participantService.getImportedParticipants(importId, 0, 1);
+          return feedback[0].getStatus() == ParticipantImportStatus.CANCELLED
+              && feedback[0].getCountSuccess() + feedback[0].getCountFailed() == countSent.get();
+        });
+
+    return feedback[0];
+  }
+}
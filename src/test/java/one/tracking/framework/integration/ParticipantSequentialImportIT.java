@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package one.tracking.framework.integration;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalMatchers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.dto.ParticipantImportFeedbackDto;
+import one.tracking.framework.dto.TokenResponseDto;
+import one.tracking.framework.entity.ParticipantImportStatus;
+import one.tracking.framework.service.mail.SendGridService;
+
+/**
+ * Imports participants sequentially, one row after the other, so that skipped rows are counted together
+ * with the next registered participant.
+ *
+ * @author Marko Voß
+ *
+ */
+@AutoConfigureMockMvc
+@Import(ITConfiguration.class)
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties")
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("dev")
+public class ParticipantSequentialImportIT {
+
+  private static final String INVALID_EMAIL = "test.2@example.com";
+
+  private static final String ENDPOINT_MANAGE_PARTICIPANT_IMPORT = "/manage/participant/import";
+
+  @MockBean
+  private SendGridService sendGridService;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper mapper;
+
+  @BeforeEach
+  public void before() {
+    when(this.sendGridService.sendHTML(eq(INVALID_EMAIL), anyString(), anyString())).thenReturn(false);
+    when(this.sendGridService.sendHTML(AdditionalMatchers.not(eq(INVALID_EMAIL)), anyString(), anyString()))
+        .thenReturn(true);
+  }
+
+  @Test
+  public void testTrailingSkippedRows() throws Exception {
+
+    final ParticipantImportFeedbackDto feedback = importEmails(
+        "test.0@example.com",
+        "This is no email address",
+        "test.1@example.com",
+        "test.2@example.com",
+        "test.1@example.com",
+        "This is no email address");
+
+    assertThat(feedback.getCountSuccess(), is(2));
+    assertThat(feedback.getCountFailed(), is(1));
+    assertThat(feedback.getCountSkipped(), is(3));
+
+    verify(this.sendGridService, times(3)).sendHTML(anyString(), anyString(), anyString());
+  }
+
+  @Test
+  public void testAllRowsSkipped() throws Exception {
+
+    final ParticipantImportFeedbackDto feedback = importEmails(
+        "This is no email address",
+        "",
+        "Neither is this");
+
+    assertThat(feedback.getCountSuccess(), is(0));
+    assertThat(feedback.getCountFailed(), is(0));
+    assertThat(feedback.getCountSkipped(), is(3));
+
+    verify(this.sendGridService, never()).sendHTML(anyString(), anyString(), anyString());
+  }
+
+  /**
+   * Imports the emails as CSV file and waits for the import to be completed.
+   */
+  private ParticipantImportFeedbackDto importEmails(final String... emails) throws Exception {
+
+    final String content = "name,email\n" + String.join("\n",
+        List.of(emails).stream().map(email -> "Test," + email).toArray(String[]::new));
+
+    final MockMultipartFile file = new MockMultipartFile("file", "import.csv", "text/csv",
+        content.getBytes(StandardCharsets.UTF_8));
+
+    final MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders.multipart(ENDPOINT_MANAGE_PARTICIPANT_IMPORT)
+        .file(file)
+        .param("headerIndex", "1")
+        .with(csrf())
+        .with(httpBasic("admin", "admin")))
+        .andExpect(status().isOk())
+        .andReturn();
+
+    final String importId =
+        this.mapper.readValue(result.getResponse().getContentAsByteArray(), TokenResponseDto.class).getToken();
+
+    final ParticipantImportFeedbackDto[] feedback = new ParticipantImportFeedbackDto[1];
+
+    await()
+        .atMost(Duration.of(1, ChronoUnit.MINUTES))
+        .with()
+        .pollInterval(Duration.of(200, ChronoUnit.MILLIS))
+        .until(() -> {
+          feedback[0] = getFeedback(importId);
+          return feedback[0].getStatus() == ParticipantImportStatus.DONE;
+        });
+
+    return feedback[0];
+  }
+
+  private ParticipantImportFeedbackDto getFeedback(final String importId) throws Exception {
+
+    final MvcResult result = this.mockMvc
+        .perform(MockMvcRequestBuilders.get(ENDPOINT_MANAGE_PARTICIPANT_IMPORT + "/" + importId)
+            .queryParam("startIndex", "0")
+            .queryParam("limit", "1")
+            .with(csrf())
+            .with(httpBasic("admin", "admin")))
+        .andExpect(status().isOk())
+        .andReturn();
+
+    return this.mapper.readValue(result.getResponse().getContentAsByteArray(), ParticipantImportFeedbackDto.class);
+  }
+}
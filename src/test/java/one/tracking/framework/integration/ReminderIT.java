@@ -11,11 +11,20 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.internal.stubbing.answers.AnswersWithDelay;
@@ -28,6 +37,10 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.annotation.DirtiesContext.ClassMode;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.google.api.core.ApiFutures;
+import com.google.common.collect.Lists;
 import com.google.firebase.messaging.BatchResponse;
 import com.google.firebase.messaging.FirebaseMessagingException;
 import com.google.firebase.messaging.MessagingErrorCode;
@@ -38,6 +51,9 @@ import one.tracking.framework.domain.PushNotificationRequest;
 import one.tracking.framework.domain.ReminderTaskResult;
 import one.tracking.framework.domain.ReminderTaskResult.StateType;
 import one.tracking.framework.entity.DeviceToken;
+import one.tracking.framework.entity.Reminder;
+import one.tracking.framework.entity.ReminderCheckpoint;
+import one.tracking.framework.entity.SurveyInstance;
 import one.tracking.framework.entity.meta.Survey;
 import one.tracking.framework.service.FirebaseService;
 
@@ -61,8 +77,24 @@ public class ReminderIT {
   @Autowired
   private HelperBean helperBean;
 
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private EntityManager entityManager;
+
   private List<DeviceToken> deviceTokens;
 
+  /**
+   * The tokens of all messages sent by {@link #mockSending(boolean)}
+   */
+  private final List<String> sentTokens = Collections.synchronizedList(new ArrayList<>());
+
+  private SendResponse sendResponseSuccess;
+  private SendResponse sendResponseNotRegistered;
+  private SendResponse sendResponseInvalidToken;
+  private SendResponse sendResponseOtherError;
+
   @BeforeEach
   public void before() throws Exception {
     /*
@@ -138,6 +170,11 @@ public class ReminderIT {
     when(batchResponse.getFailureCount()).thenReturn(countFailPerFcmBatch);
     when(batchResponse.getResponses()).thenReturn(sendResponses);
 
+    this.sendResponseSuccess = sendResponseSuccess;
+    this.sendResponseNotRegistered = sendResponseNotRegistered;
+    this.sendResponseInvalidToken = sendResponseInvalidToken;
+    this.sendResponseOtherError = sendResponseOtherError;
+
     when(this.firebaseService.isAvailable()).thenReturn(true);
 
     // Batch size = 1000 & FCM batch size = 500 -> return 2 BatchResponses
@@ -217,6 +254,43 @@ public class ReminderIT {
     assertThat(result.getCountNotifications(), is(0));
   }
 
+  @Test
+  public void testResumeFromCheckpoint() throws Exception {
+
+    /*
+     * Test resuming an interrupted run from its checkpoint
+     */
+
+    this.helperBean.createSurvey("TESTRESUME");
+
+    ReminderTaskResult result = this.reminderComponent.sendReminder("TESTRESUME");
+
+    assertThat(result, is(not(nullValue())));
+    assertThat(result.getState(), is(StateType.EXECUTED));
+    assertThat(result.getCountDeviceTokens(), is(10000));
+    assertThat(result.getCountNotifications(), is(2500));
+
+    // Simulate a run, which has been interrupted after half of the DeviceTokens
+    this.transactionTemplate.executeWithoutResult(status -> {
+      final ReminderCheckpoint checkpoint = this.entityManager.find(ReminderCheckpoint.class, "REMINDER_TESTRESUME");
+      assertThat(checkpoint, is(not(nullValue())));
+      assertThat(checkpoint.isCompleted(), is(true));
+
+      checkpoint.setCompleted(false);
+      checkpoint.setLastDeviceTokenId(this.deviceTokens.get(4999).getId());
+      checkpoint.setCountDeviceTokens(5000);
+      checkpoint.setCountNotifications(1250);
+    });
+
+    result = this.reminderComponent.sendReminder("TESTRESUME");
+
+    // All remaining DeviceTokens have received a reminder already -> only the counters of the checkpoint remain
+    assertThat(result, is(not(nullValue())));
+    assertThat(result.getState(), is(StateType.EXECUTED));
+    assertThat(result.getCountDeviceTokens(), is(5000));
+    assertThat(result.getCountNotifications(), is(1250));
+  }
+
   @Test
   public void testNoReminderSetup() throws Exception {
 
@@ -270,4 +344,312 @@ public class ReminderIT {
     assertThat(result.getCountDeviceTokens(), is(5000));
     assertThat(result.getCountNotifications(), is(2500));
   }
+
+  @Test
+  public void testKeysetPagingWithConcurrentDeletes() throws Exception {
+
+    this.helperBean.createSurvey("TEST");
+
+    mockSending(false);
+
+    // Another process deletes DeviceTokens ahead of the cursor while the first page is being sent
+    final List<Long> deletedIds = this.deviceTokens.subList(5000, 5100).stream()
+        .map(DeviceToken::getId)
+        .collect(Collectors.toList());
+    final AtomicBoolean deleted = new AtomicBoolean();
+
+    when(this.firebaseService.sendMessages(any(PushNotificationRequest.class), anyList())).then(invocation -> {
+
+      if (deleted.compareAndSet(false, true)) {
+        this.transactionTemplate.executeWithoutResult(status -> this.entityManager
+            .createNamedQuery("DeviceToken.deleteByIdIn")
+            .setParameter(1, deletedIds)
+            .executeUpdate());
+      }
+      return createBatchResponses(invocation.getArgument(1), false);
+    });
+
+    final ReminderTaskResult result = this.reminderComponent.sendReminder("TEST");
+
+    assertThat(result.getState(), is(StateType.EXECUTED));
+    assertThat(result.getCountDeviceTokens(), is(9900));
+    assertThat(result.getCountNotifications(), is(9900));
+
+    // No DeviceToken has been skipped or sent twice
+    assertSentOnce(IntStream.range(0, 10000).filter(i -> i < 5000 || i >= 5100));
+  }
+
+  @Test
+  public void testInvalidDeviceTokensAreDeletedPerPage() throws Exception {
+
+    // Reminders of another survey get deleted together with their invalid DeviceTokens
+    this.helperBean.createSurvey("REMINDED");
+    mockSending(false);
+
+    assertThat(this.reminderComponent.sendReminder("REMINDED").getCountDeviceTokens(), is(10000));
+
+    this.helperBean.createSurvey("TEST");
+    mockSending(true);
+    this.sentTokens.clear();
+
+    final ReminderTaskResult result = this.reminderComponent.sendReminder("TEST");
+
+    assertThat(result.getState(), is(StateType.EXECUTED));
+    assertThat(result.getCountDeviceTokens(), is(10000));
+    assertThat(result.getCountNotifications(), is(2500));
+
+    assertInvalidDeviceTokensDeleted();
+    assertThat(getReminderTokens("TEST"), is(getValidTokens()));
+    assertThat(getReminderTokens("REMINDED"), is(getValidTokens()));
+  }
+
+  @Test
+  public void testOffsetPagingWithInvalidDeviceTokens() throws Exception {
+
+    // The offset is reduced by the DeviceTokens deleted from the current page
+    ReflectionTestUtils.setField(this.reminderComponent, "keysetPaging", false);
+
+    this.helperBean.createSurvey("TEST");
+    mockSending(true);
+
+    final ReminderTaskResult result = this.reminderComponent.sendReminder("TEST");
+
+    assertThat(result.getState(), is(StateType.EXECUTED));
+    assertThat(result.getCountDeviceTokens(), is(10000));
+    assertThat(result.getCountNotifications(), is(2500));
+
+    assertInvalidDeviceTokensDeleted();
+    assertThat(getReminderTokens("TEST"), is(getValidTokens()));
+  }
+
+  @Test
+  public void testAntiJoinMatchesPerTokenChecks() throws Exception {
+
+    mockSending(false);
+
+    final Survey survey = this.helperBean.createSimpleSurvey("TEST", true);
+
+    // Every 7th user responded and every 5th DeviceToken has been reminded already
+    for (int i = 0; i < this.deviceTokens.size(); i += 7) {
+      this.helperBean.completeSimpleSurvey(this.deviceTokens.get(i).getUser(), survey);
+    }
+    final List<Long> remindedIds = addReminders(survey, 5);
+
+    final Set<String> expected = IntStream.range(0, 10000)
+        .filter(i -> i % 5 != 0 && i % 7 != 0)
+        .mapToObj(Integer::toString)
+        .collect(Collectors.toSet());
+
+    for (final boolean antiJoin : new boolean[] {true, false}) {
+
+      ReflectionTestUtils.setField(this.reminderComponent, "antiJoinFilter", antiJoin);
+      this.sentTokens.clear();
+
+      final ReminderTaskResult result = this.reminderComponent.sendReminder("TEST");
+
+      assertThat(result.getState(), is(StateType.EXECUTED));
+      assertThat(result.getCountDeviceTokens(), is(expected.size()));
+      assertThat(this.sentTokens.size(), is(expected.size()));
+      assertThat(new HashSet<>(this.sentTokens), is(expected));
+
+      // Reset the reminders of the run for the next one
+      this.transactionTemplate.executeWithoutResult(status -> this.entityManager
+          .createQuery("DELETE FROM Reminder r WHERE r.deviceToken.id NOT IN ?1")
+          .setParameter(1, remindedIds)
+          .executeUpdate());
+    }
+  }
+
+  @Test
+  public void testBulkDependsOnMatchesPerTokenQuery() throws Exception {
+
+    mockSending(false);
+
+    final Survey previous = this.helperBean.createSimpleSurvey("PREVIOUS", false);
+
+    for (int i = 0; i < this.deviceTokens.size(); i += 3) {
+      this.helperBean.completeSimpleSurvey(this.deviceTokens.get(i).getUser(), previous);
+    }
+
+    final Set<String> expected = IntStream.range(0, 10000)
+        .filter(i -> i % 3 == 0)
+        .mapToObj(Integer::toString)
+        .collect(Collectors.toSet());
+
+    for (final boolean bulk : new boolean[] {true, false}) {
+
+      final String nameId = bulk ? "NEXT_BULK" : "NEXT_SINGLE";
+      this.helperBean.createSimpleSurvey(nameId, true, previous);
+
+      ReflectionTestUtils.setField(this.reminderComponent, "bulkDependsOn", bulk);
+      this.sentTokens.clear();
+
+      final ReminderTaskResult result = this.reminderComponent.sendReminder(nameId);
+
+      assertThat(result.getState(), is(StateType.EXECUTED));
+      assertThat(result.getCountDeviceTokens(), is(expected.size()));
+      assertThat(new HashSet<>(this.sentTokens), is(expected));
+    }
+  }
+
+  @Test
+  public void testPipelineMatchesSequentialRun() throws Exception {
+
+    for (final boolean pipeline : new boolean[] {true, false}) {
+
+      final String nameId = pipeline ? "PIPELINE" : "SEQUENTIAL";
+      this.helperBean.createSurvey(nameId);
+
+      ReflectionTestUtils.setField(this.reminderComponent, "pipeline", pipeline);
+      ReflectionTestUtils.setField(this.reminderComponent, "pipelineDepth", 1);
+
+      mockSending(false);
+      this.sentTokens.clear();
+
+      final ReminderTaskResult result = this.reminderComponent.sendReminder(nameId);
+
+      assertThat(result.getState(), is(StateType.EXECUTED));
+      assertThat(result.getCountDeviceTokens(), is(10000));
+      assertThat(result.getCountNotifications(), is(10000));
+      assertSentOnce(IntStream.range(0, 10000));
+      assertThat(getReminderTokens(nameId).size(), is(10000));
+
+      this.transactionTemplate.executeWithoutResult(status -> {
+        final ReminderCheckpoint checkpoint =
+            this.entityManager.find(ReminderCheckpoint.class, "REMINDER_" + nameId);
+        assertThat(checkpoint.isCompleted(), is(true));
+        assertThat(checkpoint.getCountDeviceTokens(), is(10000));
+        assertThat(checkpoint.getCountNotifications(), is(10000));
+      });
+    }
+
+    // Only the pipeline sends asynchronously
+    verify(this.firebaseService, times(10)).sendMessagesAsync(any(PushNotificationRequest.class), anyList());
+  }
+
+  /**
+   * Mocks sending messages to record the tokens. The response depends on the number i of the token, so
+   * that it does not depend on the pages.
+   *
+   * @param withErrors
+   *          respond with success for i % 4 == 0, unregistered for 1, invalid argument for 2 and an other
+   *          error for 3; otherwise all messages succeed
+   */
+  private void mockSending(final boolean withErrors) throws Exception {
+
+    when(this.firebaseService.sendMessages(any(PushNotificationRequest.class), anyList()))
+        .then(invocation -> createBatchResponses(invocation.getArgument(1), withErrors));
+
+    when(this.firebaseService.sendMessagesAsync(any(PushNotificationRequest.class), anyList()))
+        .then(invocation -> ApiFutures.immediateFuture(createBatchResponses(invocation.getArgument(1), withErrors)));
+  }
+
+  private List<BatchResponse> createBatchResponses(final List<String> tokens, final boolean withErrors) {
+
+    this.sentTokens.addAll(tokens);
+
+    final List<BatchResponse> batchResponses = new ArrayList<>();
+
+    for (final List<String> partition : Lists.partition(tokens, 500)) {
+
+      final List<SendResponse> sendResponses = new ArrayList<>(partition.size());
+
+      for (final String token : partition) {
+
+        switch (withErrors ? Integer.parseInt(token) % 4 : 0) {
+          case 0:
+            sendResponses.add(this.sendResponseSuccess);
+            break;
+          case 1:
+            sendResponses.add(this.sendResponseNotRegistered);
+            break;
+          case 2:
+            sendResponses.add(this.sendResponseInvalidToken);
+            break;
+          default:
+            sendResponses.add(this.sendResponseOtherError);
+        }
+      }
+
+      final int successCount = (int) sendResponses.stream().filter(r -> r == this.sendResponseSuccess).count();
+
+      final BatchResponse batchResponse = mock(BatchResponse.class);
+      when(batchResponse.getSuccessCount()).thenReturn(successCount);
+      when(batchResponse.getFailureCount()).thenReturn(sendResponses.size() - successCount);
+      when(batchResponse.getResponses()).thenReturn(sendResponses);
+      batchResponses.add(batchResponse);
+    }
+
+    return batchResponses;
+  }
+
+  private void assertSentOnce(final IntStream expected) {
+
+    final List<String> expectedTokens = expected.mapToObj(Integer::toString).collect(Collectors.toList());
+
+    assertThat(this.sentTokens.size(), is(expectedTokens.size()));
+    assertThat(new HashSet<>(this.sentTokens), is(new HashSet<>(expectedTokens)));
+  }
+
+  private void assertInvalidDeviceTokensDeleted() {
+
+    // Each DeviceToken has been sent exactly once, although the invalid ones have been deleted per page
+    assertSentOnce(IntStream.range(0, 10000));
+    assertThat(getDeviceTokens(), is(getValidTokens()));
+  }
+
+  /**
+   * @return the tokens, which are not rejected as invalid by {@link #mockSending(boolean)}
+   */
+  private static Set<String> getValidTokens() {
+
+    return IntStream.range(0, 10000)
+        .filter(i -> i % 4 == 0 || i % 4 == 3)
+        .mapToObj(Integer::toString)
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Adds reminders for the current instance of the survey to every n-th DeviceToken.
+   *
+   * @return the ids of the reminded DeviceTokens
+   */
+  private List<Long> addReminders(final Survey survey, final int n) {
+
+    final List<Long> deviceTokenIds = new ArrayList<>();
+
+    this.transactionTemplate.executeWithoutResult(status -> {
+
+      final SurveyInstance instance = this.entityManager
+          .createQuery("SELECT i FROM SurveyInstance i WHERE i.survey.id = ?1", SurveyInstance.class)
+          .setParameter(1, survey.getId())
+          .getSingleResult();
+
+      for (int i = 0; i < this.deviceTokens.size(); i += n) {
+        deviceTokenIds.add(this.deviceTokens.get(i).getId());
+        this.entityManager.persist(Reminder.builder()
+            .deviceToken(this.entityManager.getReference(DeviceToken.class, this.deviceTokens.get(i).getId()))
+            .surveyInstance(instance)
+            .build());
+      }
+    });
+
+    return deviceTokenIds;
+  }
+
+  private Set<String> getDeviceTokens() {
+
+    return this.transactionTemplate.execute(status -> new HashSet<>(this.entityManager
+        .createQuery("SELECT t.token FROM DeviceToken t", String.class)
+        .getResultList()));
+  }
+
+  private Set<String> getReminderTokens(final String nameId) {
+
+    return this.transactionTemplate.execute(status -> new HashSet<>(this.entityManager
+        .createQuery("SELECT r.deviceToken.token FROM Reminder r WHERE r.surveyInstance.survey.nameId = ?1",
+            String.class)
+        .setParameter(1, nameId)
+        .getResultList()));
+  }
 }
@@ -0,0 +1,202 @@
+/**
+ *
+ */
+package one.tracking.framework.integration;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.SendResponse;
+import one.tracking.framework.SurveyManagementApplication;
+import one.tracking.framework.component.LockerComponent;
+import one.tracking.framework.component.ReminderComponent;
+import one.tracking.framework.domain.PushNotificationRequest;
+import one.tracking.framework.domain.ReminderTaskResult;
+import one.tracking.framework.domain.ReminderTaskResult.StateType;
+import one.tracking.framework.domain.TaskLease;
+import one.tracking.framework.entity.DeviceToken;
+import one.tracking.framework.service.FirebaseService;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@Import(ITConfiguration.class)
+@SpringBootTest(classes = SurveyManagementApplication.class)
+@TestPropertySource(locations = "classpath:application-it.properties", properties = {
+    "app.task.reminder.shards=4",
+    "app.task.reminder.shardParallelism=2",
+    "app.task.reminder.shardRetryInterval=1s"})
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("dev")
+public class ReminderShardIT {
+
+  private static final int AMOUNT_SHARDS = 4;
+
+  private static final int SHARD_PARALLELISM = 2;
+
+  private static final int FCM_BATCH_SIZE = 500;
+
+  @MockBean
+  private FirebaseService firebaseService;
+
+  @Autowired
+  private ReminderComponent reminderComponent;
+
+  @Autowired
+  private LockerComponent lockerComponent;
+
+  @Autowired
+  private HelperBean helperBean;
+
+  private List<DeviceToken> deviceTokens;
+
+  /**
+   * The amount of messages sent per token
+   */
+  private final Map<String, AtomicInteger> sentTokens = new ConcurrentHashMap<>();
+
+  /**
+   * The threads sending messages
+   */
+  private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+  @BeforeEach
+  public void before() throws Exception {
+
+    final int amountDeviceTokens = 10000;
+    this.deviceTokens = new ArrayList<>(amountDeviceTokens);
+    for (int i = 0; i < amountDeviceTokens; i++) {
+      this.deviceTokens.add(this.helperBean.addDeviceToken(this.helperBean.createUser(null), i + ""));
+    }
+
+    final SendResponse sendResponseSuccess = mock(SendResponse.class);
+    when(sendResponseSuccess.isSuccessful()).thenReturn(true);
+    when(sendResponseSuccess.getMessageId()).thenReturn("Ok");
+
+    when(this.firebaseService.isAvailable()).thenReturn(true);
+
+    // All messages are sent successfully, so that the notifications equal the DeviceTokens of each shard
+    when(this.firebaseService.sendMessages(any(PushNotificationRequest.class), anyList())).then(invocation -> {
+
+      final List<String> tokens = invocation.getArgument(1);
+      final List<BatchResponse> batchResponses = new ArrayList<>();
+
+      this.threads.add(Thread.currentThread());
+
+      for (final String token : tokens)
+        this.sentTokens.computeIfAbsent(token, key -> new AtomicInteger()).incrementAndGet();
+
+      for (int i = 0; i < tokens.size(); i += FCM_BATCH_SIZE) {
+
+        final int size = Math.min(FCM_BATCH_SIZE, tokens.size() - i);
+        final List<SendResponse> sendResponses = new ArrayList<>(size);
+        for (int j = 0; j < size; j++)
+          sendResponses.add(sendResponseSuccess);
+
+        final BatchResponse batchResponse = mock(BatchResponse.class);
+        when(batchResponse.getSuccessCount()).thenReturn(size);
+        when(batchResponse.getFailureCount()).thenReturn(0);
+        when(batchResponse.getResponses()).thenReturn(sendResponses);
+        batchResponses.add(batchResponse);
+      }
+
+      return batchResponses;
+    });
+  }
+
+  @Test
+  public void testShardsCoverAllDeviceTokens() throws Exception {
+
+    this.helperBean.createSurvey("TEST");
+
+    ReminderTaskResult result = this.reminderComponent.sendReminder("TEST");
+
+    assertThat(result, is(not(nullValue())));
+    assertThat(result.getState(), is(StateType.EXECUTED));
+    assertThat(result.getCountDeviceTokens(), is(10000));
+    assertThat(result.getCountNotifications(), is(10000));
+
+    assertSentOnce(this.deviceTokens.size());
+
+    // All shards have been completed
+    result = this.reminderComponent.sendReminder("TEST");
+
+    assertThat(result.getState(), is(StateType.EXECUTED));
+    assertThat(result.getCountDeviceTokens(), is(0));
+    assertThat(result.getCountNotifications(), is(0));
+  }
+
+  @Test
+  public void testShardExecutorIsShared() throws Exception {
+
+    this.helperBean.createSurvey("TEST_A");
+    this.helperBean.createSurvey("TEST_B");
+
+    assertThat(this.reminderComponent.sendReminder("TEST_A").getCountDeviceTokens(), is(10000));
+    assertThat(this.reminderComponent.sendReminder("TEST_B").getCountDeviceTokens(), is(10000));
+
+    // Both runs have been processed by the same threads
+    assertThat(this.threads.size(), is(lessThanOrEqualTo(SHARD_PARALLELISM)));
+  }
+
+  @Test
+  public void testLockedShardIsRetried() throws Exception {
+
+    this.helperBean.createSurvey("TEST");
+
+    final int lockedShard = 1;
+    final long amountLocked = this.deviceTokens.stream()
+        .filter(deviceToken -> deviceToken.getId() % AMOUNT_SHARDS == lockedShard)
+        .count();
+
+    // Simulates another node processing the shard
+    final TaskLease lease = this.lockerComponent.acquire("REMINDER_TEST#" + lockedShard);
+    assertThat(lease, is(not(nullValue())));
+
+    final ReminderTaskResult result = this.reminderComponent.sendReminder("TEST");
+
+    // The result only covers the shards processed immediately
+    assertThat(result.getState(), is(StateType.EXECUTED));
+    assertThat(result.getCountDeviceTokens(), is((int) (this.deviceTokens.size() - amountLocked)));
+    assertThat(this.sentTokens.size(), is((int) (this.deviceTokens.size() - amountLocked)));
+
+    // The other node stops without processing the shard
+    this.lockerComponent.unlock(lease);
+
+    await().atMost(Duration.ofSeconds(30)).until(() -> this.sentTokens.size() == this.deviceTokens.size());
+
+    assertSentOnce(this.deviceTokens.size());
+  }
+
+  private void assertSentOnce(final int amount) {
+
+    assertThat(this.sentTokens.size(), is(amount));
+    assertThat(this.sentTokens.values().stream().allMatch(count -> count.get() == 1), is(true));
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package one.tracking.framework.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import com.google.firebase.messaging.MulticastMessage;
+import one.tracking.framework.config.FirebaseProperties;
+import one.tracking.framework.domain.PushNotificationRequest;
+
+/**
+ * @author Marko Voß
+ *
+ */
+public class FirebaseServiceTest {
+
+  private static final int BATCH_SIZE = 50;
+
+  private FirebaseService firebaseService;
+
+  @BeforeEach
+  public void before() {
+
+    this.firebaseService = new FirebaseService();
+    ReflectionTestUtils.setField(this.firebaseService, "config", new FirebaseProperties(null, null, BATCH_SIZE));
+  }
+
+  @Test
+  public void testMessagesOnlyContainTheirPartition() {
+
+    final List<String> tokens = new ArrayList<>();
+    for (int i = 0; i < 120; i++) {
+      tokens.add("token" + i);
+    }
+
+    final List<MulticastMessage> messages = this.firebaseService.createMulticastMessages(createRequest(), tokens);
+
+    assertThat(messages, hasSize(3));
+    assertThat(getTokens(messages.get(0)), is(tokens.subList(0, 50)));
+    assertThat(getTokens(messages.get(1)), is(tokens.subList(50, 100)));
+    assertThat(getTokens(messages.get(2)), is(tokens.subList(100, 120)));
+
+    // No token gets sent twice
+    final Set<String> sentTokens = new HashSet<>();
+    for (final MulticastMessage message : messages) {
+      for (final String token : getTokens(message)) {
+        assertThat(sentTokens.add(token), is(true));
+      }
+    }
+    assertThat(sentTokens, hasSize(tokens.size()));
+  }
+
+  @Test
+  public void testExactMultipleOfBatchSize() {
+
+    final List<String> tokens = new ArrayList<>();
+    for (int i = 0; i < 2 * BATCH_SIZE; i++) {
+      tokens.add("token" + i);
+    }
+
+    final List<MulticastMessage> messages = this.firebaseService.createMulticastMessages(createRequest(), tokens);
+
+    assertThat(messages, hasSize(2));
+    assertThat(getTokens(messages.get(0)), is(tokens.subList(0, BATCH_SIZE)));
+    assertThat(getTokens(messages.get(1)), is(tokens.subList(BATCH_SIZE, 2 * BATCH_SIZE)));
+  }
+
+  @Test
+  public void testDataIsSharedByAllMessages() {
+
+    final List<String> tokens = new ArrayList<>();
+    for (int i = 0; i < 70; i++) {
+      tokens.add("token" + i);
+    }
+
+    for (final MulticastMessage message : this.firebaseService.createMulticastMessages(createRequest(), tokens)) {
+      assertThat(ReflectionTestUtils.getField(message, "data"), is(Map.of("key", "value")));
+    }
+  }
+
+  private static PushNotificationRequest createRequest() {
+
+    return PushNotificationRequest.builder()
+        .title("Title")
+        .message("Message")
+        .group("group")
+        .data(Map.of("key", "value"))
+        .build();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> getTokens(final MulticastMessage message) {
+    return (List<String>) ReflectionTestUtils.getField(message, "tokens");
+  }
+}